@@ -0,0 +1,106 @@
+package com.example.demo.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.InventoryGenerator;
+import com.example.demo.model.Device;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Benchmarks of the encodings of the API (JSON, CBOR and Smile), writing and
+ * reading the device list as a bulk consumer gets it. The size of the encoded
+ * list is printed when the trial starts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+
+	/**
+	 * Number of SIMs and devices in the list
+	 */
+	@Param({ "10000", "200000", "2000000" })
+	private int scale;
+
+	/**
+	 * Encoding: json, cbor or smile
+	 */
+	@Param({ "json", "cbor", "smile" })
+	private String encoding;
+
+	private ObjectMapper mapper;
+
+	private List<Device> devices;
+
+	private byte[] encoded;
+
+	/**
+	 * Generates the list and encodes it
+	 *
+	 * @throws IOException Not thrown, the output is in memory
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mapper = Jackson2ObjectMapperBuilder.json().factory(factory(encoding)).build();
+		devices = new InventoryGenerator(scale, InventoryData.SEED).createBatch(0, scale).getDevices();
+		encoded = mapper.writeValueAsBytes(devices);
+		System.out.printf("%n%s: %d devices in %d bytes, %.1f per device%n", encoding, devices.size(),
+				encoded.length, (double) encoded.length / devices.size());
+	}
+
+	/**
+	 * @return The encoded list
+	 * @throws IOException Not thrown, the output is in memory
+	 */
+	@Benchmark
+	public byte[] write() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length);
+		mapper.writeValue(out, devices);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return The decoded list
+	 * @throws IOException Not thrown, the input is valid
+	 */
+	@Benchmark
+	public List<Device> read() throws IOException {
+		return mapper.readValue(encoded, new TypeReference<List<Device>>() {
+		});
+	}
+
+	private static JsonFactory factory(String encoding) {
+		switch (encoding) {
+		case "cbor":
+			return new CBORFactory();
+		case "smile":
+			return new SmileFactory();
+		default:
+			return new JsonFactory();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.example.demo.benchmark;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.example.demo.InventoryGenerator;
+import com.example.demo.ShopTrackingApplication;
+import com.example.demo.service.InventoryWriter;
+
+/**
+ * Dataset of the benchmarks: the application context, without the web server,
+ * on an in-memory database populated by the seeded {@link InventoryGenerator}.
+ * Each scale uses a different database, so the measurements of a scale are
+ * always taken on the same data.
+ */
+final class InventoryData {
+
+	/**
+	 * Seed of the generated data. It must not change between releases, or the
+	 * results are not comparable
+	 */
+	static final long SEED = 1;
+
+	/**
+	 * Number of SIMs and devices written in each transaction
+	 */
+	private static final int BATCH_SIZE = 10000;
+
+	private InventoryData() {
+	}
+
+	/**
+	 * Starts the application on a new in-memory database, and populates it
+	 * 
+	 * @param scale Number of SIMs and devices
+	 * @return The application context, to be closed after the benchmark
+	 */
+	static ConfigurableApplicationContext load(int scale) {
+		SpringApplication application = new SpringApplication(ShopTrackingApplication.class);
+		application.setWebApplicationType(WebApplicationType.NONE);
+		ConfigurableApplicationContext context = application.run(
+				"--spring.datasource.url=jdbc:h2:mem:benchmark-" + scale + ";DB_CLOSE_DELAY=-1",
+				"--spring.jpa.hibernate.ddl-auto=create", "--spring.main.banner-mode=off",
+				"--reactive.server.port=-1", "--logging.level.root=WARN");
+
+		InventoryWriter writer = context.getBean(InventoryWriter.class);
+		InventoryGenerator generator = new InventoryGenerator(scale, SEED);
+		for (int from = 0; from < scale; from += BATCH_SIZE) {
+			InventoryGenerator.Batch batch = generator.createBatch(from, Math.min(scale, from + BATCH_SIZE));
+			writer.insert(batch.getSims(), batch.getDevices());
+		}
+		return context;
+	}
+}
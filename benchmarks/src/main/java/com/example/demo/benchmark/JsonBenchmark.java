@@ -0,0 +1,146 @@
+package com.example.demo.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.example.demo.InventoryGenerator;
+import com.example.demo.controller.DeviceJsonCache;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmarks of the JSON serialization of device and SIM lists, as the listing
+ * endpoints write them. The lists are generated in memory, without database,
+ * with the same seed as {@link RepositoryBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+	/**
+	 * Number of SIMs and devices in the lists
+	 */
+	@Param({ "10000", "200000", "2000000" })
+	private int scale;
+
+	private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private List<Device> devices;
+
+	private List<Sim> sims;
+
+	private List<DeviceView> views;
+
+	private DeviceJsonCache jsonCache;
+
+	/**
+	 * Generates the lists
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		InventoryGenerator generator = new InventoryGenerator(scale, InventoryData.SEED);
+		InventoryGenerator.Batch batch = generator.createBatch(0, scale);
+		devices = new ArrayList<>(batch.getDevices());
+		sims = new ArrayList<>(batch.getSims());
+		views = new ArrayList<>(devices.size());
+		for (Device device : devices) {
+			Sim sim = device.getSim();
+			views.add(sim == null
+					? new DeviceView(views.size(), device.getStatus(), device.getTemperature(), null, null, null, null)
+					: new DeviceView(views.size(), device.getStatus(), device.getTemperature(), sim.getId(),
+							sim.getOperatorCode(), sim.getCountry(), sim.getStatus()));
+		}
+		jsonCache = new DeviceJsonCache(mapper, scale);
+	}
+
+	/**
+	 * @return Number of bytes written
+	 * @throws IOException Not thrown, the output is discarded
+	 */
+	@Benchmark
+	public long serializeDevices() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		mapper.writeValue(out, devices);
+		return out.count;
+	}
+
+	/**
+	 * @return Number of bytes written
+	 * @throws IOException Not thrown, the output is discarded
+	 */
+	@Benchmark
+	public long serializeSims() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		mapper.writeValue(out, sims);
+		return out.count;
+	}
+
+	/**
+	 * The listings as Jackson writes them
+	 * 
+	 * @return Number of bytes written
+	 * @throws IOException Not thrown, the output is discarded
+	 */
+	@Benchmark
+	public long serializeDeviceViews() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		mapper.writeValue(out, views);
+		return out.count;
+	}
+
+	/**
+	 * The listings as written from the cached fragments, all of them cached
+	 * after the first invocation
+	 * 
+	 * @return Number of bytes written
+	 * @throws IOException Not thrown, the output is discarded
+	 */
+	@Benchmark
+	public long writeDeviceViewFragments() throws IOException {
+		CountingOutputStream out = new CountingOutputStream();
+		jsonCache.writeArray(views, out);
+		return out.count;
+	}
+
+	/**
+	 * Discards the output, only counting it, so the benchmark measures the
+	 * serialization and not the buffer growth
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
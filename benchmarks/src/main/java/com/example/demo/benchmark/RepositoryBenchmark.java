@@ -0,0 +1,142 @@
+package com.example.demo.benchmark;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+
+/**
+ * Benchmarks of the device repository queries, on the seeded dataset of each
+ * scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+	/**
+	 * Number of SIMs and devices in the database
+	 */
+	@Param({ "10000", "200000", "2000000" })
+	private int scale;
+
+	private ConfigurableApplicationContext context;
+
+	private DeviceRepository devices;
+
+	private TransactionTemplate transaction;
+
+	private long firstId;
+
+	private long lastId;
+
+	/**
+	 * Starts the application and populates the database
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = InventoryData.load(scale);
+		devices = context.getBean(DeviceRepository.class);
+		transaction = context.getBean(TransactionTemplate.class);
+
+		EntityManager entityManager = context.getBean(EntityManagerFactory.class).createEntityManager();
+		try {
+			Object[] range = entityManager.createQuery("SELECT MIN(d.id), MAX(d.id) FROM Device d", Object[].class)
+					.getSingleResult();
+			firstId = (Long) range[0];
+			lastId = (Long) range[1];
+		} finally {
+			entityManager.close();
+		}
+	}
+
+	/**
+	 * Stops the application
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * Devices for sale, as entities
+	 * 
+	 * @return The devices
+	 */
+	@Benchmark
+	public List<Device> findForSale() {
+		return devices.findForSale();
+	}
+
+	/**
+	 * Devices for sale, as projections
+	 * 
+	 * @return The devices
+	 */
+	@Benchmark
+	public List<DeviceView> findViewForSale() {
+		return devices.findViewForSale();
+	}
+
+	/**
+	 * Devices waiting for activation, as entities
+	 * 
+	 * @return The devices
+	 */
+	@Benchmark
+	public List<Device> findBySimStatus() {
+		return devices.findBySimStatus(SimStatus.WAITING_FOR_ACTIVATION);
+	}
+
+	/**
+	 * Devices waiting for activation, as projections
+	 * 
+	 * @return The devices
+	 */
+	@Benchmark
+	public List<DeviceView> findViewBySimStatus() {
+		return devices.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION);
+	}
+
+	/**
+	 * Reads a random device and saves it with a new temperature, in a
+	 * transaction, as the device update endpoint does
+	 * 
+	 * @return The saved device
+	 */
+	@Benchmark
+	public Device findByIdAndSave() {
+		long id = ThreadLocalRandom.current().nextLong(firstId, lastId + 1);
+		float temperature = -25 + 110 * ThreadLocalRandom.current().nextFloat();
+		return transaction.execute(status -> devices.findById(id).map(device -> {
+			device.update(device.getStatus(), temperature, device.getSim());
+			return devices.saveAndFlush(device);
+		}).orElse(null));
+	}
+}
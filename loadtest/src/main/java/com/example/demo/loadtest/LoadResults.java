@@ -0,0 +1,140 @@
+package com.example.demo.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and failures of each operation.
+ *
+ * Two latencies are recorded per request: the response time, measured from the
+ * time the request should have been sent according to the arrival rate, and
+ * the service time, measured from the time it was actually sent. When the
+ * application stalls, the requests that could not be sent in time wait in the
+ * terminal, and only the response time includes that wait (coordinated
+ * omission). The percentiles are reported from the response time.
+ */
+class LoadResults {
+
+	/**
+	 * Significant digits of the histograms
+	 */
+	private static final int DIGITS = 3;
+
+	/**
+	 * Response time of each operation, in nanoseconds
+	 */
+	private final Map<Operation, Histogram> responseTimes = new EnumMap<>(Operation.class);
+
+	/**
+	 * Service time of each operation, in nanoseconds
+	 */
+	private final Map<Operation, Histogram> serviceTimes = new EnumMap<>(Operation.class);
+
+	/**
+	 * Requests of each operation that were not answered with 2xx
+	 */
+	private final Map<Operation, Long> failures = new EnumMap<>(Operation.class);
+
+	LoadResults() {
+		for (Operation operation : Operation.values()) {
+			responseTimes.put(operation, new Histogram(DIGITS));
+			serviceTimes.put(operation, new Histogram(DIGITS));
+			failures.put(operation, 0L);
+		}
+	}
+
+	/**
+	 * Records a request
+	 *
+	 * @param operation    The operation
+	 * @param status       The HTTP status, or -1 if the request failed
+	 * @param responseTime Time since the request was due, in nanoseconds
+	 * @param serviceTime  Time since the request was sent, in nanoseconds
+	 */
+	void record(Operation operation, int status, long responseTime, long serviceTime) {
+		responseTimes.get(operation).recordValue(responseTime);
+		serviceTimes.get(operation).recordValue(serviceTime);
+		if (status < 200 || status >= 300) {
+			failures.merge(operation, 1L, Long::sum);
+		}
+	}
+
+	/**
+	 * Adds the results of another terminal
+	 *
+	 * @param other The results to add
+	 */
+	void add(LoadResults other) {
+		for (Operation operation : Operation.values()) {
+			responseTimes.get(operation).add(other.responseTimes.get(operation));
+			serviceTimes.get(operation).add(other.serviceTimes.get(operation));
+			failures.merge(operation, other.failures.get(operation), Long::sum);
+		}
+	}
+
+	/**
+	 * Prints the throughput and percentiles of each operation, and of all of them
+	 *
+	 * @param out     Where to print
+	 * @param seconds Duration of the measurement
+	 */
+	void print(PrintStream out, double seconds) {
+		out.printf("%-8s %9s %9s %9s %9s %9s %9s %9s %9s%n", "", "requests", "req/s", "failed", "p50 ms",
+				"p99 ms", "p99.9 ms", "max ms", "svc p99");
+		Histogram allResponses = new Histogram(DIGITS);
+		Histogram allServices = new Histogram(DIGITS);
+		long allFailures = 0;
+		for (Operation operation : Operation.values()) {
+			Histogram responses = responseTimes.get(operation);
+			if (responses.getTotalCount() > 0) {
+				print(out, operation.getName(), responses, serviceTimes.get(operation), failures.get(operation),
+						seconds);
+			}
+			allResponses.add(responses);
+			allServices.add(serviceTimes.get(operation));
+			allFailures += failures.get(operation);
+		}
+		print(out, "total", allResponses, allServices, allFailures, seconds);
+	}
+
+	private static void print(PrintStream out, String name, Histogram responses, Histogram services, long failures,
+			double seconds) {
+		out.printf("%-8s %9d %9.1f %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, responses.getTotalCount(),
+				responses.getTotalCount() / seconds, failures, millis(responses.getValueAtPercentile(50)),
+				millis(responses.getValueAtPercentile(99)), millis(responses.getValueAtPercentile(99.9)),
+				millis(responses.getMaxValue()), millis(services.getValueAtPercentile(99)));
+	}
+
+	/**
+	 * Writes the percentile distribution of the response time of each operation
+	 * to {@code <operation>.hgrm}, which can be plotted and compared with the
+	 * HdrHistogram tools
+	 *
+	 * @param directory The directory, created if needed
+	 * @throws IOException If a file cannot be written
+	 */
+	void write(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		for (Operation operation : Operation.values()) {
+			Histogram responses = responseTimes.get(operation);
+			if (responses.getTotalCount() > 0) {
+				try (PrintStream out = new PrintStream(
+						new FileOutputStream(directory.resolve(operation.getName() + ".hgrm").toFile()))) {
+					responses.outputPercentileDistribution(out, (double) TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		}
+	}
+
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+}
@@ -0,0 +1,192 @@
+package com.example.demo.loadtest;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import com.example.demo.InventoryGenerator;
+import com.example.demo.ShopTrackingApplication;
+import com.example.demo.service.InventoryWriter;
+
+/**
+ * HTTP load test of the whole application.
+ *
+ * It starts the application in this process, on a random port and a new
+ * in-memory database, and populates it with the seeded
+ * {@link InventoryGenerator}. Then a number of terminals send a mix of
+ * listings, updates and deletes at a fixed total rate: first during a warm-up
+ * that is not measured, then during the measurement. The throughput and the
+ * response time percentiles of each operation are printed at the end.
+ *
+ * Options (any other Spring property is passed to the application)
+ * <ul>
+ * <li>loadtest.scale: Number of SIMs and devices, 200000 by default
+ * <li>loadtest.rate: Requests per second of all the terminals, 200 by default
+ * <li>loadtest.terminals: Number of terminals, 16 by default
+ * <li>loadtest.warmup: Seconds of warm-up, 30 by default
+ * <li>loadtest.duration: Seconds of measurement, 60 by default
+ * <li>loadtest.mix: Weight of each operation, listing=80,update=15,delete=5 by
+ * default
+ * <li>loadtest.page-size: Devices in the page of a listing, 100 by default
+ * <li>loadtest.seed: Seed of the data and of the requests, 1 by default
+ * <li>loadtest.histograms: Directory where the percentile distribution of each
+ * operation is written, none by default
+ * </ul>
+ */
+public final class LoadTest {
+
+	/**
+	 * Number of SIMs and devices written in each transaction
+	 */
+	private static final int BATCH_SIZE = 10000;
+
+	private LoadTest() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		SpringApplication application = new SpringApplication(ShopTrackingApplication.class);
+		try (ConfigurableApplicationContext context = application.run(withDefaults(args))) {
+			Environment env = context.getEnvironment();
+			int scale = env.getProperty("loadtest.scale", Integer.class, 200000);
+			double rate = env.getProperty("loadtest.rate", Double.class, 200.0);
+			int terminals = env.getProperty("loadtest.terminals", Integer.class, 16);
+			int warmup = env.getProperty("loadtest.warmup", Integer.class, 30);
+			int duration = env.getProperty("loadtest.duration", Integer.class, 60);
+			String mix = env.getProperty("loadtest.mix", "listing=80,update=15,delete=5");
+			int pageSize = env.getProperty("loadtest.page-size", Integer.class, 100);
+			long seed = env.getProperty("loadtest.seed", Long.class, 1L);
+			String histograms = env.getProperty("loadtest.histograms");
+
+			System.out.printf("Seeding %d SIMs and devices%n", scale);
+			seed(context, scale, seed);
+			Workload workload = createWorkload(context, scale, pageSize, Workload.parseMix(mix), seed);
+
+			// Every terminal keeps its connection alive
+			System.setProperty("http.maxConnections", Integer.toString(terminals));
+			ExecutorService executor = Executors.newFixedThreadPool(terminals);
+			try {
+				List<Terminal> clients = new ArrayList<>();
+				for (int i = 0; i < terminals; i++) {
+					clients.add(new Terminal(workload, rate / terminals, seed * 31 + i));
+				}
+				System.out.printf("Warming up for %d s at %.1f requests/s%n", warmup, rate);
+				run(executor, clients, rate, warmup);
+				System.out.printf("Measuring for %d s at %.1f requests/s, %d terminals, %s%n", duration, rate,
+						terminals, mix);
+				LoadResults results = run(executor, clients, rate, duration);
+				results.print(System.out, duration);
+				if (histograms != null) {
+					results.write(Paths.get(histograms));
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * Adds the properties of the application under test, unless given. They are
+	 * passed as arguments, as they must override application.properties
+	 *
+	 * @param args The command line arguments
+	 * @return The arguments with the defaults
+	 */
+	private static String[] withDefaults(String[] args) {
+		Map<String, String> defaults = new LinkedHashMap<>();
+		defaults.put("server.port", "0");
+		defaults.put("reactive.server.port", "-1");
+		defaults.put("spring.datasource.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+		defaults.put("spring.jpa.hibernate.ddl-auto", "create");
+		defaults.put("spring.main.banner-mode", "off");
+		defaults.put("logging.level.root", "WARN");
+
+		List<String> result = new ArrayList<>();
+		defaults.forEach((name, value) -> {
+			if (Arrays.stream(args).noneMatch(arg -> arg.startsWith("--" + name + "="))) {
+				result.add("--" + name + "=" + value);
+			}
+		});
+		result.addAll(Arrays.asList(args));
+		return result.toArray(new String[0]);
+	}
+
+	/**
+	 * Populates the database with the generated SIMs and devices
+	 */
+	private static void seed(ConfigurableApplicationContext context, int scale, long seed) {
+		InventoryWriter writer = context.getBean(InventoryWriter.class);
+		InventoryGenerator generator = new InventoryGenerator(scale, seed);
+		for (int from = 0; from < scale; from += BATCH_SIZE) {
+			InventoryGenerator.Batch batch = generator.createBatch(from, Math.min(scale, from + BATCH_SIZE));
+			writer.insert(batch.getSims(), batch.getDevices());
+		}
+	}
+
+	/**
+	 * Creates the workload on the stored devices
+	 */
+	private static Workload createWorkload(ConfigurableApplicationContext context, int scale, int pageSize,
+			Map<Operation, Integer> mix, long seed) {
+		EntityManager em = context.getBean(EntityManagerFactory.class).createEntityManager();
+		try {
+			List<Object[]> rows = em
+					.createQuery("SELECT d.id, s.id FROM Device d LEFT JOIN d.sim s ORDER BY d.id", Object[].class)
+					.getResultList();
+			long[] deviceIds = new long[rows.size()];
+			long[] simIds = new long[rows.size()];
+			for (int i = 0; i < deviceIds.length; i++) {
+				deviceIds[i] = (Long) rows.get(i)[0];
+				simIds[i] = rows.get(i)[1] == null ? 0 : (Long) rows.get(i)[1];
+			}
+			int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+			return new Workload("http://localhost:" + port + "/api/device", scale, pageSize, deviceIds, simIds, mix,
+					seed);
+		} finally {
+			em.close();
+		}
+	}
+
+	/**
+	 * Runs a phase on all the terminals
+	 *
+	 * @param executor  Threads of the terminals
+	 * @param terminals The terminals
+	 * @param rate      Requests per second of all the terminals
+	 * @param seconds   Duration of the phase
+	 * @return The results of all the terminals
+	 */
+	private static LoadResults run(ExecutorService executor, List<Terminal> terminals, double rate, int seconds)
+			throws InterruptedException, ExecutionException {
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		long end = start + TimeUnit.SECONDS.toNanos(seconds);
+		// The terminals are staggered, so the requests are evenly spaced
+		double offset = 1e9 / rate;
+		List<Future<LoadResults>> futures = new ArrayList<>();
+		for (int i = 0; i < terminals.size(); i++) {
+			Terminal terminal = terminals.get(i);
+			long terminalStart = start + (long) (i * offset);
+			futures.add(executor.submit(() -> terminal.run(terminalStart, end)));
+		}
+		LoadResults results = new LoadResults();
+		for (Future<LoadResults> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+}
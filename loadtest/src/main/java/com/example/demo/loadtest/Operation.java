@@ -0,0 +1,28 @@
+package com.example.demo.loadtest;
+
+/**
+ * Kinds of requests sent by the terminals
+ */
+enum Operation {
+	/**
+	 * GET of a page of the devices available for sale or waiting for activation
+	 */
+	LISTING,
+
+	/**
+	 * PUT of a device, keeping its SIM
+	 */
+	UPDATE,
+
+	/**
+	 * DELETE of a device
+	 */
+	DELETE;
+
+	/**
+	 * @return The name used in the options and the report
+	 */
+	String getName() {
+		return name().toLowerCase();
+	}
+}
@@ -0,0 +1,67 @@
+package com.example.demo.loadtest;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A client sending requests at a fixed rate, one at a time.
+ *
+ * The requests are scheduled in advance: the k-th one is due at
+ * {@code start + k * interval}. If a response arrives late, the next requests
+ * are sent immediately, but their response time is still measured from their
+ * due time, so a stall is accounted for in every request it delayed.
+ */
+class Terminal {
+
+	/**
+	 * The requests to send
+	 */
+	private final Workload workload;
+
+	/**
+	 * Random source of the operations and their parameters
+	 */
+	private final SplittableRandom rand;
+
+	/**
+	 * Time between requests, in nanoseconds
+	 */
+	private final double interval;
+
+	/**
+	 * @param workload The requests to send
+	 * @param rate     Requests per second
+	 * @param seed     Seed of the operations
+	 */
+	Terminal(Workload workload, double rate, long seed) {
+		this.workload = workload;
+		this.rand = new SplittableRandom(seed);
+		this.interval = 1e9 / rate;
+	}
+
+	/**
+	 * Sends requests until the end of the phase
+	 *
+	 * @param start Time of the first request, as {@link System#nanoTime()}
+	 * @param end   End of the phase, as {@link System#nanoTime()}
+	 * @return The latencies of the requests
+	 */
+	LoadResults run(long start, long end) {
+		LoadResults results = new LoadResults();
+		for (long k = 0;; k++) {
+			long due = start + (long) (k * interval);
+			if (due - end >= 0) {
+				return results;
+			}
+			long now = System.nanoTime();
+			while (due - now > 0) {
+				LockSupport.parkNanos(due - now);
+				now = System.nanoTime();
+			}
+			Operation operation = workload.choose(rand);
+			int status = workload.execute(operation, rand);
+			long done = System.nanoTime();
+			results.record(operation, status, done - due, done - now);
+		}
+	}
+}
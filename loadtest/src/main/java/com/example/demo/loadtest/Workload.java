@@ -0,0 +1,203 @@
+package com.example.demo.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.demo.InventoryGenerator;
+
+/**
+ * The requests sent to the application: a weighted mix of listings, updates and
+ * deletes of the seeded devices.
+ *
+ * The devices are shuffled with the seed and split in two halves. Updates pick
+ * a random device of the first half and send it back with a new temperature and
+ * its SIM, so they never conflict. Deletes consume the second half in order, so
+ * each one removes a device; once it is exhausted they get 404 NOT FOUND.
+ */
+class Workload {
+
+	/**
+	 * Base URL of the device endpoints
+	 */
+	private final String baseUrl;
+
+	/**
+	 * Number of SIMs, to pick the listing cursors
+	 */
+	private final int scale;
+
+	/**
+	 * Devices in the page of a listing
+	 */
+	private final int pageSize;
+
+	/**
+	 * Shuffled device IDs
+	 */
+	private final long[] deviceIds;
+
+	/**
+	 * SIM of each device, or 0 if it has none
+	 */
+	private final long[] simIds;
+
+	/**
+	 * Cumulative weights of the operations, in declaration order
+	 */
+	private final int[] weights;
+
+	/**
+	 * Next device to delete
+	 */
+	private final AtomicInteger nextDelete;
+
+	/**
+	 * @param baseUrl   Base URL of the device endpoints
+	 * @param scale     Number of SIMs and devices seeded
+	 * @param pageSize  Devices in the page of a listing
+	 * @param deviceIds IDs of the devices
+	 * @param simIds    SIM of each device, or 0 if it has none
+	 * @param mix       Weight of each operation
+	 * @param seed      Seed of the shuffle
+	 */
+	Workload(String baseUrl, int scale, int pageSize, long[] deviceIds, long[] simIds, Map<Operation, Integer> mix,
+			long seed) {
+		this.baseUrl = baseUrl;
+		this.scale = scale;
+		this.pageSize = pageSize;
+		this.deviceIds = deviceIds.clone();
+		this.simIds = simIds.clone();
+		SplittableRandom rand = new SplittableRandom(seed);
+		for (int i = this.deviceIds.length - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			swap(this.deviceIds, i, j);
+			swap(this.simIds, i, j);
+		}
+		this.nextDelete = new AtomicInteger(this.deviceIds.length / 2);
+
+		this.weights = new int[Operation.values().length];
+		int total = 0;
+		for (Operation operation : Operation.values()) {
+			total += mix.getOrDefault(operation, 0);
+			weights[operation.ordinal()] = total;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("The mix has no operations");
+		}
+	}
+
+	/**
+	 * Parses a mix like {@code listing=80,update=15,delete=5}
+	 *
+	 * @param mix The operations and their weights, separated by commas
+	 * @return The weight of each operation
+	 */
+	static Map<Operation, Integer> parseMix(String mix) {
+		Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.trim().split("=");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Invalid mix entry: " + entry);
+			}
+			weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.valueOf(parts[1].trim()));
+		}
+		return weights;
+	}
+
+	/**
+	 * @param rand Random source of the terminal
+	 * @return The next operation, according to the weights
+	 */
+	Operation choose(SplittableRandom rand) {
+		int value = rand.nextInt(weights[weights.length - 1]);
+		for (Operation operation : Operation.values()) {
+			if (value < weights[operation.ordinal()]) {
+				return operation;
+			}
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Sends a request and reads the whole response
+	 *
+	 * @param operation The operation
+	 * @param rand      Random source of the terminal
+	 * @return The HTTP status, or -1 if the request failed
+	 */
+	int execute(Operation operation, SplittableRandom rand) {
+		try {
+			switch (operation) {
+			case LISTING:
+				if (rand.nextBoolean()) {
+					long after = InventoryGenerator.FIRST_SIM_ID + rand.nextInt(scale);
+					return send("GET", "/available-for-sale?limit=" + pageSize + "&after=" + after, null);
+				} else {
+					long after = deviceIds[rand.nextInt(deviceIds.length)];
+					return send("GET", "/waiting-activation?limit=" + pageSize + "&after=" + after, null);
+				}
+			case UPDATE:
+				int index = rand.nextInt(Math.max(1, deviceIds.length / 2));
+				String sim = simIds[index] == 0 ? "null" : "{\"id\": " + simIds[index] + "}";
+				float temperature = Math.round(rand.nextDouble() * 400) / 10f;
+				return send("PUT", "/" + deviceIds[index],
+						"{\"status\": \"READY\", \"temperature\": " + temperature + ", \"sim\": " + sim + "}");
+			case DELETE:
+				int next = nextDelete.getAndIncrement();
+				return send("DELETE", "/" + (next < deviceIds.length ? deviceIds[next] : 0), null);
+			default:
+				throw new IllegalArgumentException(operation.name());
+			}
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Sends a request on a kept-alive connection, and discards the response
+	 *
+	 * @param method The HTTP method
+	 * @param path   Path relative to the device endpoints
+	 * @param body   JSON body, or null
+	 * @return The HTTP status
+	 * @throws IOException If the request fails
+	 */
+	private int send(String method, String path, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setRequestProperty("Accept", "application/json");
+		if (body != null) {
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(body.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		int status = connection.getResponseCode();
+		// The connection is only reused once the response has been read
+		InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		if (in != null) {
+			try (InputStream response = in) {
+				byte[] buffer = new byte[8192];
+				while (response.read(buffer) >= 0) {
+					// Discarded
+				}
+			}
+		}
+		return status;
+	}
+
+	private static void swap(long[] values, int i, int j) {
+		long value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.demo;
+
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Compression of the responses with strong ETags, if
+ * server.compression.enabled is true.
+ *
+ * By default Tomcat does not compress them, since the compressed bytes are not
+ * the ones the ETag was computed for. The ETags of the listings are built from
+ * the Accept-Encoding header, so each compressed representation has its own,
+ * and the listings can be both validated and compressed.
+ */
+@Configuration
+@ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+public class CompressionConfiguration {
+
+	/**
+	 * @return Customizer of the Tomcat connector, to compress the responses with
+	 *         strong ETags
+	 */
+	// The setting is deprecated in Tomcat 9 with no replacement: Tomcat 10.1
+	// removes it and always compresses, weakening the strong ETags instead
+	@SuppressWarnings("deprecation")
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> strongETagCompressionProtocolHandlerCustomizer() {
+		return protocolHandler -> {
+			if (protocolHandler instanceof AbstractHttp11Protocol) {
+				((AbstractHttp11Protocol<?>) protocolHandler).setNoCompressionStrongETag(false);
+			}
+		};
+	}
+}
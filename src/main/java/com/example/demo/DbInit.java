@@ -1,23 +1,31 @@
 package com.example.demo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.LongStream;
-import java.util.stream.Stream;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Component;
 
-import com.example.demo.model.Device;
-import com.example.demo.model.Sim;
+import com.example.demo.controller.DeviceController;
 import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.ImportReport;
+import com.example.demo.service.InventoryChanges;
+import com.example.demo.service.InventoryImporter;
+import com.example.demo.service.InventoryWriter;
 import com.example.demo.service.SimRepository;
 
 /**
@@ -26,8 +34,15 @@ import com.example.demo.service.SimRepository;
  * Command line options
  * <ul>
  * <li>clear-db: It will delete all entries in the database
- * <li>init-db: It will generate a random database which may be used for testing 
+ * <li>init-db: It will generate a random database which may be used for testing. The number of
+ * devices (and SIMs) may be given as init-db=2000000, otherwise 200000 are generated
+ * <li>import=&lt;file&gt;: It will import the SIMs and devices of an inventory file (CSV or NDJSON,
+ * see {@link InventoryImporter})
  * </ul>
+ * 
+ * The random data is generated in batches by several threads, while a single writer
+ * stores the batches in order, so generation and insertion overlap. It is seeded
+ * (db-init.seed), so the same dataset can be generated again.
  */
 @Component
 public class DbInit implements CommandLineRunner {
@@ -44,15 +59,98 @@ public class DbInit implements CommandLineRunner {
 	 */
 	@Autowired
 	private SimRepository sims;
-	
+
+	/**
+	 * Batched writer for the generated data
+	 */
+	@Autowired
+	private InventoryWriter writer;
+
+	/**
+	 * Importer of inventory files
+	 */
+	@Autowired
+	private InventoryImporter importer;
+
+	/**
+	 * Changes of the inventory, reloaded when the database is cleared
+	 */
+	@Autowired
+	private InventoryChanges changes;
+
+	/**
+	 * Number of devices (and SIMs) stored in each transaction
+	 */
+	@Value("${db-init.batch-size:10000}")
+	private int batchSize;
+
+	/**
+	 * Number of threads generating data. By default, one per core
+	 */
+	@Value("${db-init.threads:0}")
+	private int threads;
+
+	/**
+	 * Seed of the generated data. The same seed and size generate the same data
+	 */
+	@Value("${db-init.seed:0}")
+	private long seed;
+
+	/**
+	 * Any cached listing is discarded, as the database may have been modified
+	 */
 	@Override
+	@CacheEvict(cacheNames = { DeviceController.WAITING_ACTIVATION_CACHE,
+			DeviceController.AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
 	public void run(String... a) {
 		List<String> args = Arrays.asList(a);
+		// Checked before clearing anything
+		Optional<Integer> size = args.stream().filter(arg -> arg.equals("init-db") || arg.startsWith("init-db="))
+				.findFirst().map(DbInit::parseSize);
 		if (args.contains("clear-db")) {
 			clearSampleDb();
 		}
-		if (args.contains("init-db")) {
-			initSampleDb();
+		size.ifPresent(this::initSampleDb);
+		args.stream().filter(arg -> arg.startsWith("import=")).forEach(arg -> importFile(arg.substring(7)));
+	}
+
+	/**
+	 * @param arg The init-db argument, with or without a size
+	 * @return The number of SIMs and devices to generate
+	 * @throws IllegalArgumentException If the size is not a positive number
+	 */
+	private static int parseSize(String arg) {
+		int idx = arg.indexOf('=');
+		if (idx < 0) {
+			return DEFAULT_SIZE;
+		}
+		String value = arg.substring(idx + 1).trim();
+		try {
+			int size = Integer.parseInt(value);
+			if (size > 0) {
+				return size;
+			}
+		} catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new IllegalArgumentException(
+				"Invalid init-db size '" + value + "': expected a positive number of SIMs and devices, e.g. init-db="
+						+ DEFAULT_SIZE);
+	}
+
+	/**
+	 * Imports an inventory file
+	 * 
+	 * @param file The file path
+	 */
+	private void importFile(String file) {
+		log.info("Importing {}", file);
+		try {
+			ImportReport report = importer.importFile(Paths.get(file));
+			report.getErrors().forEach(error -> log.warn("Batch {}, lines {}-{}: {}", error.getBatch(),
+					error.getFirstLine(), error.getLastLine(), error.getMessage()));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Cannot import " + file, e);
 		}
 	}
 
@@ -64,116 +162,48 @@ public class DbInit implements CommandLineRunner {
 		devices.deleteAllInBatch();
 		log.info("Clearing sim DB");
 		sims.deleteAllInBatch();
+		changes.reload();
 		log.info("All databased cleared");
 	}
 
 	/**
 	 * Initializes the database with a randomly generated sims
 	 * and devices. Approximately half of the devices are ready
-	 * for sell.
-	 */
-	private void initSampleDb() {
-		log.info("Generating SIMs");
-		List<Sim> newSims = LongStream.range(10000000l, 10200000l).boxed().map(DbInit::createSim)
-				.collect(Collectors.toList());
-		Collections.shuffle(newSims);
-		log.info("Storing SIMs");
-		sims.saveAll(newSims);
-		
-		log.info("Generating Devices");
-		Stream<Device> newDevs = IntStream.range(0, 200000).boxed().map(id -> createDevice(newSims));
-		log.info("Storing Devices");
-		devices.saveAll(newDevs::iterator);
-		
-		log.info("Database initialized");
-	}
-
-	/**
-	 * Function to create a device, randomly assigning (or not) a SIM, and
-	 * a temperature.
-	 * 
-	 * To avoid repetitions in the SIM, the full list of SIMs is passed as a
-	 * parameter. If the SIM is assigned, it is being removed from the list.
+	 * for sell. See {@link InventoryGenerator}.
 	 * 
-	 * @param sims List of available SIMs. This variable may be updated inside
-	 * 	the function
-	 * @return The generated device
+	 * @param size Number of SIMs and devices to generate
 	 */
-	private Device createDevice(List<Sim> sims) {
-		float readyProb = rand.nextFloat();
-		String status = null;
-		Sim sim = null;
-		Float temperature = null;
-		if (readyProb > 0.5) {
-			status = "READY";
-			if (!sims.isEmpty()) {
-				sim = sims.remove(0);
-			}
-			temperature = -25 + (85 + 25) * rand.nextFloat();
-		} 
-		
-		return new Device(status, temperature, sim);
-	}
+	private void initSampleDb(int size) {
+		log.info("Generating {} SIMs and devices, seed {}", size, seed);
+		InventoryGenerator generator = new InventoryGenerator(size, seed);
 
-	
-	/**
-	 * It randomly generates a SIM object with certain SIM id.
-	 * 
-	 * Country value is taken from COUNTRIES array, with uniform probability.
-	 * Operator code is assigned a random integer, so that different countries
-	 * will have different operators. 
-	 *  
-	 * @param id The SIM id
-	 * @return The generated SIM object
-	 */
-	private static Sim createSim(long id) {
-		// Country
-		int country = rand.nextInt(COUNTRIES.length);
-		
-		// Operator
-		int operator = 10 * country + rand.nextInt(4);
-		
-		// Status
-		String status = createStatus();
-		
-		return new Sim(id, operator, COUNTRIES[country], status);
-	}
-	
-	
-	/**
-	 * Select an status with different probabilities
-	 * 
-	 * <ul>
-	 * <li>Active ~ 60%
-	 * <li>Waiting for activation ~ 30%
-	 * <li>Deactivated ~ 9%
-	 * <li>Blocked ~ 1%
-	 * </ul>
-	 * @return
-	 */
-	private static String createStatus() {
-		float statusProb = rand.nextFloat();
-		String status = "Active";
-		if (statusProb > 0.99) {
-			status = "Blocked";
-		} else if (statusProb > 0.9) {
-			status = "Deactivated";
-		} else if (statusProb > 0.6) {
-			status = "Waiting for activation";
+		int nThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		ExecutorService generators = Executors.newFixedThreadPool(nThreads);
+		try {
+			// Batches are generated in parallel, but written in order. Only a few
+			// of them are kept in memory at the same time
+			Deque<CompletableFuture<InventoryGenerator.Batch>> pending = new ArrayDeque<>();
+			int next = 0;
+			while (next < size || !pending.isEmpty()) {
+				while (next < size && pending.size() < 2 * nThreads) {
+					int from = next;
+					int to = Math.min(size, from + batchSize);
+					pending.add(CompletableFuture.supplyAsync(() -> generator.createBatch(from, to), generators));
+					next = to;
+				}
+				InventoryGenerator.Batch batch = pending.poll().join();
+				writer.insert(batch.getSims(), batch.getDevices());
+				log.debug("Stored {} SIMs and devices", batch.getSims().size());
+			}
+		} finally {
+			generators.shutdownNow();
 		}
-		
-		return status;
+
+		log.info("Database initialized");
 	}
 
-	
-	/**
-	 * List of available countries to be picked from.
-	 */
-	private static final String COUNTRIES[] = new String[] {"Spain", "Italy", "Germany", "UK"};
-	
-	
 	/**
-	 * Random number generator, to be shared for all methods in the class.
+	 * Default number of SIMs and devices
 	 */
-	private static final Random rand = new Random();
+	private static final int DEFAULT_SIZE = 200000;
 }
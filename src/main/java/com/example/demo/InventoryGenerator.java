@@ -0,0 +1,207 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Generator of random SIMs and devices, used to initialize the database and by
+ * the benchmarks.
+ * 
+ * The data only depends on the size and the seed, so the same dataset can be
+ * generated again. Batches may be generated in any order, or in parallel: each
+ * one has its own random number generator, derived from the seed and its first
+ * position.
+ * 
+ * The SIM IDs are a random permutation of a consecutive range. Each batch takes
+ * its slice of the permutation, and creates as many SIMs and devices.
+ * Approximately half of the devices are ready for sale, and they are assigned
+ * the SIM in their same position, so SIMs are never repeated and a batch can be
+ * written in a single transaction.
+ */
+public class InventoryGenerator {
+
+	/**
+	 * ID of the first generated SIM
+	 */
+	public static final long FIRST_SIM_ID = 10000000l;
+
+	/**
+	 * List of available countries to be picked from.
+	 */
+	private static final Country COUNTRIES[] = Country.values();
+
+	/**
+	 * Odd constant to spread the seeds of the batches (golden ratio)
+	 */
+	private static final long BATCH_SEED_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	private final long seed;
+
+	private final int[] simOffsets;
+
+	/**
+	 * Creates the generator
+	 * 
+	 * @param size Number of SIMs and devices to generate
+	 * @param seed Seed of the random data
+	 */
+	public InventoryGenerator(int size, long seed) {
+		this.seed = seed;
+		this.simOffsets = permutation(size, new SplittableRandom(seed));
+	}
+
+	/**
+	 * @return Number of SIMs and devices to generate
+	 */
+	public int getSize() {
+		return simOffsets.length;
+	}
+
+	/**
+	 * Generates the SIMs and devices of the positions [from, to)
+	 * 
+	 * @param from First position, inclusive
+	 * @param to   Last position, exclusive
+	 * @return The generated batch
+	 */
+	public Batch createBatch(int from, int to) {
+		SplittableRandom rand = new SplittableRandom(seed * BATCH_SEED_MULTIPLIER + from);
+		Batch batch = new Batch(to - from);
+		for (int i = from; i < to; i++) {
+			Sim sim = createSim(FIRST_SIM_ID + simOffsets[i], rand);
+			batch.sims.add(sim);
+			batch.devices.add(createDevice(sim, rand));
+		}
+		return batch;
+	}
+
+	/**
+	 * Shuffles the numbers from 0 to size - 1 (Fisher-Yates)
+	 * 
+	 * @param size Number of elements
+	 * @param rand Random number generator
+	 * @return The permutation
+	 */
+	private static int[] permutation(int size, SplittableRandom rand) {
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int tmp = values[i];
+			values[i] = values[j];
+			values[j] = tmp;
+		}
+		return values;
+	}
+
+	/**
+	 * Function to create a device, randomly assigning (or not) a SIM, and
+	 * a temperature.
+	 * 
+	 * @param sim  The SIM to be assigned if the device is ready. It is not used
+	 * 	by any other device
+	 * @param rand Random number generator
+	 * @return The generated device
+	 */
+	private static Device createDevice(Sim sim, SplittableRandom rand) {
+		float readyProb = (float) rand.nextDouble();
+		DeviceStatus status = null;
+		Sim assigned = null;
+		Float temperature = null;
+		if (readyProb > 0.5) {
+			status = DeviceStatus.READY;
+			assigned = sim;
+			temperature = -25 + (85 + 25) * (float) rand.nextDouble();
+		} 
+		
+		return new Device(status, temperature, assigned);
+	}
+
+	
+	/**
+	 * It randomly generates a SIM object with certain SIM id.
+	 * 
+	 * Country value is taken from COUNTRIES, with uniform probability.
+	 * Operator code is assigned a random integer, so that different countries
+	 * will have different operators. 
+	 *  
+	 * @param id The SIM id
+	 * @param rand Random number generator
+	 * @return The generated SIM object
+	 */
+	private static Sim createSim(long id, SplittableRandom rand) {
+		// Country
+		int country = rand.nextInt(COUNTRIES.length);
+		
+		// Operator
+		int operator = 10 * country + rand.nextInt(4);
+		
+		// Status
+		SimStatus status = createStatus(rand);
+		
+		return new Sim(id, operator, COUNTRIES[country], status);
+	}
+	
+	
+	/**
+	 * Select an status with different probabilities
+	 * 
+	 * <ul>
+	 * <li>Active ~ 60%
+	 * <li>Waiting for activation ~ 30%
+	 * <li>Deactivated ~ 9%
+	 * <li>Blocked ~ 1%
+	 * </ul>
+	 * @param rand Random number generator
+	 * @return
+	 */
+	private static SimStatus createStatus(SplittableRandom rand) {
+		float statusProb = (float) rand.nextDouble();
+		SimStatus status = SimStatus.ACTIVE;
+		if (statusProb > 0.99) {
+			status = SimStatus.BLOCKED;
+		} else if (statusProb > 0.9) {
+			status = SimStatus.DEACTIVATED;
+		} else if (statusProb > 0.6) {
+			status = SimStatus.WAITING_FOR_ACTIVATION;
+		}
+		
+		return status;
+	}
+
+	/**
+	 * SIMs and devices generated together, to be stored in the same transaction
+	 */
+	public static class Batch {
+		private final List<Sim> sims;
+		private final List<Device> devices;
+
+		private Batch(int size) {
+			sims = new ArrayList<>(size);
+			devices = new ArrayList<>(size);
+		}
+
+		/**
+		 * @return The generated SIMs
+		 */
+		public List<Sim> getSims() {
+			return sims;
+		}
+
+		/**
+		 * @return The generated devices. Ready devices reference SIMs of the same batch
+		 */
+		public List<Device> getDevices() {
+			return devices;
+		}
+	}
+}
@@ -2,11 +2,23 @@ package com.example.demo;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcAutoConfiguration;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcTransactionManagerAutoConfiguration;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.core.Ordered;
 
 /**
  * Main SpringBoot application
+ * 
+ * The datasource and the JPA transaction manager are the main ones: the
+ * reactive endpoints use their own R2DBC connections, see
+ * {@link com.example.demo.reactive.ReactiveConfiguration}
+ * 
+ * The cache is checked before starting a transaction, so cached listings do not
+ * take a connection.
  */
-@SpringBootApplication
+@SpringBootApplication(exclude = { R2dbcAutoConfiguration.class, R2dbcTransactionManagerAutoConfiguration.class })
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 public class ShopTrackingApplication {
 
 	public static void main(String[] args) {
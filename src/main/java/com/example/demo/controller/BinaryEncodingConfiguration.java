@@ -0,0 +1,41 @@
+package com.example.demo.controller;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Binary encodings of the API, selected with the Accept and Content-Type
+ * headers: CBOR (application/cbor) and Smile (application/x-jackson-smile).
+ *
+ * They are the same Jackson data model as the JSON, with the same property
+ * names and enum labels, so the entities need no changes. The mappers are
+ * built from the application's builder, to get the same configuration as the
+ * JSON one.
+ */
+@Configuration
+public class BinaryEncodingConfiguration {
+
+	/**
+	 * @param builder The builder of the application mappers
+	 * @return The CBOR converter
+	 */
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+	/**
+	 * @param builder The builder of the application mappers
+	 * @return The Smile converter
+	 */
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+	}
+}
@@ -0,0 +1,46 @@
+package com.example.demo.controller;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.convert.converter.ConverterFactory;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.example.demo.model.CodedEnum;
+
+/**
+ * Binding of the {@link CodedEnum} request parameters, such as
+ * <code>?country=Italy</code>. They accept the label used in the JSON, as the
+ * clients read it from the responses, and the name of the constant, as before.
+ *
+ * It takes precedence over the default conversion of the enums, by constant
+ * name only, as the conversion service looks for the interfaces of the enum
+ * before {@link Enum}.
+ */
+@Configuration
+public class CodedEnumConfiguration implements WebMvcConfigurer {
+
+	@Override
+	public void addFormatters(FormatterRegistry registry) {
+		registry.addConverterFactory(new StringToCodedEnum());
+	}
+
+	private static class StringToCodedEnum implements ConverterFactory<String, CodedEnum> {
+
+		@Override
+		public <T extends CodedEnum> Converter<String, T> getConverter(Class<T> targetType) {
+			return source -> {
+				String value = source.trim();
+				if (value.isEmpty()) {
+					return null;
+				}
+				for (T constant : targetType.getEnumConstants()) {
+					if (constant.getLabel().equals(value) || ((Enum<?>) constant).name().equals(value)) {
+						return constant;
+					}
+				}
+				throw new IllegalArgumentException("Unknown " + targetType.getSimpleName() + ": " + value);
+			};
+		}
+	}
+}
@@ -1,54 +1,282 @@
 package com.example.demo.controller;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.collections4.IterableUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
 
+import com.example.demo.metrics.RequestStatistics;
+import com.example.demo.model.Country;
 import com.example.demo.model.Device;
+import com.example.demo.model.DeviceChange;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+import com.example.demo.service.DeviceChangeFeed;
+import com.example.demo.service.DeviceListings;
 import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.DeviceUpdateResult;
+import com.example.demo.service.ForSaleFilter;
+import com.example.demo.service.ImportReport;
+import com.example.demo.service.InventoryImporter;
+import com.example.demo.service.InventoryVersion;
+import com.example.demo.service.InventoryWriter;
+import com.example.demo.service.SimPool;
+import com.example.demo.service.SimRepository;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * REST API for the device interaction
+ * 
+ * Devices are read and written as JSON by default, or in a binary encoding
+ * (CBOR or Smile) selected with the Accept and Content-Type headers, see
+ * {@link BinaryEncodingConfiguration}.
  */
 @RestController
-@RequestMapping(path = "/api/device", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+@RequestMapping(path = "/api/device", consumes = { MediaType.APPLICATION_JSON_VALUE,
+		MediaType.APPLICATION_CBOR_VALUE, DeviceController.APPLICATION_SMILE_VALUE }, produces = {
+				MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE,
+				DeviceController.APPLICATION_SMILE_VALUE })
 public class DeviceController {
 
+	/**
+	 * Cache of the full waiting-activation listing
+	 */
+	public static final String WAITING_ACTIVATION_CACHE = DeviceListings.WAITING_ACTIVATION_CACHE;
+
+	/**
+	 * Cache of the full available-for-sale listing
+	 */
+	public static final String AVAILABLE_FOR_SALE_CACHE = DeviceListings.AVAILABLE_FOR_SALE_CACHE;
+
+	/**
+	 * Media type of the CSV import files
+	 */
+	public static final String TEXT_CSV_VALUE = "text/csv";
+
+	/**
+	 * Media type of the Smile encoding
+	 */
+	public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
 	@Autowired
 	private DeviceRepository repository;
 
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private InventoryImporter importer;
+
+	@Autowired
+	private InventoryWriter writer;
+
+	@Autowired
+	private DeviceJsonCache jsonCache;
+
+	@Autowired
+	private DeviceListings listings;
+
+	@Autowired
+	private InventoryVersion version;
+
+	@Autowired
+	private DeviceChangeFeed changeFeed;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private SimPool simPool;
+
+	/**
+	 * Number of devices written between flushes of the response, when streaming
+	 */
+	@Value("${device.stream.chunk-size:1000}")
+	private int streamChunkSize;
+
+	/**
+	 * Maximum page size allowed in the paginated endpoints
+	 */
+	@Value("${device.page.max-limit:10000}")
+	private int maxPageLimit;
+
+	/**
+	 * Maximum number of devices in a batch update
+	 */
+	@Value("${device.update.max-items:10000}")
+	private int maxUpdateItems;
+
+	/**
+	 * Maximum number of SIMs taken from the pool in an assignment, skipping the
+	 * ones no longer free
+	 */
+	@Value("${sim.pool.max-attempts:10}")
+	private int maxAssignAttempts;
+
+	/**
+	 * Time between heartbeats of the change streams
+	 */
+	@Value("${device.changes.heartbeat-ms:15000}")
+	private long changesHeartbeatMs;
+
+	/**
+	 * Events kept for a change stream whose client does not read them fast
+	 * enough, before it is closed
+	 */
+	@Value("${device.changes.client-buffer-size:1000}")
+	private int changesClientBufferSize;
+
+	/**
+	 * Maximum number of change streams being written at the same time
+	 */
+	@Value("${device.changes.max-writers:256}")
+	private int changesMaxWriters;
+
+	/**
+	 * Writes the events of the change streams
+	 */
+	private Scheduler changesWriter;
+
+	/**
+	 * Starts the writer of the change streams. Its threads are only started to
+	 * write, and end once idle, so an idle stream does not hold one
+	 */
+	@PostConstruct
+	void startChangesWriter() {
+		changesWriter = Schedulers.fromExecutorService(new ThreadPoolExecutor(0, changesMaxWriters, 60,
+				TimeUnit.SECONDS, new SynchronousQueue<>(), new CustomizableThreadFactory("change-stream-")),
+				"change-stream");
+	}
+
+	/**
+	 * Stops the writer of the change streams
+	 */
+	@PreDestroy
+	void stopChangesWriter() {
+		changesWriter.dispose();
+	}
+
 	/**
 	 * Returns all devices in the warehouse that are waiting for activation.
 	 * 
-	 * @return The list of devices
+	 * The result is cached until a device is modified or deleted. Its ETag is
+	 * the inventory version: if it is still current, a request with it in
+	 * If-None-Match gets 304 NOT MODIFIED, without reading the devices.
+	 * 
+	 * @param headers The request headers
+	 * @return The list of devices, or 304 NOT MODIFIED
 	 */
 	@GetMapping("/waiting-activation")
-	public List<Device> findWaitingActivation() {
-		return IterableUtils.toList(repository.findBySimStatus("Waiting for activation"));
+	public ResponseEntity<List<DeviceView>> findWaitingActivation(@RequestHeader HttpHeaders headers) {
+		if (isNotModified(headers)) {
+			return notModified(headers);
+		}
+		DeviceListings.Listing listing = listings.findWaitingActivation();
+		return ok(listing, headers).body(listing.getItems());
 	}
 
 	/**
-	 * Management endpoint to remove a device
+	 * Returns a page of the devices waiting for activation, ordered by device ID.
+	 * It is validated with the inventory version, as the full listing.
+	 * 
+	 * @param after   Cursor returned by the previous page, or null for the first
+	 *                one
+	 * @param limit   Maximum number of devices in the page
+	 * @param headers The request headers
+	 * @return The page of devices, 304 NOT MODIFIED, or 400 BAD REQUEST if the
+	 *         limit is not valid
+	 */
+	@GetMapping(path = "/waiting-activation", params = "limit")
+	public ResponseEntity<DevicePage> findWaitingActivationPage(@RequestParam(required = false) Long after,
+			@RequestParam int limit, @RequestHeader HttpHeaders headers) {
+		if (limit < 1 || limit > maxPageLimit) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (isNotModified(headers)) {
+			return notModified(headers);
+		}
+		DeviceListings.Listing listing = listings
+				.findWaitingActivationPage(after == null ? Long.MIN_VALUE : after, limit);
+		return ok(listing, headers).body(toPage(listing.getItems(), limit, DeviceView::getId));
+	}
+
+	/**
+	 * Returns a device. Its version is returned as the ETag, to be used in
+	 * conditional updates.
+	 * 
+	 * @param id The device ID
+	 * @return The device, or 404 NOT FOUND
+	 */
+	@Transactional(readOnly = true)
+	@GetMapping("/{id}")
+	public ResponseEntity<Device> findDevice(@PathVariable long id) {
+		Optional<Device> stored = repository.findById(id);
+		if (stored.isPresent()) {
+			return ResponseEntity.ok().eTag(Long.toString(stored.get().getVersion())).body(stored.get());
+		} else {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Management endpoint to remove a device. It is removed with a single
+	 * statement.
 	 * 
 	 * @param id The device ID
 	 * @return 200 OK or 404 NOT FOUND
 	 */
+	@Transactional
+	@CacheEvict(cacheNames = { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
 	@DeleteMapping("/{id}")
 	public ResponseEntity<String> deleteDevice(@PathVariable long id) {
-		if (repository.existsById(id)) {
-			repository.deleteById(id);
+		if (repository.deleteDevice(id) > 0) {
+			jsonCache.evict(id);
 			return new ResponseEntity<>(HttpStatus.OK);
 		} else {
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -58,28 +286,437 @@ public class DeviceController {
 	/**
 	 * Management endpoint to update a device
 	 * 
-	 * @param id The device ID
-	 * @param    new device data to update
-	 * @return 200 UPDATED or 404 NOT FOUND
+	 * If the request has an If-Match header with the device ETag (its version),
+	 * the device is updated with a single statement, only if it has not been
+	 * modified since. Otherwise, the device is read and updated. In both cases the
+	 * new ETag is returned.
+	 * 
+	 * @param id      The device ID
+	 * @param ifMatch The expected ETag, or null
+	 * @param device  new device data to update
+	 * @return 200 UPDATED (204 NO CONTENT if conditional), 404 NOT FOUND if the
+	 *         device or the SIM do not exist, 412 PRECONDITION FAILED if the device
+	 *         was modified, or 400 BAD REQUEST if the ETag is not valid
 	 */
+	@Transactional
+	@CacheEvict(cacheNames = { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
 	@PutMapping("/{id}")
-	public ResponseEntity<Device> modifyDevice(@PathVariable long id, @RequestBody Device device) {
+	public ResponseEntity<Device> modifyDevice(@PathVariable long id,
+			@RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+			@RequestBody Device device) {
+		if (ifMatch != null && !ifMatch.trim().equals("*")) {
+			Long version = parseETag(ifMatch);
+			if (version == null) {
+				return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			}
+			Sim sim = device.getSim() == null ? null : sims.getById(device.getSim().getId());
+			try {
+				if (repository.updateIfVersion(id, version, device.getStatus(), device.getTemperature(), sim) > 0) {
+					jsonCache.evict(id);
+					return ResponseEntity.noContent().eTag(Long.toString(version + 1)).build();
+				}
+			} catch (DataIntegrityViolationException e) {
+				// The SIM is only checked when the update fails, so the update is still a
+				// single statement. The transaction cannot commit anymore
+				TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+				if (sim != null && !sims.existsById(sim.getId())) {
+					return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+				}
+				throw e;
+			}
+			return new ResponseEntity<>(
+					repository.existsById(id) ? HttpStatus.PRECONDITION_FAILED : HttpStatus.NOT_FOUND);
+		}
+
 		Optional<Device> stored = repository.findById(id);
-		if (stored.isPresent()) {
-			return new ResponseEntity<>(repository.save(device), HttpStatus.OK);
+		Optional<Sim> sim = device.getSim() == null ? Optional.empty() : sims.findById(device.getSim().getId());
+		if (stored.isPresent() && (device.getSim() == null || sim.isPresent())) {
+			stored.get().update(device.getStatus(), device.getTemperature(), sim.orElse(null));
+			Device saved = repository.saveAndFlush(stored.get());
+			jsonCache.evict(id);
+			return ResponseEntity.ok().eTag(Long.toString(saved.getVersion())).body(saved);
 		} else {
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		}
 	}
 
+	/**
+	 * Assigns a free SIM of a country to a device, taken from the {@link SimPool}.
+	 * The device keeps its status and temperature.
+	 * 
+	 * The device is locked first, and then the SIM taken from the pool, which is
+	 * checked to be still free. If it is not (it was assigned or changed since it
+	 * was read), another one is taken, up to {@link #maxAssignAttempts} times. As
+	 * concurrent assignments take different SIMs, they do not collide on the
+	 * unique SIM of the devices.
+	 * 
+	 * Each attempt is a transaction of its own, rolled back if the SIM is not
+	 * free, so an assignment never holds the lock of a SIM while waiting for
+	 * another one. Otherwise two of them could wait for each other on SIMs that
+	 * were in the pool twice.
+	 * 
+	 * @param id      The device ID
+	 * @param country Country of the SIM, by label (e.g. <code>Germany</code>) or
+	 *                name
+	 * @return 200 OK with the device, 404 NOT FOUND if the device does not exist,
+	 *         or 409 CONFLICT if no free SIM was found
+	 */
+	@CacheEvict(cacheNames = { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
+	@PostMapping(path = "/{id}/assign-sim", consumes = MediaType.ALL_VALUE)
+	public ResponseEntity<Device> assignSim(@PathVariable long id, @RequestParam Country country) {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		for (int attempt = 0; attempt < maxAssignAttempts; attempt++) {
+			ResponseEntity<Device> response = transaction.execute(status -> {
+				Optional<Device> stored = repository.findForUpdate(id);
+				if (!stored.isPresent()) {
+					return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+				}
+				Long simId = simPool.take(country);
+				if (simId == null) {
+					return new ResponseEntity<>(HttpStatus.CONFLICT);
+				}
+				Optional<Sim> sim = sims.findForUpdate(simId);
+				if (!sim.isPresent() || !sims.isFree(simId, country, SimPool.ASSIGNABLE)) {
+					// Releases the SIM before the next attempt
+					status.setRollbackOnly();
+					return null;
+				}
+				Device device = stored.get();
+				device.update(device.getStatus(), device.getTemperature(), sim.get());
+				Device saved = repository.saveAndFlush(device);
+				jsonCache.evict(id);
+				return ResponseEntity.ok().eTag(Long.toString(saved.getVersion())).body(saved);
+			});
+			if (response != null) {
+				return response;
+			}
+		}
+		return new ResponseEntity<>(HttpStatus.CONFLICT);
+	}
+
+	/**
+	 * Maps the integrity violations (e.g. a SIM already assigned to another
+	 * device, or a SIM that does not exist) to 409 CONFLICT
+	 * 
+	 * @param e The exception
+	 * @return 409 CONFLICT
+	 */
+	@ExceptionHandler(DataIntegrityViolationException.class)
+	public ResponseEntity<String> handleIntegrityViolation(DataIntegrityViolationException e) {
+		return new ResponseEntity<>(HttpStatus.CONFLICT);
+	}
+
+	/**
+	 * Maps an invalid header of an imported CSV file to 400 BAD REQUEST, with the
+	 * reason
+	 * 
+	 * @param e The exception
+	 * @return 400 BAD REQUEST
+	 */
+	@ExceptionHandler(InventoryImporter.InvalidHeaderException.class)
+	public ResponseEntity<String> handleInvalidHeader(InventoryImporter.InvalidHeaderException e) {
+		return ResponseEntity.badRequest().contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+	}
+
+	/**
+	 * Management endpoint to update a batch of devices, in a single transaction.
+	 * 
+	 * Each device is updated or rejected independently, so a missing device or a
+	 * SIM already assigned do not abort the rest.
+	 * 
+	 * @param devices new data of the devices to update, with their IDs
+	 * @return The result of each device, in the same order, or 400 BAD REQUEST if
+	 *         there are too many devices
+	 */
+	@CacheEvict(cacheNames = { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
+	@PutMapping
+	public ResponseEntity<List<DeviceUpdateResult>> modifyDevices(@RequestBody List<Device> devices) {
+		if (devices.size() > maxUpdateItems) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		List<DeviceUpdateResult> results = writer.update(devices);
+		jsonCache.evict(devices.stream().map(Device::getId).collect(Collectors.toList()));
+		return new ResponseEntity<>(results, HttpStatus.OK);
+	}
+
+	/**
+	 * Management endpoint to import an inventory file, with SIMs and devices to be
+	 * created or updated. The file is read and written in batches, while it is
+	 * received.
+	 * 
+	 * @param contentType text/csv or application/x-ndjson
+	 * @param body        The file
+	 * @return The import report, with the rejected records, or 400 BAD REQUEST if
+	 *         the header of a CSV file is invalid
+	 * @throws IOException If the body cannot be read
+	 */
+	@CacheEvict(cacheNames = { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }, allEntries = true)
+	@PostMapping(path = "/import", consumes = { TEXT_CSV_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+	public ImportReport importInventory(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+			InputStream body) throws IOException {
+		InventoryImporter.Format format = MediaType.APPLICATION_NDJSON.includes(contentType)
+				? InventoryImporter.Format.NDJSON
+				: InventoryImporter.Format.CSV;
+		try {
+			return importer.importStream(body, format);
+		} finally {
+			jsonCache.clear();
+		}
+	}
+
 	/**
 	 * Gets an ordered result of devices available for sale. They are ordered by SIM
 	 * ID.
 	 * 
-	 * @return The list of devices
+	 * The result is cached until a device is modified or deleted, and validated
+	 * with the inventory version, as the waiting-activation listing.
+	 * 
+	 * The devices can be filtered by the country and operator of their SIM, and by
+	 * another temperature range, e.g.
+	 * <code>?country=UK&amp;operator=10&amp;minTemp=0&amp;maxTemp=40</code>. The
+	 * filtered listings are not cached, and the filters are applied by the
+	 * database.
+	 * 
+	 * @param filter  The filter, from the query parameters
+	 * @param headers The request headers
+	 * @return The list of devices, 304 NOT MODIFIED, or 400 BAD REQUEST if the
+	 *         temperature range is empty
 	 */
 	@GetMapping("/available-for-sale")
-	public List<Device> findAvailableForSale() {
-		return IterableUtils.toList(repository.findForSale());
+	public ResponseEntity<List<DeviceView>> findAvailableForSale(ForSaleFilter filter,
+			@RequestHeader HttpHeaders headers) {
+		if (!filter.isValid()) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (isNotModified(headers)) {
+			return notModified(headers);
+		}
+		DeviceListings.Listing listing = filter.isNone() ? listings.findAvailableForSale()
+				: listings.findAvailableForSalePage(filter, Long.MIN_VALUE, Integer.MAX_VALUE);
+		return ok(listing, headers).body(listing.getItems());
+	}
+
+	/**
+	 * Returns a page of the devices available for sale, ordered by SIM ID. It is
+	 * validated with the inventory version, and filtered, as the full listing.
+	 * 
+	 * @param after   Cursor returned by the previous page, or null for the first
+	 *                one
+	 * @param limit   Maximum number of devices in the page
+	 * @param filter  The filter, from the query parameters
+	 * @param headers The request headers
+	 * @return The page of devices, 304 NOT MODIFIED, or 400 BAD REQUEST if the
+	 *         limit or the temperature range are not valid
+	 */
+	@GetMapping(path = "/available-for-sale", params = "limit")
+	public ResponseEntity<DevicePage> findAvailableForSalePage(@RequestParam(required = false) Long after,
+			@RequestParam int limit, ForSaleFilter filter, @RequestHeader HttpHeaders headers) {
+		if (limit < 1 || limit > maxPageLimit || !filter.isValid()) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		if (isNotModified(headers)) {
+			return notModified(headers);
+		}
+		DeviceListings.Listing listing = listings.findAvailableForSalePage(filter,
+				after == null ? Long.MIN_VALUE : after, limit);
+		return ok(listing, headers).body(toPage(listing.getItems(), limit, d -> d.getSim().getId()));
+	}
+
+	/**
+	 * Streams the devices available for sale as newline delimited JSON, ordered by
+	 * SIM ID.
+	 * 
+	 * Rows are read from a database cursor and written as soon as they arrive.
+	 * They are projected to {@link DeviceView}, so nothing is kept in the
+	 * persistence context, and every {@link #streamChunkSize} devices the response
+	 * is flushed. This way the memory usage does not depend on the number of
+	 * devices. Each line is the cached JSON fragment of the device.
+	 * 
+	 * If the in-memory index is ready, the devices are read from it instead, a
+	 * chunk at a time, without a transaction. So are the filtered devices (see
+	 * {@link #findAvailableForSale(ForSaleFilter, HttpHeaders)}), a page at a
+	 * time from the database.
+	 * 
+	 * @param filter   The filter, from the query parameters
+	 * @param response The HTTP response to write to
+	 * @throws IOException If the response cannot be written
+	 */
+	@GetMapping(path = "/available-for-sale", produces = MediaType.APPLICATION_NDJSON_VALUE)
+	public void streamAvailableForSale(ForSaleFilter filter, HttpServletResponse response) throws IOException {
+		if (!filter.isValid()) {
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			return;
+		}
+		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+		OutputStream out = new BufferedOutputStream(response.getOutputStream());
+		if (listings.isIndexReady() || !filter.isNone()) {
+			int count = 0;
+			List<DeviceView> chunk;
+			long after = Long.MIN_VALUE;
+			do {
+				chunk = listings.findAvailableForSalePage(filter, after, streamChunkSize).getItems();
+				for (DeviceView device : chunk) {
+					out.write(jsonCache.get(device));
+					out.write('\n');
+					after = device.getSim().getId();
+				}
+				out.flush();
+				count += chunk.size();
+			} while (chunk.size() == streamChunkSize);
+			RequestStatistics.rows(count);
+			return;
+		}
+
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		transaction.executeWithoutResult(status -> {
+			try (Stream<DeviceView> stream = repository.streamViewForSale(Long.MIN_VALUE)) {
+				int count = 0;
+				Iterator<DeviceView> it = stream.iterator();
+				while (it.hasNext()) {
+					out.write(jsonCache.get(it.next()));
+					out.write('\n');
+					if (++count % streamChunkSize == 0) {
+						out.flush();
+					}
+				}
+				out.flush();
+				RequestStatistics.rows(count);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Streams the devices that join or leave the listings, as server-sent events.
+	 * 
+	 * Each change is a "change" event with a {@link DeviceChange}. A "reset"
+	 * event means the listings must be read again: it is the first one of a new
+	 * stream, and it is sent as well when the database is cleared, or when the
+	 * client resumes from an event that is no longer kept. The event IDs are the
+	 * sequence numbers of the {@link DeviceChangeFeed}, so a client reconnecting
+	 * with Last-Event-ID gets the events it missed. The connection does not hold
+	 * a thread while idle, and a comment is sent every
+	 * {@link #changesHeartbeatMs} to detect the closed ones.
+	 * 
+	 * The writes block while the client does not read, so they are not made on
+	 * the shared threads that read the feed, but on a thread of
+	 * {@link #changesWriter} taken for the stream until it has written its
+	 * pending events. Meanwhile, up to {@link #changesClientBufferSize} events
+	 * are kept for it. If it falls further behind, or all the writers are busy,
+	 * the stream is closed once the blocked write ends, and the client resumes
+	 * with Last-Event-ID.
+	 * 
+	 * @param lastEventId ID of the last event received, if resuming
+	 * @return The event stream
+	 */
+	@GetMapping(path = "/changes", consumes = MediaType.ALL_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter streamChanges(@RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+		SseEmitter emitter = new SseEmitter(0L);
+		Flux<SseEventBuilder> heartbeats = Flux.interval(Duration.ofMillis(changesHeartbeatMs),
+				Schedulers.boundedElastic()).map(tick -> SseEmitter.event().comment(""));
+		Disposable subscription = changeFeed.subscribe(lastEventId).map(DeviceController::toEvent)
+				.mergeWith(heartbeats).onBackpressureBuffer(changesClientBufferSize).publishOn(changesWriter, 1)
+				.subscribe(event -> {
+					try {
+						emitter.send(event);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}, emitter::completeWithError);
+		emitter.onCompletion(subscription::dispose);
+		emitter.onError(error -> subscription.dispose());
+		return emitter;
+	}
+
+	/**
+	 * @param event An event of the change feed
+	 * @return The server-sent event
+	 */
+	private static SseEventBuilder toEvent(DeviceChangeFeed.Event event) {
+		SseEventBuilder builder = SseEmitter.event().id(Long.toString(event.getSequence()));
+		return event.isReset() ? builder.name("reset").data("{}", MediaType.APPLICATION_JSON)
+				: builder.name("change").data(event.getChange(), MediaType.APPLICATION_JSON);
+	}
+
+	/**
+	 * Builds a keyset page. If the page is full, the key of its last device is the
+	 * cursor for the next one.
+	 * 
+	 * @param items The devices in the page
+	 * @param limit The requested page size
+	 * @param key   Function to get the ordering key of a device
+	 * @return The page
+	 */
+	private static DevicePage toPage(List<DeviceView> items, int limit, ToLongFunction<DeviceView> key) {
+		Long next = items.size() < limit ? null : key.applyAsLong(items.get(items.size() - 1));
+		return new DevicePage(items, next);
+	}
+
+	/**
+	 * Builds the ETag of a listing: the inventory version it was read at, and a
+	 * hash of the headers that select its representation (encoding and
+	 * compression). This way it is a strong ETag, different for every
+	 * representation, and the compressed responses can keep it.
+	 * 
+	 * @param version The inventory version
+	 * @param headers The request headers
+	 * @return The ETag, quoted
+	 */
+	private static String eTag(long version, HttpHeaders headers) {
+		String variant = headers.getFirst(HttpHeaders.ACCEPT) + "|" + headers.getFirst(HttpHeaders.ACCEPT_ENCODING);
+		return "\"" + version + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+	}
+
+	/**
+	 * @param headers The request headers
+	 * @return Whether the If-None-Match header has the ETag of the current
+	 *         inventory version
+	 */
+	private boolean isNotModified(HttpHeaders headers) {
+		String current = eTag(version.get(), headers);
+		return headers.getIfNoneMatch().stream()
+				.anyMatch(tag -> tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(current));
+	}
+
+	/**
+	 * @param headers The request headers
+	 * @return 304 NOT MODIFIED, with the ETag of the current inventory version
+	 */
+	private <T> ResponseEntity<T> notModified(HttpHeaders headers) {
+		return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag(version.get(), headers))
+				.varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).build();
+	}
+
+	/**
+	 * @param listing The listing
+	 * @param headers The request headers
+	 * @return 200 OK, with the ETag of the listing
+	 */
+	private static ResponseEntity.BodyBuilder ok(DeviceListings.Listing listing, HttpHeaders headers) {
+		return ResponseEntity.ok().eTag(eTag(listing.getVersion(), headers)).varyBy(HttpHeaders.ACCEPT,
+				HttpHeaders.ACCEPT_ENCODING);
+	}
+
+	/**
+	 * Gets the version from an ETag, either strong or weak
+	 * 
+	 * @param etag The ETag
+	 * @return The version, or null if it is not valid
+	 */
+	public static Long parseETag(String etag) {
+		String value = etag.trim();
+		if (value.startsWith("W/")) {
+			value = value.substring(2);
+		}
+		if (value.length() < 2 || !value.startsWith("\"") || !value.endsWith("\"")) {
+			return null;
+		}
+		try {
+			return Long.parseLong(value.substring(1, value.length() - 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
 	}
 }
@@ -0,0 +1,134 @@
+package com.example.demo.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.DeviceView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * JSON encoding of each device of the listings, kept as bytes by device ID, so
+ * the listings are written by concatenating them instead of serializing every
+ * device again.
+ *
+ * A fragment is only reused if it was encoded from the same values as the row
+ * just read, so a listing that read a device before a concurrent update
+ * committed cannot leave a stale fragment behind. The writes still evict the
+ * devices they touch, to free the memory of the old fragments. The number of
+ * fragments is bounded by device.json-cache.max-size, least recently used
+ * first out.
+ */
+@Component
+public class DeviceJsonCache implements MeterBinder {
+
+	/**
+	 * Name of the cache in the metrics
+	 */
+	public static final String NAME = "device-json";
+
+	private final ObjectMapper mapper;
+
+	private final Cache<Long, Fragment> fragments;
+
+	/**
+	 * JSON encoding of a device, with the values it was encoded from
+	 */
+	private static class Fragment {
+
+		private final DeviceView view;
+
+		private final byte[] json;
+
+		private Fragment(DeviceView view, byte[] json) {
+			this.view = view;
+			this.json = json;
+		}
+	}
+
+	/**
+	 * Creates the cache
+	 *
+	 * @param mapper  The mapper of the application
+	 * @param maxSize Maximum number of devices kept
+	 */
+	public DeviceJsonCache(ObjectMapper mapper, @Value("${device.json-cache.max-size:250000}") long maxSize) {
+		this.mapper = mapper;
+		this.fragments = Caffeine.newBuilder().maximumSize(maxSize).recordStats().build();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		CaffeineCacheMetrics.monitor(registry, fragments, NAME);
+	}
+
+	/**
+	 * Gets the JSON encoding of a device, encoding it if it is not cached or it
+	 * has changed
+	 *
+	 * @param view The device
+	 * @return The JSON object, as UTF-8 bytes. It must not be modified
+	 * @throws IOException If the device cannot be encoded
+	 */
+	public byte[] get(DeviceView view) throws IOException {
+		Fragment fragment = fragments.getIfPresent(view.getId());
+		if (fragment == null || !fragment.view.equals(view)) {
+			fragment = new Fragment(view, mapper.writeValueAsBytes(view));
+			fragments.put(view.getId(), fragment);
+		}
+		return fragment.json;
+	}
+
+	/**
+	 * Writes devices as a JSON array
+	 *
+	 * @param views The devices
+	 * @param out   The output
+	 * @throws IOException If the output cannot be written
+	 */
+	public void writeArray(List<DeviceView> views, OutputStream out) throws IOException {
+		out.write('[');
+		for (int i = 0; i < views.size(); i++) {
+			if (i > 0) {
+				out.write(',');
+			}
+			out.write(get(views.get(i)));
+		}
+		out.write(']');
+	}
+
+	/**
+	 * Discards the fragment of a device
+	 *
+	 * @param id The device ID
+	 */
+	public void evict(long id) {
+		fragments.invalidate(id);
+	}
+
+	/**
+	 * Discards the fragments of some devices
+	 *
+	 * @param ids The device IDs
+	 */
+	public void evict(Collection<Long> ids) {
+		fragments.invalidateAll(ids);
+	}
+
+	/**
+	 * Discards all the fragments
+	 */
+	public void clear() {
+		fragments.invalidateAll();
+	}
+}
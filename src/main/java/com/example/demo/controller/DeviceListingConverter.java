@@ -0,0 +1,95 @@
+package com.example.demo.controller;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.DeviceView;
+
+/**
+ * Writes the device listings and pages as JSON from the fragments of
+ * {@link DeviceJsonCache}, with the same layout Jackson would produce. Being a
+ * bean, it is registered before the Jackson converter. Any other body is left
+ * to Jackson, and so are the requests.
+ */
+@Component
+public class DeviceListingConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+	private static final byte[] ITEMS = "{\"items\":".getBytes(StandardCharsets.UTF_8);
+
+	private static final byte[] NEXT = ",\"next\":".getBytes(StandardCharsets.UTF_8);
+
+	@Autowired
+	private DeviceJsonCache jsonCache;
+
+	/**
+	 * Creates the converter, for JSON
+	 */
+	public DeviceListingConverter() {
+		super(MediaType.APPLICATION_JSON);
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return DevicePage.class == clazz;
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		return canWrite(mediaType) && (supports(clazz)
+				|| (Collection.class.isAssignableFrom(clazz) && type != null
+						&& ResolvableType.forType(type).asCollection().resolveGeneric(0) == DeviceView.class));
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	protected void writeInternal(Object body, Type type, HttpOutputMessage outputMessage) throws IOException {
+		OutputStream out = new BufferedOutputStream(outputMessage.getBody());
+		if (body instanceof DevicePage) {
+			DevicePage page = (DevicePage) body;
+			out.write(ITEMS);
+			jsonCache.writeArray(page.getItems(), out);
+			out.write(NEXT);
+			out.write(String.valueOf(page.getNext()).getBytes(StandardCharsets.UTF_8));
+			out.write('}');
+		} else {
+			Collection<DeviceView> views = (Collection<DeviceView>) body;
+			jsonCache.writeArray(views instanceof List ? (List<DeviceView>) views : new ArrayList<>(views), out);
+		}
+		out.flush();
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("Only written", inputMessage);
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+		throw new HttpMessageNotReadableException("Only written", inputMessage);
+	}
+}
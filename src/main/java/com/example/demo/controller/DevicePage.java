@@ -0,0 +1,43 @@
+package com.example.demo.controller;
+
+import java.util.List;
+
+import com.example.demo.model.DeviceView;
+
+/**
+ * A page of devices returned by the keyset paginated endpoints.
+ * 
+ * The next page is requested passing {@link #getNext()} as the
+ * <code>after</code> parameter. When it is null, there are no more pages.
+ */
+public class DevicePage {
+
+	private final List<DeviceView> items;
+
+	private final Long next;
+
+	/**
+	 * Creates a page
+	 * 
+	 * @param items The devices in the page
+	 * @param next  The cursor of the next page, or null if this is the last one
+	 */
+	public DevicePage(List<DeviceView> items, Long next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	/**
+	 * @return The devices in the page
+	 */
+	public List<DeviceView> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return The cursor of the next page, or null if this is the last one
+	 */
+	public Long getNext() {
+		return next;
+	}
+}
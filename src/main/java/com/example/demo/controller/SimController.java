@@ -0,0 +1,104 @@
+package com.example.demo.controller;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.model.SimView;
+import com.example.demo.service.SimFilter;
+import com.example.demo.service.SimRepository;
+
+/**
+ * REST API for the SIM registry.
+ * 
+ * Every query is projected to {@link SimView}, resolved with an index, and run
+ * in a read-only transaction, so it goes to the replica if there is one.
+ */
+@RestController
+@RequestMapping(path = "/api/sim", produces = MediaType.APPLICATION_JSON_VALUE)
+public class SimController {
+
+	@Autowired
+	private SimRepository sims;
+
+	/**
+	 * Maximum page size of the search, and number of IDs of a multi-get
+	 */
+	@Value("${device.page.max-limit:10000}")
+	private int maxPageLimit;
+
+	/**
+	 * @param id The SIM ID
+	 * @return The SIM, or 404 NOT FOUND
+	 */
+	@Transactional(readOnly = true)
+	@GetMapping("/{id}")
+	public ResponseEntity<SimView> findSim(@PathVariable long id) {
+		Optional<SimView> stored = sims.findViewById(id);
+		if (stored.isPresent()) {
+			return ResponseEntity.ok(stored.get());
+		} else {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Gets several SIMs with a single statement, e.g. <code>?ids=1,2,3</code>
+	 * 
+	 * @param ids The SIM IDs. Empty ones, as in <code>?ids=</code>, are skipped
+	 * @return The SIMs that exist, ordered by ID, or 400 BAD REQUEST if there are
+	 *         more IDs than the maximum page size
+	 */
+	@Transactional(readOnly = true)
+	@GetMapping(params = "ids")
+	public ResponseEntity<List<SimView>> findSims(@RequestParam List<Long> ids) {
+		if (ids.size() > maxPageLimit) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		List<Long> present = ids.stream().filter(Objects::nonNull).collect(Collectors.toList());
+		if (present.isEmpty()) {
+			// Not worth a statement, and IN () is not valid SQL
+			return ResponseEntity.ok(List.of());
+		}
+		return ResponseEntity.ok(sims.findViewByIdIn(present));
+	}
+
+	/**
+	 * Searches the SIMs by status, country, operator code and whether they are
+	 * assigned to a device, e.g.
+	 * <code>?status=ACTIVE&amp;country=UK&amp;unassigned=true&amp;limit=100</code>.
+	 * The result is paginated by SIM ID, see {@link SimPage}.
+	 * 
+	 * @param filter The filter, from the query parameters
+	 * @param after  Cursor returned by the previous page, or null for the first
+	 *               one
+	 * @param limit  Maximum number of SIMs in the page, or null for the maximum
+	 *               page size
+	 * @return The page of SIMs, or 400 BAD REQUEST if the limit is not valid
+	 */
+	@Transactional(readOnly = true)
+	@GetMapping(params = "!ids")
+	public ResponseEntity<SimPage> searchSims(SimFilter filter, @RequestParam(required = false) Long after,
+			@RequestParam(required = false) Integer limit) {
+		int size = limit == null ? maxPageLimit : limit;
+		if (size < 1 || size > maxPageLimit) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		List<SimView> items = sims.findView(filter, after == null ? Long.MIN_VALUE : after, size);
+		Long next = items.size() < size ? null : items.get(items.size() - 1).getId();
+		return ResponseEntity.ok(new SimPage(items, next));
+	}
+}
@@ -0,0 +1,43 @@
+package com.example.demo.controller;
+
+import java.util.List;
+
+import com.example.demo.model.SimView;
+
+/**
+ * A page of SIMs returned by the SIM search, as {@link DevicePage}.
+ * 
+ * The next page is requested passing {@link #getNext()} as the
+ * <code>after</code> parameter. When it is null, there are no more pages.
+ */
+public class SimPage {
+
+	private final List<SimView> items;
+
+	private final Long next;
+
+	/**
+	 * Creates a page
+	 * 
+	 * @param items The SIMs in the page
+	 * @param next  The cursor of the next page, or null if this is the last one
+	 */
+	public SimPage(List<SimView> items, Long next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	/**
+	 * @return The SIMs in the page
+	 */
+	public List<SimView> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return The cursor of the next page, or null if this is the last one
+	 */
+	public Long getNext() {
+		return next;
+	}
+}
@@ -0,0 +1,35 @@
+package com.example.demo.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.example.demo.service.InventoryCounters;
+import com.example.demo.service.InventoryStats;
+
+/**
+ * REST API for the inventory statistics
+ */
+@RestController
+@RequestMapping(path = "/api/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+public class StatsController {
+
+	@Autowired
+	private InventoryCounters counters;
+
+	/**
+	 * Returns the number of SIMs by status, country and operator, and the number
+	 * of devices for sale by country and operator.
+	 * 
+	 * They are served from in-memory counters, kept up to date by every write, so
+	 * the cost does not depend on the size of the inventory.
+	 * 
+	 * @return The statistics
+	 */
+	@GetMapping
+	public InventoryStats getStats() {
+		return counters.get();
+	}
+}
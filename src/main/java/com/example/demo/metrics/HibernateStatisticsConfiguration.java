@@ -0,0 +1,62 @@
+package com.example.demo.metrics;
+
+import java.util.Collections;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registers the Hibernate listeners that fill the {@link RequestStatistics}.
+ * 
+ * The global Hibernate statistics (hibernate.generate_statistics) are
+ * published by Spring Boot as the hibernate.* metrics.
+ */
+@Configuration
+public class HibernateStatisticsConfiguration {
+
+	/**
+	 * @return Customizer adding the session listener, and the entity load
+	 *         listener
+	 */
+	@Bean
+	public HibernatePropertiesCustomizer requestStatisticsCustomizer() {
+		return properties -> {
+			properties.put("hibernate.session.events.auto", RequestStatisticsListener.class.getName());
+			properties.put("hibernate.integrator_provider",
+					(IntegratorProvider) () -> Collections.singletonList(new EntityLoadIntegrator()));
+		};
+	}
+
+	/**
+	 * Counts the entities loaded, as Hibernate statistics do, in the current
+	 * request
+	 */
+	private static class EntityLoadIntegrator implements Integrator {
+
+		@Override
+		public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+				SessionFactoryServiceRegistry serviceRegistry) {
+			serviceRegistry.getService(EventListenerRegistry.class).appendListeners(EventType.POST_LOAD,
+					(PostLoadEventListener) event -> {
+						RequestStatistics statistics = RequestStatistics.current();
+						if (statistics != null) {
+							statistics.entityLoads++;
+						}
+					});
+		}
+
+		@Override
+		public void disintegrate(SessionFactoryImplementor sessionFactory,
+				SessionFactoryServiceRegistry serviceRegistry) {
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.example.demo.metrics;
+
+import java.util.Collection;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import com.example.demo.controller.DevicePage;
+
+/**
+ * Counts the rows of the list and page responses, including those served from
+ * the cache, in the {@link RequestStatistics} of the request
+ */
+@ControllerAdvice
+public class ListingRowsAdvice implements ResponseBodyAdvice<Object> {
+
+	@Override
+	public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+		return true;
+	}
+
+	@Override
+	public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+			Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+			ServerHttpResponse response) {
+		if (body instanceof Collection) {
+			RequestStatistics.rows(((Collection<?>) body).size());
+		} else if (body instanceof DevicePage) {
+			RequestStatistics.rows(((DevicePage) body).getItems().size());
+		}
+		return body;
+	}
+}
@@ -0,0 +1,204 @@
+package com.example.demo.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records, for each request, where its time and size go. Spring Boot already
+ * records the latency (http.server.requests). This filter adds, with the same
+ * uri and method tags:
+ * <ul>
+ * <li>http.server.response.bytes: Size of the response body
+ * <li>http.server.response.rows: Rows returned by listings
+ * <li>http.server.requests.jdbc: Time spent executing SQL statements
+ * <li>http.server.requests.statements, http.server.requests.entity.loads and
+ * http.server.requests.flushes: Hibernate work
+ * </ul>
+ * Their percentiles are configured as any other meter
+ * (management.metrics.distribution.*).
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		RequestStatistics statistics = RequestStatistics.start();
+		CountingResponse counting = new CountingResponse(response);
+		try {
+			chain.doFilter(request, counting);
+		} finally {
+			RequestStatistics.end();
+			record(request, counting.bytes, statistics);
+		}
+	}
+
+	private void record(HttpServletRequest request, long bytes, RequestStatistics statistics) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		Tags tags = Tags.of("uri", pattern == null ? "UNKNOWN" : pattern.toString(), "method", request.getMethod());
+
+		DistributionSummary.builder("http.server.response.bytes").baseUnit("bytes").tags(tags).register(registry)
+				.record(bytes);
+		if (statistics.rows >= 0) {
+			DistributionSummary.builder("http.server.response.rows").baseUnit("rows").tags(tags).register(registry)
+					.record(statistics.rows);
+		}
+		Timer.builder("http.server.requests.jdbc").tags(tags).register(registry).record(statistics.jdbcNanos,
+				TimeUnit.NANOSECONDS);
+		DistributionSummary.builder("http.server.requests.statements").tags(tags).register(registry)
+				.record(statistics.statements);
+		DistributionSummary.builder("http.server.requests.entity.loads").tags(tags).register(registry)
+				.record(statistics.entityLoads);
+		DistributionSummary.builder("http.server.requests.flushes").tags(tags).register(registry)
+				.record(statistics.flushes);
+	}
+
+	/**
+	 * Counts the bytes written to the response body, through its output stream
+	 * or its writer. The characters written are counted as the bytes they are
+	 * encoded to, in the encoding of the response
+	 */
+	private static class CountingResponse extends HttpServletResponseWrapper {
+
+		private long bytes;
+
+		private ServletOutputStream stream;
+
+		private PrintWriter writer;
+
+		private CountingResponse(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (stream == null) {
+				ServletOutputStream delegate = super.getOutputStream();
+				stream = new ServletOutputStream() {
+
+					@Override
+					public void write(int b) throws IOException {
+						delegate.write(b);
+						bytes++;
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len) throws IOException {
+						delegate.write(b, off, len);
+						bytes += len;
+					}
+
+					@Override
+					public void flush() throws IOException {
+						delegate.flush();
+					}
+
+					@Override
+					public void close() throws IOException {
+						delegate.close();
+					}
+
+					@Override
+					public boolean isReady() {
+						return delegate.isReady();
+					}
+
+					@Override
+					public void setWriteListener(WriteListener listener) {
+						delegate.setWriteListener(listener);
+					}
+				};
+			}
+			return stream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				PrintWriter delegate = super.getWriter();
+				Charset charset = Charset.forName(getCharacterEncoding());
+				boolean singleByte = charset.equals(StandardCharsets.ISO_8859_1)
+						|| charset.equals(StandardCharsets.US_ASCII);
+				boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+				writer = new PrintWriter(new Writer() {
+
+					@Override
+					public void write(char[] chars, int off, int len) {
+						delegate.write(chars, off, len);
+						bytes += singleByte ? len
+								: utf8 ? utf8Length(CharBuffer.wrap(chars, off, len))
+										: charset.encode(CharBuffer.wrap(chars, off, len)).remaining();
+					}
+
+					@Override
+					public void write(String string, int off, int len) {
+						delegate.write(string, off, len);
+						bytes += singleByte ? len
+								: utf8 ? utf8Length(CharBuffer.wrap(string, off, off + len))
+										: charset.encode(CharBuffer.wrap(string, off, off + len)).remaining();
+					}
+
+					@Override
+					public void flush() {
+						delegate.flush();
+					}
+
+					@Override
+					public void close() {
+						delegate.close();
+					}
+				}) {
+
+					@Override
+					public boolean checkError() {
+						return super.checkError() || delegate.checkError();
+					}
+				};
+			}
+			return writer;
+		}
+
+		/**
+		 * @param chars Characters
+		 * @return The number of bytes they take in UTF-8, without encoding them
+		 */
+		private static long utf8Length(CharSequence chars) {
+			long length = 0;
+			for (int i = 0; i < chars.length(); i++) {
+				char c = chars.charAt(i);
+				// Each half of a surrogate pair counts for 2 of its 4 bytes
+				length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+			}
+			return length;
+		}
+	}
+}
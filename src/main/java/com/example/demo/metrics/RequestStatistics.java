@@ -0,0 +1,69 @@
+package com.example.demo.metrics;
+
+/**
+ * Work done by the request being processed in the current thread: SQL
+ * statements, entities loaded, flushes, time spent in JDBC calls and rows
+ * returned.
+ * 
+ * The counters are started and recorded by {@link RequestMetricsFilter}.
+ * Outside of a request (e.g. the database initialization) nothing is counted.
+ */
+public final class RequestStatistics {
+
+	private static final ThreadLocal<RequestStatistics> CURRENT = new ThreadLocal<>();
+
+	long statements;
+
+	long entityLoads;
+
+	long flushes;
+
+	long jdbcNanos;
+
+	/**
+	 * Rows returned, or -1 if the response is not a listing
+	 */
+	long rows = -1;
+
+	private RequestStatistics() {
+	}
+
+	/**
+	 * Sets the number of rows returned by a listing. Responses with a list body
+	 * are counted automatically, so it is only needed when the response is
+	 * written directly
+	 * 
+	 * @param count Number of rows
+	 */
+	public static void rows(long count) {
+		RequestStatistics current = CURRENT.get();
+		if (current != null) {
+			current.rows = count;
+		}
+	}
+
+	/**
+	 * Starts counting in the current thread
+	 * 
+	 * @return The counters of the request
+	 */
+	static RequestStatistics start() {
+		RequestStatistics statistics = new RequestStatistics();
+		CURRENT.set(statistics);
+		return statistics;
+	}
+
+	/**
+	 * Stops counting in the current thread
+	 */
+	static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * @return The counters of the current request, or null outside of a request
+	 */
+	static RequestStatistics current() {
+		return CURRENT.get();
+	}
+}
@@ -0,0 +1,58 @@
+package com.example.demo.metrics;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Counts the statements, flushes and JDBC time of each Hibernate session in
+ * the {@link RequestStatistics} of the current request. Hibernate creates one
+ * per session (hibernate.session.events.auto).
+ */
+public class RequestStatisticsListener extends BaseSessionEventListener {
+
+	private static final long serialVersionUID = 1L;
+
+	private long jdbcStart;
+
+	@Override
+	public void jdbcPrepareStatementEnd() {
+		RequestStatistics statistics = RequestStatistics.current();
+		if (statistics != null) {
+			statistics.statements++;
+		}
+	}
+
+	@Override
+	public void jdbcExecuteStatementStart() {
+		jdbcStart = System.nanoTime();
+	}
+
+	@Override
+	public void jdbcExecuteStatementEnd() {
+		addJdbcTime();
+	}
+
+	@Override
+	public void jdbcExecuteBatchStart() {
+		jdbcStart = System.nanoTime();
+	}
+
+	@Override
+	public void jdbcExecuteBatchEnd() {
+		addJdbcTime();
+	}
+
+	@Override
+	public void flushEnd(int numberOfEntities, int numberOfCollections) {
+		RequestStatistics statistics = RequestStatistics.current();
+		if (statistics != null) {
+			statistics.flushes++;
+		}
+	}
+
+	private void addJdbcTime() {
+		RequestStatistics statistics = RequestStatistics.current();
+		if (statistics != null) {
+			statistics.jdbcNanos += System.nanoTime() - jdbcStart;
+		}
+	}
+}
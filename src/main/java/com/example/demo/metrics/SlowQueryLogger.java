@@ -0,0 +1,154 @@
+package com.example.demo.metrics;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs the repository calls slower than slow-query.threshold-ms (500 by
+ * default; negative disables it), with their JPQL and bind parameters.
+ * 
+ * The methods returning a {@link Stream} are timed until the stream is closed,
+ * as the rows are fetched while it is consumed. Collection and array
+ * parameters are logged with their first {@link #LOGGED_ELEMENTS} elements
+ * and their size, and any parameter is cut at {@link #LOGGED_LENGTH}
+ * characters, so a query by thousands of IDs does not flood the log.
+ * 
+ * Queries run outside the repositories are logged by Hibernate, as SQL, with
+ * the same threshold (org.hibernate.SQL_SLOW logger).
+ */
+@Component
+public class SlowQueryLogger implements BeanPostProcessor, MethodInterceptor {
+
+	private static final Logger log = LoggerFactory.getLogger(SlowQueryLogger.class);
+
+	/**
+	 * Elements logged of a collection or array parameter
+	 */
+	static final int LOGGED_ELEMENTS = 10;
+
+	/**
+	 * Characters logged of a parameter
+	 */
+	static final int LOGGED_LENGTH = 200;
+
+	@Value("${slow-query.threshold-ms:500}")
+	private long thresholdMs;
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) {
+		if (bean instanceof RepositoryFactoryBeanSupport) {
+			((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory -> factory
+					.addRepositoryProxyPostProcessor((proxyFactory, information) -> proxyFactory.addAdvice(this)));
+		}
+		return bean;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		if (thresholdMs < 0) {
+			return invocation.proceed();
+		}
+		long start = System.nanoTime();
+		Object result = null;
+		try {
+			result = invocation.proceed();
+			return result instanceof Stream
+					? ((Stream<?>) result).onClose(() -> logIfSlow(invocation, start))
+					: result;
+		} finally {
+			if (!(result instanceof Stream)) {
+				logIfSlow(invocation, start);
+			}
+		}
+	}
+
+	/**
+	 * Logs a repository call if it took longer than the threshold
+	 * 
+	 * @param invocation The call
+	 * @param start      When it started, in {@link System#nanoTime()}
+	 */
+	private void logIfSlow(MethodInvocation invocation, long start) {
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		if (elapsedMs >= thresholdMs) {
+			Method method = invocation.getMethod();
+			log.warn("Slow query, {} ms: {}.{} {} parameters {}", elapsedMs,
+					method.getDeclaringClass().getSimpleName(), method.getName(), queryOf(method),
+					describe(invocation.getArguments()));
+		}
+	}
+
+	/**
+	 * @param arguments Parameters of a query
+	 * @return Their description, with the large ones summarized
+	 */
+	static String describe(Object[] arguments) {
+		StringJoiner description = new StringJoiner(", ", "[", "]");
+		for (Object argument : arguments) {
+			String value;
+			if (argument instanceof Collection) {
+				value = describe((Collection<?>) argument);
+			} else if (argument != null && argument.getClass().isArray()) {
+				int length = Array.getLength(argument);
+				List<Object> elements = new ArrayList<>(Math.min(length, LOGGED_ELEMENTS));
+				for (int i = 0; i < length && i < LOGGED_ELEMENTS; i++) {
+					elements.add(Array.get(argument, i));
+				}
+				value = describe(elements, length);
+			} else {
+				value = String.valueOf(argument);
+			}
+			description.add(value.length() > LOGGED_LENGTH ? value.substring(0, LOGGED_LENGTH) + "..." : value);
+		}
+		return description.toString();
+	}
+
+	private static String describe(Collection<?> elements) {
+		if (elements.size() <= LOGGED_ELEMENTS) {
+			return elements.toString();
+		}
+		return describe(elements.stream().limit(LOGGED_ELEMENTS).collect(Collectors.toList()), elements.size());
+	}
+
+	/**
+	 * @param first The first elements
+	 * @param size  The number of elements
+	 * @return The first elements, followed by the number of elements if there
+	 *         are more
+	 */
+	private static String describe(List<?> first, int size) {
+		StringJoiner description = new StringJoiner(", ", "[", "]");
+		first.forEach(element -> description.add(String.valueOf(element)));
+		if (size > first.size()) {
+			description.add("... (" + size + " elements)");
+		}
+		return description.toString();
+	}
+
+	/**
+	 * @param method Repository method
+	 * @return Its JPQL, or a description for derived and built-in queries
+	 */
+	private static String queryOf(Method method) {
+		Query query = AnnotatedElementUtils.findMergedAnnotation(method, Query.class);
+		return query == null ? "(derived query)" : "\"" + query.value() + "\"";
+	}
+}
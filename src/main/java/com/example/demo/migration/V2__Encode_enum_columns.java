@@ -0,0 +1,78 @@
+package com.example.demo.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+import com.example.demo.model.CodedEnum;
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Converts the SIM status, SIM country and device status columns of databases
+ * created before {@link CodedEnum} from their labels to the compact codes.
+ * 
+ * It only changes columns that are still text, so it does nothing on new
+ * databases (whose tables are created afterwards by Hibernate). Labels that do
+ * not match any constant are stored as null.
+ */
+public class V2__Encode_enum_columns extends BaseJavaMigration {
+
+	@Override
+	public void migrate(Context context) throws Exception {
+		Connection connection = context.getConnection();
+		encode(connection, "SIM", "STATUS", SimStatus.values());
+		encode(connection, "SIM", "COUNTRY", Country.values());
+		encode(connection, "DEVICE", "STATUS", DeviceStatus.values());
+	}
+
+	/**
+	 * Replaces the labels of a text column with the codes, and changes its type
+	 * 
+	 * @param connection Connection of the migration
+	 * @param table      Table name
+	 * @param column     Column name
+	 * @param values     Constants of the enum stored in the column
+	 * @throws SQLException If the conversion fails
+	 */
+	private static void encode(Connection connection, String table, String column, CodedEnum[] values)
+			throws SQLException {
+		if (!isText(connection.getMetaData(), connection.getSchema(), table, column)) {
+			return;
+		}
+
+		StringBuilder update = new StringBuilder("UPDATE ").append(table).append(" SET ").append(column)
+				.append(" = CASE ").append(column);
+		for (CodedEnum value : values) {
+			update.append(" WHEN '").append(value.getLabel().replace("'", "''")).append("' THEN '")
+					.append(value.getCode()).append('\'');
+		}
+		update.append(" ELSE NULL END");
+
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(update.toString());
+			statement.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " SET DATA TYPE SMALLINT");
+		}
+	}
+
+	/**
+	 * @return true if the column exists and stores text
+	 */
+	private static boolean isText(DatabaseMetaData metaData, String schema, String table, String column)
+			throws SQLException {
+		try (ResultSet columns = metaData.getColumns(null, schema, table, column)) {
+			if (!columns.next()) {
+				return false;
+			}
+			int type = columns.getInt("DATA_TYPE");
+			return type == Types.VARCHAR || type == Types.CHAR || type == Types.LONGVARCHAR;
+		}
+	}
+}
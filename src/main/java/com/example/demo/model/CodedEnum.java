@@ -0,0 +1,101 @@
+package com.example.demo.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.AttributeConverter;
+
+/**
+ * Enumerated value stored in the database as a compact numeric code and
+ * exposed in JSON by its human readable label.
+ */
+public interface CodedEnum {
+
+	/**
+	 * @return Persistent code, stable across releases
+	 */
+	short getCode();
+
+	/**
+	 * @return Label used in the JSON API and import files
+	 */
+	String getLabel();
+
+	/**
+	 * Finds the constant with the given label
+	 * 
+	 * @param <E>   Enum type
+	 * @param type  Enum class
+	 * @param label Label to look for, may be <code>null</code>
+	 * @return The constant, or <code>null</code> if label is <code>null</code>
+	 * @throws IllegalArgumentException If no constant has that label
+	 */
+	static <E extends Enum<E> & CodedEnum> E fromLabel(Class<E> type, String label) {
+		if (label == null) {
+			return null;
+		}
+		for (E value : type.getEnumConstants()) {
+			if (value.getLabel().equals(label)) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Unknown " + type.getSimpleName() + ": " + label);
+	}
+
+	/**
+	 * Finds the constant with the given persistent code
+	 * 
+	 * @param <E>  Enum type
+	 * @param type Enum class
+	 * @param code Code to look for, may be <code>null</code>
+	 * @return The constant, or <code>null</code> if code is <code>null</code>
+	 * @throws IllegalArgumentException If no constant has that code
+	 */
+	static <E extends Enum<E> & CodedEnum> E fromCode(Class<E> type, Short code) {
+		if (code == null) {
+			return null;
+		}
+		for (E value : type.getEnumConstants()) {
+			if (value.getCode() == code) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Unknown code: " + code);
+	}
+
+	/**
+	 * JPA converter between a {@link CodedEnum} and its persistent code
+	 *
+	 * @param <E> Enum type
+	 */
+	abstract class Converter<E extends Enum<E> & CodedEnum> implements AttributeConverter<E, Short> {
+
+		private final Map<Short, E> byCode = new HashMap<>();
+
+		/**
+		 * @param type Enum class
+		 */
+		protected Converter(Class<E> type) {
+			for (E value : type.getEnumConstants()) {
+				byCode.put(value.getCode(), value);
+			}
+		}
+
+		@Override
+		public Short convertToDatabaseColumn(E attribute) {
+			return attribute == null ? null : attribute.getCode();
+		}
+
+		@Override
+		public E convertToEntityAttribute(Short code) {
+			if (code == null) {
+				return null;
+			}
+			E value = byCode.get(code);
+			if (value == null) {
+				throw new IllegalArgumentException("Unknown code: " + code);
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Country a {@link Sim} card belongs to.
+ */
+public enum Country implements CodedEnum {
+	SPAIN(1, "Spain"),
+	ITALY(2, "Italy"),
+	GERMANY(3, "Germany"),
+	UK(4, "UK");
+
+	private final short code;
+
+	private final String label;
+
+	private Country(int code, String label) {
+		this.code = (short) code;
+		this.label = label;
+	}
+
+	@Override
+	public short getCode() {
+		return code;
+	}
+
+	@Override
+	@JsonValue
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+	/**
+	 * @param label Label, may be <code>null</code>
+	 * @return The matching constant, or <code>null</code> for a <code>null</code>
+	 *         label
+	 * @throws IllegalArgumentException If the label is unknown
+	 */
+	public static Country fromLabel(String label) {
+		return CodedEnum.fromLabel(Country.class, label);
+	}
+
+	/**
+	 * Stores the constant as its code
+	 */
+	@javax.persistence.Converter
+	public static class Converter extends CodedEnum.Converter<Country> {
+
+		/**
+		 * Creates the converter
+		 */
+		public Converter() {
+			super(Country.class);
+		}
+	}
+}
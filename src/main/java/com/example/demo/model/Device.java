@@ -1,25 +1,58 @@
 package com.example.demo.model;
 
+import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Version;
+
+import org.hibernate.annotations.ColumnDefault;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 /**
  * This entity represents an IoT device in a shop warehouse. A configured device
  * will have a status &quot;READY&quot;, an ideal temperature between (-25&#39;C
  * to 85&#39;C), and a SIM device assigned
+ * 
+ * The for-sale query is covered by an index on (sim_id, status, temperature).
+ * The SIM ID goes first so the index can provide the order of the listing (H2
+ * only avoids the sort when the index starts with the ordering column), and the
+ * status and temperature are checked without reading the table.
  */
 @Entity
+@Table(indexes = @Index(name = "idx_device_sale", columnList = "sim_id, status, temperature"))
 public class Device {
 
+	/**
+	 * IDs are taken from the sequence in blocks, so inserting many devices does not
+	 * need a round-trip per row. Existing databases, whose sequence increments by
+	 * one, keep allocating them one by one (see
+	 * hibernate.id.sequence.increment_size_mismatch_strategy).
+	 */
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "device_seq")
+	@SequenceGenerator(name = "device_seq", sequenceName = "hibernate_sequence", allocationSize = 50)
 	private long id;
 
-	private String status;
+	/**
+	 * Version for optimistic locking. It is exposed as the ETag of the device, not
+	 * in its JSON. Existing rows get a zero when the column is added.
+	 */
+	@Version
+	@ColumnDefault("0")
+	@Column(nullable = false)
+	private long version;
+
+	@Convert(converter = DeviceStatus.Converter.class)
+	private DeviceStatus status;
 
 	private Float temperature;
 
@@ -44,7 +77,20 @@ public class Device {
 	 * @param temperature - Ideal temperature
 	 * @param sim         - Assigned SIM
 	 */
-	public Device(String status, Float temperature, Sim sim) {
+	public Device(DeviceStatus status, Float temperature, Sim sim) {
+		this.status = status;
+		this.temperature = temperature;
+		this.sim = sim;
+	}
+
+	/**
+	 * Updates the device configuration
+	 * 
+	 * @param status      Status - READY or null
+	 * @param temperature - Ideal temperature
+	 * @param sim         - Assigned SIM
+	 */
+	public void update(DeviceStatus status, Float temperature, Sim sim) {
 		this.status = status;
 		this.temperature = temperature;
 		this.sim = sim;
@@ -62,6 +108,14 @@ public class Device {
 		return id;
 	}
 
+	/**
+	 * @return The device version, incremented on each update
+	 */
+	@JsonIgnore
+	public long getVersion() {
+		return version;
+	}
+
 	/**
 	 * @return The device SIM
 	 */
@@ -72,7 +126,7 @@ public class Device {
 	/**
 	 * @return The device Status
 	 */
-	public String getStatus() {
+	public DeviceStatus getStatus() {
 		return status;
 	}
 
@@ -0,0 +1,86 @@
+package com.example.demo.model;
+
+import java.util.Objects;
+
+/**
+ * Membership of a device in the listings, sent to the subscribers of the
+ * change feed when it changes.
+ *
+ * It is compact on purpose: the device is identified by its ID, and by its SIM
+ * ID as the for-sale listing is ordered by it. A device that leaves both
+ * listings (e.g. it was deleted) has both flags false.
+ */
+public class DeviceChange {
+
+	private final long id;
+
+	private final Long simId;
+
+	private final boolean forSale;
+
+	private final boolean waitingActivation;
+
+	/**
+	 * Creates the change
+	 *
+	 * @param id                Device ID
+	 * @param simId             SIM ID, or null if it has no SIM
+	 * @param forSale           Whether it is in the for-sale listing
+	 * @param waitingActivation Whether it is in the waiting-activation listing
+	 */
+	public DeviceChange(long id, Long simId, boolean forSale, boolean waitingActivation) {
+		this.id = id;
+		this.simId = simId;
+		this.forSale = forSale;
+		this.waitingActivation = waitingActivation;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DeviceChange)) {
+			return false;
+		}
+		DeviceChange other = (DeviceChange) obj;
+		return id == other.id && Objects.equals(simId, other.simId) && forSale == other.forSale
+				&& waitingActivation == other.waitingActivation;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, simId, forSale, waitingActivation);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DeviceChange(id=%d, simId=%s, forSale=%b, waitingActivation=%b)", id, simId, forSale,
+				waitingActivation);
+	}
+
+	/**
+	 * @return The device ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The SIM ID, or null if it has no SIM
+	 */
+	public Long getSimId() {
+		return simId;
+	}
+
+	/**
+	 * @return Whether the device is in the for-sale listing
+	 */
+	public boolean isForSale() {
+		return forSale;
+	}
+
+	/**
+	 * @return Whether the device is in the waiting-activation listing
+	 */
+	public boolean isWaitingActivation() {
+		return waitingActivation;
+	}
+}
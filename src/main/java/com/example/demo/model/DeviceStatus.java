@@ -0,0 +1,59 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Status of a {@link Device}. A device without status is not ready.
+ */
+public enum DeviceStatus implements CodedEnum {
+	READY(1, "READY");
+
+	private final short code;
+
+	private final String label;
+
+	private DeviceStatus(int code, String label) {
+		this.code = (short) code;
+		this.label = label;
+	}
+
+	@Override
+	public short getCode() {
+		return code;
+	}
+
+	@Override
+	@JsonValue
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+	/**
+	 * @param label Label, may be <code>null</code>
+	 * @return The matching constant, or <code>null</code> for a <code>null</code>
+	 *         label
+	 * @throws IllegalArgumentException If the label is unknown
+	 */
+	public static DeviceStatus fromLabel(String label) {
+		return CodedEnum.fromLabel(DeviceStatus.class, label);
+	}
+
+	/**
+	 * Stores the constant as its code
+	 */
+	@javax.persistence.Converter
+	public static class Converter extends CodedEnum.Converter<DeviceStatus> {
+
+		/**
+		 * Creates the converter
+		 */
+		public Converter() {
+			super(DeviceStatus.class);
+		}
+	}
+}
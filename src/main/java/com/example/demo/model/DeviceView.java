@@ -0,0 +1,90 @@
+package com.example.demo.model;
+
+import java.util.Objects;
+
+/**
+ * Read-only projection of a {@link Device} and its {@link Sim}.
+ * 
+ * It is built directly from a flat query row, joining both tables, so listing
+ * devices does not need to load and manage the entities (and their inverse
+ * associations) one by one. It is serialized with the same JSON layout as the
+ * entity.
+ */
+public class DeviceView {
+
+	private final long id;
+
+	private final DeviceStatus status;
+
+	private final Float temperature;
+
+	private final SimView sim;
+
+	/**
+	 * Creates the projection from the joined columns. If the device has no SIM,
+	 * all the SIM columns are null.
+	 * 
+	 * @param id           Device ID
+	 * @param status       Device status
+	 * @param temperature  Device ideal temperature
+	 * @param simId        SIM ID, or null
+	 * @param operatorCode SIM operator code, or null
+	 * @param country      SIM country, or null
+	 * @param simStatus    SIM status, or null
+	 */
+	public DeviceView(long id, DeviceStatus status, Float temperature, Long simId, Integer operatorCode,
+			Country country, SimStatus simStatus) {
+		this.id = id;
+		this.status = status;
+		this.temperature = temperature;
+		this.sim = simId == null ? null : new SimView(simId, operatorCode, country, simStatus);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof DeviceView)) {
+			return false;
+		}
+		DeviceView other = (DeviceView) obj;
+		return id == other.id && status == other.status && Objects.equals(temperature, other.temperature)
+				&& Objects.equals(sim, other.sim);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, status, temperature, sim);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DeviceView(id=%d, status=%s, temperature=%f, sim=%s)", id, status, temperature, sim);
+	}
+
+	/**
+	 * @return The device ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The device SIM
+	 */
+	public SimView getSim() {
+		return sim;
+	}
+
+	/**
+	 * @return The device Status
+	 */
+	public DeviceStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The device ideal temperature
+	 */
+	public Float getTemperature() {
+		return temperature;
+	}
+}
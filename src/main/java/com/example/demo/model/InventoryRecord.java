@@ -0,0 +1,137 @@
+package com.example.demo.model;
+
+/**
+ * A record of an inventory import file. It describes either a SIM or a device,
+ * depending on its type.
+ * 
+ * <ul>
+ * <li>sim: id, operatorCode, country and status of the SIM to be created or
+ * updated
+ * <li>device: id (empty for a new device), status, temperature and simId of the
+ * device to be created or updated. The SIM must exist, or be in the same file
+ * </ul>
+ */
+public class InventoryRecord {
+
+	/**
+	 * Type of the SIM records
+	 */
+	public static final String SIM = "sim";
+
+	/**
+	 * Type of the device records
+	 */
+	public static final String DEVICE = "device";
+
+	private String type;
+
+	private Long id;
+
+	private String status;
+
+	private Float temperature;
+
+	private Long simId;
+
+	private Integer operatorCode;
+
+	private String country;
+
+	/**
+	 * @return The record type, sim or device
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @param type The record type, sim or device
+	 */
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	/**
+	 * @return The SIM or device ID
+	 */
+	public Long getId() {
+		return id;
+	}
+
+	/**
+	 * @param id The SIM or device ID
+	 */
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return The SIM or device status
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * @param status The SIM or device status
+	 */
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	/**
+	 * @return The device ideal temperature
+	 */
+	public Float getTemperature() {
+		return temperature;
+	}
+
+	/**
+	 * @param temperature The device ideal temperature
+	 */
+	public void setTemperature(Float temperature) {
+		this.temperature = temperature;
+	}
+
+	/**
+	 * @return The ID of the SIM assigned to the device
+	 */
+	public Long getSimId() {
+		return simId;
+	}
+
+	/**
+	 * @param simId The ID of the SIM assigned to the device
+	 */
+	public void setSimId(Long simId) {
+		this.simId = simId;
+	}
+
+	/**
+	 * @return The SIM operator code
+	 */
+	public Integer getOperatorCode() {
+		return operatorCode;
+	}
+
+	/**
+	 * @param operatorCode The SIM operator code
+	 */
+	public void setOperatorCode(Integer operatorCode) {
+		this.operatorCode = operatorCode;
+	}
+
+	/**
+	 * @return The SIM country
+	 */
+	public String getCountry() {
+		return country;
+	}
+
+	/**
+	 * @param country The SIM country
+	 */
+	public void setCountry(String country) {
+		this.country = country;
+	}
+}
@@ -1,5 +1,6 @@
 package com.example.demo.model;
 
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Index;
@@ -16,18 +17,31 @@ import javax.persistence.Table;
  * <li>Country – country name, e.g. Italy
  * <li>Status – devices status can be Active, Waiting for activation, Blocked or
  * Deactivated.
+ * </ul>
+ * Country and status are stored as compact codes, see {@link CodedEnum}.
+ * 
+ * The SIM searches and the for-sale listing filtered by country and/or
+ * operator are driven by the indexes on (status, country, operator_code, id),
+ * (country, operator_code, id) and (operator_code, id), so only the SIMs of the
+ * filter are read. They end in the ID, so the keyset condition is part of the
+ * range (H2 still sorts the rows of the filter by ID).
  */
 @Entity
-@Table(indexes = @Index(columnList = "status"))
+@Table(indexes = { @Index(name = "idx_sim_status", columnList = "status, country, operatorCode, id"),
+		@Index(name = "idx_sim_country", columnList = "country, operatorCode, id"),
+		@Index(name = "idx_sim_operator", columnList = "operatorCode, id") })
 public class Sim {
 
 	@Id
 	private long id;
 
 	private int operatorCode;
-	private String country;
 
-	private String status;
+	@Convert(converter = Country.Converter.class)
+	private Country country;
+
+	@Convert(converter = SimStatus.Converter.class)
+	private SimStatus status;
 
 	/**
 	 * The SIM may be linked to a device, using this JOIN relationship
@@ -36,10 +50,10 @@ public class Sim {
 	private Device device;
 
 	/**
-	 * Private constructor
+	 * Default constructor. It is protected, so Hibernate can create proxies
+	 * (references to SIMs not loaded)
 	 */
-	@SuppressWarnings("unused")
-	private Sim() {
+	protected Sim() {
 	}
 
 	/**
@@ -52,13 +66,27 @@ public class Sim {
 	 * @param status       Devices status can be Active, Waiting for activation,
 	 *                     Blocked or
 	 */
-	public Sim(long id, int operatorCode, String country, String status) {
+	public Sim(long id, int operatorCode, Country country, SimStatus status) {
 		this.id = id;
 		this.operatorCode = operatorCode;
 		this.country = country;
 		this.status = status;
 	}
 
+	/**
+	 * Updates the SIM data. The ID cannot be changed
+	 * 
+	 * @param operatorCode Uniquely identify a mobile operator
+	 * @param country      Country name, e.g. Italy
+	 * @param status       Devices status can be Active, Waiting for activation,
+	 *                     Blocked or
+	 */
+	public void update(int operatorCode, Country country, SimStatus status) {
+		this.operatorCode = operatorCode;
+		this.country = country;
+		this.status = status;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("Sim(id=%d, operatorCode=%d, country=%s, status=%s)", id, operatorCode, country, status);
@@ -81,14 +109,14 @@ public class Sim {
 	/**
 	 * @return The country
 	 */
-	public String getCountry() {
+	public Country getCountry() {
 		return country;
 	}
 
 	/**
 	 * @return The SIM status
 	 */
-	public String getStatus() {
+	public SimStatus getStatus() {
 		return status;
 	}
 }
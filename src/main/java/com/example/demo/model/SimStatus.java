@@ -0,0 +1,62 @@
+package com.example.demo.model;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Status of a {@link Sim} card.
+ */
+public enum SimStatus implements CodedEnum {
+	ACTIVE(1, "Active"),
+	WAITING_FOR_ACTIVATION(2, "Waiting for activation"),
+	DEACTIVATED(3, "Deactivated"),
+	BLOCKED(4, "Blocked");
+
+	private final short code;
+
+	private final String label;
+
+	private SimStatus(int code, String label) {
+		this.code = (short) code;
+		this.label = label;
+	}
+
+	@Override
+	public short getCode() {
+		return code;
+	}
+
+	@Override
+	@JsonValue
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public String toString() {
+		return label;
+	}
+
+	/**
+	 * @param label Label, may be <code>null</code>
+	 * @return The matching constant, or <code>null</code> for a <code>null</code>
+	 *         label
+	 * @throws IllegalArgumentException If the label is unknown
+	 */
+	public static SimStatus fromLabel(String label) {
+		return CodedEnum.fromLabel(SimStatus.class, label);
+	}
+
+	/**
+	 * Stores the constant as its code
+	 */
+	@javax.persistence.Converter
+	public static class Converter extends CodedEnum.Converter<SimStatus> {
+
+		/**
+		 * Creates the converter
+		 */
+		public Converter() {
+			super(SimStatus.class);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.example.demo.model;
+
+import java.util.Objects;
+
+/**
+ * Read-only projection of a {@link Sim}, nested in a {@link DeviceView}.
+ */
+public class SimView {
+
+	private final long id;
+
+	private final int operatorCode;
+
+	private final Country country;
+
+	private final SimStatus status;
+
+	/**
+	 * Creates the projection
+	 * 
+	 * @param id           SIM ID
+	 * @param operatorCode Operator code
+	 * @param country      Country name
+	 * @param status       SIM status
+	 */
+	public SimView(long id, int operatorCode, Country country, SimStatus status) {
+		this.id = id;
+		this.operatorCode = operatorCode;
+		this.country = country;
+		this.status = status;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof SimView)) {
+			return false;
+		}
+		SimView other = (SimView) obj;
+		return id == other.id && operatorCode == other.operatorCode && country == other.country
+				&& status == other.status;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(id, operatorCode, country, status);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SimView(id=%d, operatorCode=%d, country=%s, status=%s)", id, operatorCode, country,
+				status);
+	}
+
+	/**
+	 * @return The SIM ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The operator code
+	 */
+	public int getOperatorCode() {
+		return operatorCode;
+	}
+
+	/**
+	 * @return The country
+	 */
+	public Country getCountry() {
+		return country;
+	}
+
+	/**
+	 * @return The SIM status
+	 */
+	public SimStatus getStatus() {
+		return status;
+	}
+}
@@ -0,0 +1,127 @@
+package com.example.demo.reactive;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.DELETE;
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RequestPredicates.PUT;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+
+/**
+ * Reactive endpoints of the devices, under /api/reactive/device.
+ *
+ * They are served by their own Netty server ({@link ReactiveServer}) next to
+ * Tomcat, and read the same database through a pool of R2DBC connections, so
+ * the servlet endpoints remain available for comparison.
+ *
+ * The R2DBC connections and transaction manager are not beans, so Spring Boot
+ * and @Transactional keep using the datasource and the JPA transaction
+ * manager: the reactive writes use their {@link TransactionalOperator}.
+ */
+@Configuration
+public class ReactiveConfiguration {
+
+	/**
+	 * Prefix of the H2 JDBC URLs
+	 */
+	private static final String H2_PREFIX = "jdbc:h2:";
+
+	@Autowired
+	private DataSourceProperties properties;
+
+	/**
+	 * Maximum number of R2DBC connections
+	 */
+	@Value("${reactive.r2dbc.pool-size:10}")
+	private int poolSize;
+
+	/**
+	 * Pool of R2DBC connections to the database of the application. It is not a
+	 * bean: Spring Boot would take it as the main database, instead of the
+	 * datasource
+	 */
+	private ConnectionPool pool;
+
+	@Bean
+	public DatabaseClient reactiveDatabaseClient() {
+		return DatabaseClient.create(getPool());
+	}
+
+	@Bean
+	public TransactionalOperator reactiveTransactionalOperator() {
+		return TransactionalOperator.create(new R2dbcTransactionManager(getPool()));
+	}
+
+	@PreDestroy
+	public void close() {
+		if (pool != null) {
+			pool.dispose();
+		}
+	}
+
+	/**
+	 * @return The pool of R2DBC connections, created on first use
+	 */
+	private synchronized ConnectionPool getPool() {
+		if (pool == null) {
+			String url = properties.determineUrl();
+			if (url == null || !url.startsWith(H2_PREFIX)) {
+				throw new IllegalStateException("The reactive endpoints require an H2 database: " + url);
+			}
+			H2ConnectionConfiguration.Builder configuration = H2ConnectionConfiguration.builder()
+					.url(url.substring(H2_PREFIX.length())).username(properties.determineUsername());
+			if (properties.determinePassword() != null) {
+				configuration.password(properties.determinePassword());
+			}
+			pool = new ConnectionPool(ConnectionPoolConfiguration
+					.builder(new H2ConnectionFactory(configuration.build())).maxSize(poolSize).build());
+		}
+		return pool;
+	}
+
+	/**
+	 * @param handler The handler of the reactive endpoints
+	 * @return The routes of the reactive endpoints
+	 */
+	@Bean
+	public RouterFunction<ServerResponse> reactiveDeviceRoutes(ReactiveDeviceHandler handler) {
+		return RouterFunctions.route(GET("/api/reactive/device/waiting-activation"), handler::findWaitingActivation)
+				.andRoute(GET("/api/reactive/device/available-for-sale"), handler::findAvailableForSale)
+				.andRoute(PUT("/api/reactive/device/{id}"), handler::modifyDevice)
+				.andRoute(DELETE("/api/reactive/device/{id}"), handler::deleteDevice);
+	}
+
+	/**
+	 * @param mapper The JSON mapper of the application
+	 * @return The codecs of the reactive endpoints, with the same JSON mapper as
+	 *         the servlet ones
+	 */
+	@Bean
+	public HandlerStrategies reactiveHandlerStrategies(ObjectMapper mapper) {
+		return HandlerStrategies.builder().codecs(codecs -> {
+			codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(mapper));
+			codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(mapper));
+		}).build();
+	}
+}
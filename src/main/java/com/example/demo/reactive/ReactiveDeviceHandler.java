@@ -0,0 +1,169 @@
+package com.example.demo.reactive;
+
+import static com.example.demo.controller.DeviceController.AVAILABLE_FOR_SALE_CACHE;
+import static com.example.demo.controller.DeviceController.WAITING_ACTIVATION_CACHE;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.example.demo.controller.DeviceController;
+import com.example.demo.controller.DeviceJsonCache;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive variant of the listings and writes of {@link DeviceController}.
+ *
+ * The listings are streamed as newline delimited JSON: each device is written
+ * when the client is ready to receive it, so a slow client slows down the
+ * query instead of making the server buffer the result. The devices are
+ * written from the fragments of {@link DeviceJsonCache}, shared with the
+ * servlet endpoints. The writes keep the
+ * counters and the listing caches up to date, as the servlet endpoints do: the
+ * counters are applied by {@link ReactiveDeviceRepository} once the
+ * transaction commits, on a worker thread, so the handlers continue there.
+ */
+@Component
+public class ReactiveDeviceHandler {
+
+	@Autowired
+	private ReactiveDeviceRepository repository;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private DeviceJsonCache jsonCache;
+
+	/**
+	 * @param request The request
+	 * @return All devices in the warehouse that are waiting for activation
+	 */
+	public Mono<ServerResponse> findWaitingActivation(ServerRequest request) {
+		return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+				.body(BodyInserters.fromDataBuffers(
+						toLines(repository.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION))));
+	}
+
+	/**
+	 * @param request The request
+	 * @return The devices available for sale, ordered by SIM ID
+	 */
+	public Mono<ServerResponse> findAvailableForSale(ServerRequest request) {
+		return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+				.body(BodyInserters.fromDataBuffers(toLines(repository.findViewForSale())));
+	}
+
+	/**
+	 * Removes a device with a single statement
+	 *
+	 * @param request The request, with the device ID
+	 * @return 200 OK or 404 NOT FOUND
+	 */
+	public Mono<ServerResponse> deleteDevice(ServerRequest request) {
+		Long id = parseId(request);
+		if (id == null) {
+			return ServerResponse.badRequest().build();
+		}
+		return repository.delete(id).flatMap(before -> {
+			evictListings();
+			jsonCache.evict(id);
+			return ServerResponse.ok().build();
+		}).switchIfEmpty(ServerResponse.notFound().build());
+	}
+
+	/**
+	 * Updates a device with a single statement. With an If-Match header, only if
+	 * it still has that version.
+	 *
+	 * @param request The request, with the device ID and the new device data
+	 * @return 200 OK with the device (204 NO CONTENT if conditional), 404 NOT
+	 *         FOUND if the device or the SIM do not exist, 412 PRECONDITION FAILED
+	 *         if the device was modified, 409 CONFLICT if the SIM is already
+	 *         assigned, or 400 BAD REQUEST if the ID or the ETag are not valid
+	 */
+	public Mono<ServerResponse> modifyDevice(ServerRequest request) {
+		Long id = parseId(request);
+		String ifMatch = request.headers().firstHeader(HttpHeaders.IF_MATCH);
+		boolean conditional = ifMatch != null && !ifMatch.trim().equals("*");
+		Long version = conditional ? DeviceController.parseETag(ifMatch) : null;
+		if (id == null || (conditional && version == null)) {
+			return ServerResponse.badRequest().build();
+		}
+		return request.bodyToMono(Device.class)
+				.flatMap(device -> repository.update(id, version, device.getStatus(), device.getTemperature(),
+						device.getSim() == null ? null : device.getSim().getId()))
+				.flatMap(update -> {
+					if (update.isConflict()) {
+						return ServerResponse.status(HttpStatus.PRECONDITION_FAILED).build();
+					}
+					evictListings();
+					jsonCache.evict(id);
+					String etag = Long.toString(update.getVersion());
+					return conditional ? ServerResponse.noContent().eTag(etag).build()
+							: ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).eTag(etag)
+									.bodyValue(update.getDevice());
+				}).switchIfEmpty(ServerResponse.notFound().build())
+				.onErrorResume(DataIntegrityViolationException.class,
+						e -> ServerResponse.status(HttpStatus.CONFLICT).build());
+	}
+
+	/**
+	 * Encodes devices as lines of JSON, from their cached fragments
+	 *
+	 * @param views The devices
+	 * @return The lines
+	 */
+	private Flux<DataBuffer> toLines(Flux<DeviceView> views) {
+		return views.map(view -> {
+			try {
+				byte[] json = jsonCache.get(view);
+				return DefaultDataBufferFactory.sharedInstance.allocateBuffer(json.length + 1).write(json)
+						.write((byte) '\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Clears the cached listings of the servlet endpoints
+	 */
+	private void evictListings() {
+		for (String name : new String[] { WAITING_ACTIVATION_CACHE, AVAILABLE_FOR_SALE_CACHE }) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache != null) {
+				cache.clear();
+			}
+		}
+	}
+
+	/**
+	 * @return The device ID of the path, or null if it is not a number
+	 */
+	private static Long parseId(ServerRequest request) {
+		try {
+			return Long.valueOf(request.pathVariable("id"));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package com.example.demo.reactive;
+
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import com.example.demo.model.CodedEnum;
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryChange;
+import com.example.demo.service.InventoryChanges;
+
+import io.r2dbc.spi.Row;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Queries of the reactive endpoints, in SQL over R2DBC. They are the same as
+ * the projections and single-statement writes of {@link DeviceRepository}.
+ *
+ * The rows are emitted as they are requested, so the listings are never
+ * collected in memory by the application.
+ */
+@Component
+public class ReactiveDeviceRepository {
+
+	/**
+	 * Columns of the {@link DeviceView} projection. The SIM is joined with alias
+	 * <code>s</code>
+	 */
+	private static final String VIEW_COLUMNS = "d.id, d.status, d.temperature, s.id AS sim_id, s.operator_code,"
+			+ " s.country, s.status AS sim_status";
+
+	private static final String VIEW = "SELECT " + VIEW_COLUMNS + " FROM device d ";
+
+	/**
+	 * Condition and order of the devices for sale. The rows are driven by the SIM
+	 * primary key, as in {@link DeviceRepository#FOR_SALE_AFTER}
+	 */
+	private static final String FOR_SALE_AFTER = " WHERE s.id > :after AND d.status = :ready"
+			+ " AND d.temperature BETWEEN -25 AND 85 ORDER BY s.id";
+
+	@Autowired
+	private DatabaseClient client;
+
+	@Autowired
+	private TransactionalOperator transactional;
+
+	@Autowired
+	private InventoryChanges changes;
+
+	/**
+	 * @param status SIM status
+	 * @return The devices whose SIM has the given status
+	 */
+	public Flux<DeviceView> findViewBySimStatus(SimStatus status) {
+		return client.sql(VIEW + "JOIN sim s ON s.id = d.sim_id WHERE s.status = :status")
+				.bind("status", status.getCode()).map(ReactiveDeviceRepository::toView).all();
+	}
+
+	/**
+	 * @return The devices available for sale, ordered by SIM ID
+	 */
+	public Flux<DeviceView> findViewForSale() {
+		return client.sql(VIEW + "JOIN sim s ON s.id = d.sim_id" + FOR_SALE_AFTER).bind("after", Long.MIN_VALUE)
+				.bind("ready", DeviceStatus.READY.getCode()).map(ReactiveDeviceRepository::toView).all();
+	}
+
+	/**
+	 * Deletes a device. The R2DBC transactions are not captured by
+	 * {@link InventoryChanges}, so the device is read first, without locking it,
+	 * and deleted only if it still has the version read. Otherwise it was changed
+	 * meanwhile, and it is read again. The change is published once it commits.
+	 *
+	 * @param id The device ID
+	 * @return The deleted device, or empty if it does not exist
+	 */
+	public Mono<DeviceView> delete(long id) {
+		return inTransaction(deleteRead(id), before -> InventoryChange.ofDevice(id, before, null));
+	}
+
+	private Mono<DeviceView> deleteRead(long id) {
+		return findView(id).flatMap(found -> client.sql("DELETE FROM device WHERE id = :id AND version = :version")
+				.bind("id", id).bind("version", found.version).fetch().rowsUpdated()
+				.flatMap(deleted -> deleted > 0 ? Mono.just(found.device) : deleteRead(id)));
+	}
+
+	/**
+	 * Updates a device, incrementing its version, in the same way as
+	 * {@link DeviceRepository#updateIfVersion}. As {@link #delete(long)}, it is
+	 * read first without locking it, and updated only if it still has the
+	 * version read, which must also be the expected one. The change is published
+	 * once it commits.
+	 *
+	 * @param id          The device ID
+	 * @param version     The expected version, or null to update any version
+	 * @param status      New status
+	 * @param temperature New ideal temperature
+	 * @param simId       New SIM, or null
+	 * @return The result, or empty if the device or the SIM do not exist
+	 */
+	public Mono<Update> update(long id, Long version, DeviceStatus status, Float temperature, Long simId) {
+		Mono<Optional<SimView>> sim = simId == null ? Mono.just(Optional.empty())
+				: client.sql("SELECT id, operator_code, country, status FROM sim WHERE id = :id").bind("id", simId)
+						.map(row -> Optional.of(new SimView(simId, row.get("operator_code", Integer.class),
+								CodedEnum.fromCode(Country.class, row.get("country", Short.class)),
+								CodedEnum.fromCode(SimStatus.class, row.get("status", Short.class)))))
+						.first();
+		return inTransaction(sim.flatMap(found -> updateRead(id, version, status, temperature, found.orElse(null))),
+				updated -> updated.isConflict() ? null
+						: InventoryChange.ofDevice(id, updated.before, updated.device));
+	}
+
+	private Mono<Update> updateRead(long id, Long version, DeviceStatus status, Float temperature, SimView sim) {
+		return findView(id).flatMap(found -> {
+			if (version != null && version != found.version) {
+				return Mono.just(Update.CONFLICT);
+			}
+			DatabaseClient.GenericExecuteSpec update = client
+					.sql("UPDATE device SET status = :status, temperature = :temperature, sim_id = :sim,"
+							+ " version = version + 1 WHERE id = :id AND version = :version")
+					.bind("id", id).bind("version", found.version);
+			update = status == null ? update.bindNull("status", Short.class)
+					: update.bind("status", status.getCode());
+			update = temperature == null ? update.bindNull("temperature", Double.class)
+					: update.bind("temperature", temperature.doubleValue());
+			update = sim == null ? update.bindNull("sim", Long.class) : update.bind("sim", sim.getId());
+			DeviceView device = sim == null ? new DeviceView(id, status, temperature, null, null, null, null)
+					: new DeviceView(id, status, temperature, sim.getId(), sim.getOperatorCode(), sim.getCountry(),
+							sim.getStatus());
+			return update.fetch().rowsUpdated()
+					.flatMap(updated -> updated > 0
+							? Mono.just(new Update(found.device, new VersionedView(device, found.version + 1)))
+							: updateRead(id, version, status, temperature, sim));
+		});
+	}
+
+	/**
+	 * Runs a write in a transaction, and publishes its change to the
+	 * {@link InventoryChanges} in the order the transactions commit, as the
+	 * servlet writes do.
+	 *
+	 * There is no transaction synchronization in R2DBC, so the ticket is reserved
+	 * as the last step of the transaction, while the written rows are still
+	 * locked. Once
+	 * it commits, the change is published on a worker thread, as the listeners
+	 * take their locks and may wait for other publications. If it is rolled back
+	 * or cancelled, the ticket is released.
+	 *
+	 * @param write  The write. It emits its result
+	 * @param change The change of a result, or null if nothing was written
+	 * @return The result of the write, once committed and published
+	 */
+	private <T> Mono<T> inTransaction(Mono<T> write, Function<T, InventoryChange> change) {
+		return Mono.defer(() -> {
+			InventoryChanges.Ticket ticket = changes.new Ticket();
+			return write.doOnNext(result -> {
+				if (change.apply(result) != null) {
+					ticket.reserve();
+				}
+			}).as(transactional::transactional) // emits the result after the commit
+					.publishOn(Schedulers.boundedElastic())
+					.doOnNext(result -> ticket.publish(change.apply(result)))
+					.doFinally(signal -> ticket.cancel());
+		});
+	}
+
+	/**
+	 * @return The device and its version, with or without a SIM
+	 */
+	private Mono<VersionedView> findView(long id) {
+		return client
+				.sql("SELECT " + VIEW_COLUMNS + ", d.version FROM device d LEFT JOIN sim s ON s.id = d.sim_id"
+						+ " WHERE d.id = :id")
+				.bind("id", id).map(row -> new VersionedView(toView(row), row.get("version", Long.class))).first();
+	}
+
+	private static DeviceView toView(Row row) {
+		return new DeviceView(Objects.requireNonNull(row.get("id", Long.class)),
+				CodedEnum.fromCode(DeviceStatus.class, row.get("status", Short.class)),
+				getTemperature(row), row.get("sim_id", Long.class),
+				row.get("operator_code", Integer.class),
+				CodedEnum.fromCode(Country.class, row.get("country", Short.class)),
+				CodedEnum.fromCode(SimStatus.class, row.get("sim_status", Short.class)));
+	}
+
+	/**
+	 * @return The temperature of the device. It is stored as a double, and
+	 *         decoded as such
+	 */
+	private static Float getTemperature(Row row) {
+		Double temperature = row.get("temperature", Double.class);
+		return temperature == null ? null : temperature.floatValue();
+	}
+
+	/**
+	 * A device and its version
+	 */
+	private static class VersionedView {
+
+		private final DeviceView device;
+
+		private final long version;
+
+		VersionedView(DeviceView device, long version) {
+			this.device = device;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * Result of an update
+	 */
+	public static class Update {
+
+		/**
+		 * The device exists, but it has a different version
+		 */
+		static final Update CONFLICT = new Update(null, null);
+
+		private final DeviceView before;
+
+		private final DeviceView device;
+
+		private final long version;
+
+		private Update(DeviceView before, VersionedView updated) {
+			this.before = before;
+			this.device = updated == null ? null : updated.device;
+			this.version = updated == null ? 0 : updated.version;
+		}
+
+		/**
+		 * @return True if the device has a different version, and it was not updated
+		 */
+		public boolean isConflict() {
+			return this == CONFLICT;
+		}
+
+		/**
+		 * @return The updated device
+		 */
+		public DeviceView getDevice() {
+			return device;
+		}
+
+		/**
+		 * @return The new version of the device
+		 */
+		public long getVersion() {
+			return version;
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package com.example.demo.reactive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Netty server of the reactive endpoints, on reactive.server.port. It is not
+ * started if the port is negative (the default), and the port is chosen
+ * randomly if it is 0.
+ *
+ * The application is a servlet one, so Spring Boot does not start a reactive
+ * server by itself.
+ */
+@Component
+public class ReactiveServer implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(ReactiveServer.class);
+
+	@Autowired
+	private RouterFunction<ServerResponse> routes;
+
+	@Autowired
+	private HandlerStrategies strategies;
+
+	/**
+	 * Port of the server, negative if disabled
+	 */
+	@Value("${reactive.server.port:-1}")
+	private int port;
+
+	private DisposableServer server;
+
+	@Override
+	public void start() {
+		if (port < 0) {
+			return;
+		}
+		ReactorHttpHandlerAdapter adapter = new ReactorHttpHandlerAdapter(
+				RouterFunctions.toHttpHandler(routes, strategies));
+		server = HttpServer.create().port(port).handle(adapter).bindNow();
+		log.info("Reactive endpoints started on port {}", server.port());
+	}
+
+	@Override
+	public void stop() {
+		if (server != null) {
+			server.disposeNow();
+			server = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return server != null;
+	}
+
+	/**
+	 * @return The port of the server, or -1 if it is not running
+	 */
+	public int getPort() {
+		return server == null ? -1 : server.port();
+	}
+}
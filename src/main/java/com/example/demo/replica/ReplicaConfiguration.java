@@ -0,0 +1,121 @@
+package com.example.demo.replica;
+
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.example.demo.service.DeviceListings;
+import com.example.demo.service.InventoryVersion;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Read/write splitting, if replica.datasource.url is set.
+ *
+ * The data source of the application then routes the read-only transactions
+ * (the listings and the reads by ID) to a pool of the replica, and the rest to
+ * a pool of the primary (spring.datasource). The replica is a second H2
+ * database, kept in sync by {@link ReplicaSynchronizer}. When its lag exceeds
+ * replica.max-lag-ms, the reads go to the primary until it catches up.
+ */
+@Configuration
+@ConditionalOnProperty("replica.datasource.url")
+public class ReplicaConfiguration {
+
+	/**
+	 * @param properties The properties of the application data source
+	 * @return The pool of the primary database, configured with
+	 *         spring.datasource.hikari
+	 */
+	@Bean
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+		HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+		dataSource.setPoolName("primary");
+		return dataSource;
+	}
+
+	/**
+	 * @param properties The properties of the application data source
+	 * @param url        URL of the replica
+	 * @return The pool of the replica, configured with replica.datasource.hikari
+	 */
+	@Bean
+	@ConfigurationProperties("replica.datasource.hikari")
+	public HikariDataSource replicaDataSource(DataSourceProperties properties,
+			@Value("${replica.datasource.url}") String url) {
+		if (url.equals(properties.determineUrl())) {
+			throw new IllegalStateException("The replica must be a different database than the primary: " + url);
+		}
+		HikariDataSource dataSource = DataSourceBuilder.create().type(HikariDataSource.class).url(url)
+				.username(properties.determineUsername()).password(properties.determinePassword()).build();
+		dataSource.setPoolName("replica");
+		return dataSource;
+	}
+
+	/**
+	 * @return The synchronizer of the replica. Every batch it applies increases
+	 *         the inventory version and clears the cached listings, which may
+	 *         have been read from the replica before it
+	 */
+	@Bean
+	public ReplicaSynchronizer replicaSynchronizer(@Qualifier("primaryDataSource") DataSource primary,
+			@Qualifier("replicaDataSource") DataSource replica,
+			@Value("${replica.tables:sim,device}") String[] tables,
+			@Value("${replica.poll-interval-ms:100}") long pollIntervalMs,
+			@Value("${replica.apply-delay-ms:0}") long applyDelayMs, InventoryVersion version,
+			CacheManager cacheManager) {
+		ReplicaSynchronizer synchronizer = new ReplicaSynchronizer(primary, replica, Arrays.asList(tables),
+				pollIntervalMs, applyDelayMs);
+		synchronizer.setApplyListener(() -> {
+			version.increment();
+			for (String name : new String[] { DeviceListings.WAITING_ACTIVATION_CACHE,
+					DeviceListings.AVAILABLE_FOR_SALE_CACHE }) {
+				Cache cache = cacheManager.getCache(name);
+				if (cache != null) {
+					cache.clear();
+				}
+			}
+		});
+		return synchronizer;
+	}
+
+	/**
+	 * @return The data source of the application, routing between the primary
+	 *         and the replica
+	 */
+	@Bean
+	@Primary
+	public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+			@Qualifier("replicaDataSource") DataSource replica, ReplicaSynchronizer synchronizer,
+			@Value("${replica.max-lag-ms:1000}") long maxLagMs) {
+		ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replica, synchronizer, maxLagMs);
+		routing.afterPropertiesSet();
+		return new LazyConnectionDataSourceProxy(routing);
+	}
+
+	/**
+	 * @return The replica.lag metric
+	 */
+	@Bean
+	public MeterBinder replicaLagMetric(ReplicaSynchronizer synchronizer) {
+		return registry -> Gauge.builder("replica.lag", synchronizer, ReplicaSynchronizer::getLag)
+				.baseUnit("milliseconds").description("Age of the oldest change not applied to the replica")
+				.register(registry);
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.demo.replica;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.api.Trigger;
+
+/**
+ * H2 trigger of the primary database, which records the ID of every inserted,
+ * updated or deleted row in the replication log ({@link ReplicaSynchronizer#LOG_TABLE}).
+ *
+ * The log row is written in the same transaction as the change, so it is only
+ * visible once the change is committed, and it disappears if it is rolled
+ * back. Only IDs are logged: the replica copies the current row from the
+ * primary when it applies them.
+ */
+public class ReplicaLogTrigger implements Trigger {
+
+	/**
+	 * Whether the changes are logged. The triggers are stored in the database,
+	 * so they outlive the application that created them: they do nothing unless
+	 * a {@link ReplicaSynchronizer} is running in this JVM.
+	 */
+	static volatile boolean enabled;
+
+	private String tableName;
+
+	private int idColumn = -1;
+
+	@Override
+	public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+			int type) throws SQLException {
+		this.tableName = tableName;
+		try (ResultSet columns = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+			while (columns.next()) {
+				if ("ID".equalsIgnoreCase(columns.getString("COLUMN_NAME"))) {
+					idColumn = columns.getInt("ORDINAL_POSITION") - 1;
+				}
+			}
+		}
+		if (idColumn < 0) {
+			throw new SQLException("Table " + tableName + " has no ID column");
+		}
+	}
+
+	@Override
+	public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+		if (!enabled) {
+			return;
+		}
+		Object id = (newRow != null ? newRow : oldRow)[idColumn];
+		try (PreparedStatement insert = conn.prepareStatement(
+				"INSERT INTO " + ReplicaSynchronizer.LOG_TABLE + " (table_name, row_id, logged) VALUES (?, ?, ?)")) {
+			insert.setString(1, tableName);
+			insert.setLong(2, ((Number) id).longValue());
+			insert.setLong(3, System.currentTimeMillis());
+			insert.executeUpdate();
+		}
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void remove() {
+	}
+}
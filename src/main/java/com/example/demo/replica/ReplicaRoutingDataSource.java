@@ -0,0 +1,55 @@
+package com.example.demo.replica;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the read-only transactions to the replica, as long as its lag is
+ * tolerated, and everything else to the primary.
+ *
+ * The connection must be chosen once the transaction has started, so this
+ * data source is wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	/**
+	 * Lookup keys of the data sources
+	 */
+	enum Target {
+		PRIMARY, REPLICA
+	}
+
+	private final ReplicaSynchronizer synchronizer;
+
+	private final long maxLagMs;
+
+	/**
+	 * @param primary      The primary database
+	 * @param replica      The replica database
+	 * @param synchronizer The synchronizer of the replica, which knows its lag
+	 * @param maxLagMs     Maximum lag of the replica to read from it
+	 */
+	public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaSynchronizer synchronizer,
+			long maxLagMs) {
+		this.synchronizer = synchronizer;
+		this.maxLagMs = maxLagMs;
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(Target.PRIMARY, primary);
+		targets.put(Target.REPLICA, replica);
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && synchronizer.getLag() <= maxLagMs
+				? Target.REPLICA
+				: Target.PRIMARY;
+	}
+}
@@ -0,0 +1,335 @@
+package com.example.demo.replica;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+/**
+ * Keeps a second H2 database in sync with the primary one, as a stand-in for a
+ * read replica.
+ *
+ * On start, the schema and the rows of the replicated tables are copied to the
+ * replica, which is emptied first. From then on, the changes of those tables
+ * are recorded by {@link ReplicaLogTrigger} in a log table of the primary, in
+ * the same transaction, and a background thread applies the committed ones
+ * every poll interval: it copies the current rows with the logged IDs, or
+ * deletes them from the replica if they no longer exist, and removes the
+ * entries from the log. Foreign keys are not checked in the replica, and its
+ * unique constraints are plain indexes: the rows are applied in a different
+ * order than they were changed, so the replica may go through states that the
+ * primary never had.
+ *
+ * The lag is the age of the oldest committed change not applied yet. The
+ * changes can be held back for a while (apply delay), to simulate a slower
+ * replica. A listener is called after every batch applied, so what was read
+ * from the replica before it can be invalidated.
+ */
+public class ReplicaSynchronizer implements SmartLifecycle {
+	private static final Logger log = LoggerFactory.getLogger(ReplicaSynchronizer.class);
+
+	/**
+	 * Table of the primary with the changes not applied yet
+	 */
+	static final String LOG_TABLE = "replica_log";
+
+	/**
+	 * Maximum number of log entries applied in a transaction of the replica
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Unique constraint in the schema script of the primary
+	 */
+	private static final Pattern UNIQUE_CONSTRAINT = Pattern
+			.compile("ALTER TABLE (\\S+) ADD CONSTRAINT (\\S+) UNIQUE(\\(.*\\));?");
+
+	/**
+	 * Number of synchronizers running in this JVM
+	 */
+	private static final AtomicInteger running = new AtomicInteger();
+
+	private final DataSource primary;
+
+	private final DataSource replica;
+
+	private final List<String> tables;
+
+	private final long pollIntervalMs;
+
+	private volatile long applyDelayMs;
+
+	private volatile Runnable applyListener = () -> {
+	};
+
+	/**
+	 * Current lag in milliseconds, or {@link Long#MAX_VALUE} until the replica
+	 * has been copied
+	 */
+	private volatile long lag = Long.MAX_VALUE;
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * @param primary        The primary database
+	 * @param replica        The replica database. Its content is replaced
+	 * @param tables         The replicated tables, with an ID column
+	 * @param pollIntervalMs Time between checks of the log
+	 * @param applyDelayMs   Minimum age of the changes applied
+	 */
+	public ReplicaSynchronizer(DataSource primary, DataSource replica, List<String> tables, long pollIntervalMs,
+			long applyDelayMs) {
+		this.primary = primary;
+		this.replica = replica;
+		this.tables = tables;
+		this.pollIntervalMs = pollIntervalMs;
+		this.applyDelayMs = applyDelayMs;
+	}
+
+	/**
+	 * @return The lag of the replica in milliseconds, or {@link Long#MAX_VALUE}
+	 *         if it is not in sync
+	 */
+	public long getLag() {
+		return lag;
+	}
+
+	/**
+	 * @param applyDelayMs Minimum age of the changes applied
+	 */
+	public void setApplyDelayMs(long applyDelayMs) {
+		this.applyDelayMs = applyDelayMs;
+	}
+
+	/**
+	 * @param applyListener Called after a batch of changes has been applied to
+	 *                      the replica, from the synchronizer thread
+	 */
+	public void setApplyListener(Runnable applyListener) {
+		this.applyListener = applyListener;
+	}
+
+	@Override
+	public void start() {
+		running.incrementAndGet();
+		ReplicaLogTrigger.enabled = true;
+		try {
+			createLog();
+			copy();
+		} catch (SQLException e) {
+			throw new IllegalStateException("The replica cannot be initialized", e);
+		}
+		lag = 0;
+		executor = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "replica-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+		log.info("Replicating tables {} every {} ms", tables, pollIntervalMs);
+	}
+
+	@Override
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+			lag = Long.MAX_VALUE;
+			ReplicaLogTrigger.enabled = running.decrementAndGet() > 0;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return executor != null;
+	}
+
+	/**
+	 * Creates the log table and the triggers of the replicated tables
+	 */
+	private void createLog() throws SQLException {
+		try (Connection connection = primary.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE IF NOT EXISTS " + LOG_TABLE
+					+ " (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(255) NOT NULL,"
+					+ " row_id BIGINT NOT NULL, logged BIGINT NOT NULL)");
+			for (String table : tables) {
+				statement.execute("CREATE TRIGGER IF NOT EXISTS " + LOG_TABLE + "_" + table
+						+ " AFTER INSERT, UPDATE, DELETE ON " + table + " FOR EACH ROW CALL \""
+						+ ReplicaLogTrigger.class.getName() + "\"");
+			}
+		}
+	}
+
+	/**
+	 * Replaces the replica with the schema and the rows of the primary. The
+	 * changes made meanwhile are already logged, and they are applied later.
+	 */
+	private void copy() throws SQLException {
+		try (Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+			List<String> script = new ArrayList<>();
+			try (Statement statement = source.createStatement();
+					ResultSet rows = statement.executeQuery("SCRIPT NODATA")) {
+				while (rows.next()) {
+					script.add(rows.getString(1));
+				}
+			}
+			try (Statement statement = target.createStatement()) {
+				statement.execute("DROP ALL OBJECTS");
+				for (String sql : script) {
+					String upper = sql.toUpperCase();
+					if (!upper.startsWith("--") && !upper.startsWith("CREATE USER") && !upper.contains(" TRIGGER ")
+							&& !upper.contains(LOG_TABLE.toUpperCase())) {
+						Matcher unique = UNIQUE_CONSTRAINT.matcher(sql);
+						statement.execute(unique.matches()
+								? "CREATE INDEX " + unique.group(2) + " ON " + unique.group(1) + unique.group(3)
+								: sql);
+					}
+				}
+				statement.execute("SET REFERENTIAL_INTEGRITY FALSE");
+			}
+			target.setAutoCommit(false);
+			for (String table : tables) {
+				copyRows(source, target, table, null);
+			}
+			target.commit();
+			applyListener.run();
+		}
+	}
+
+	/**
+	 * Applies the committed changes of the log, if they are old enough, and
+	 * measures the lag
+	 */
+	private void poll() {
+		try {
+			while (apply() == BATCH_SIZE) {
+				// More changes pending
+			}
+			try (Connection connection = primary.getConnection();
+					Statement statement = connection.createStatement();
+					ResultSet oldest = statement.executeQuery("SELECT MIN(logged) FROM " + LOG_TABLE)) {
+				oldest.next();
+				long logged = oldest.getLong(1);
+				lag = oldest.wasNull() ? 0 : Math.max(0, System.currentTimeMillis() - logged);
+			}
+		} catch (SQLException | RuntimeException e) {
+			log.warn("Replication failed, it will be retried", e);
+		}
+	}
+
+	/**
+	 * Applies a batch of the log
+	 *
+	 * @return The number of log entries applied
+	 */
+	private int apply() throws SQLException {
+		try (Connection source = primary.getConnection(); Connection target = replica.getConnection()) {
+			List<Long> applied = new ArrayList<>();
+			Map<String, Set<Long>> changed = new LinkedHashMap<>();
+			try (PreparedStatement select = source.prepareStatement("SELECT seq, table_name, row_id FROM "
+					+ LOG_TABLE + " WHERE logged <= ? ORDER BY seq LIMIT " + BATCH_SIZE)) {
+				select.setLong(1, System.currentTimeMillis() - applyDelayMs);
+				try (ResultSet rows = select.executeQuery()) {
+					while (rows.next()) {
+						applied.add(rows.getLong(1));
+						changed.computeIfAbsent(rows.getString(2), table -> new HashSet<>()).add(rows.getLong(3));
+					}
+				}
+			}
+			if (applied.isEmpty()) {
+				return 0;
+			}
+
+			target.setAutoCommit(false);
+			for (Map.Entry<String, Set<Long>> entry : changed.entrySet()) {
+				copyRows(source, target, entry.getKey(), entry.getValue());
+			}
+			target.commit();
+
+			try (PreparedStatement delete = source.prepareStatement("DELETE FROM " + LOG_TABLE + " WHERE seq = ?")) {
+				for (Long seq : applied) {
+					delete.setLong(1, seq);
+					delete.addBatch();
+				}
+				delete.executeBatch();
+			}
+			return applied.size();
+		}
+	}
+
+	/**
+	 * Copies the current rows of a table to the replica, and deletes the ones
+	 * that no longer exist
+	 *
+	 * @param source The primary
+	 * @param target The replica, in a transaction
+	 * @param table  The table
+	 * @param ids    IDs of the rows, or null to copy all of them
+	 */
+	private static void copyRows(Connection source, Connection target, String table, Collection<Long> ids)
+			throws SQLException {
+		String where = ids == null ? ""
+				: " WHERE id IN (" + ids.stream().map(String::valueOf).collect(Collectors.joining(",")) + ")";
+		Set<Long> missing = ids == null ? new HashSet<>() : new HashSet<>(ids);
+		try (Statement statement = source.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT * FROM " + table + where)) {
+			ResultSetMetaData metadata = rows.getMetaData();
+			int count = metadata.getColumnCount();
+			List<String> columns = new ArrayList<>();
+			int idColumn = 0;
+			for (int i = 1; i <= count; i++) {
+				columns.add(metadata.getColumnName(i));
+				if ("ID".equalsIgnoreCase(metadata.getColumnName(i))) {
+					idColumn = i;
+				}
+			}
+			String merge = "MERGE INTO " + table + " (" + String.join(", ", columns) + ") KEY (id) VALUES ("
+					+ columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+			try (PreparedStatement upsert = target.prepareStatement(merge)) {
+				int batched = 0;
+				while (rows.next()) {
+					missing.remove(rows.getLong(idColumn));
+					for (int i = 1; i <= count; i++) {
+						upsert.setObject(i, rows.getObject(i));
+					}
+					upsert.addBatch();
+					if (++batched % BATCH_SIZE == 0) {
+						upsert.executeBatch();
+					}
+				}
+				upsert.executeBatch();
+			}
+		}
+		if (!missing.isEmpty()) {
+			try (PreparedStatement delete = target.prepareStatement("DELETE FROM " + table + " WHERE id = ?")) {
+				for (Long id : missing) {
+					delete.setLong(1, id);
+					delete.addBatch();
+				}
+				delete.executeBatch();
+			}
+		}
+	}
+}
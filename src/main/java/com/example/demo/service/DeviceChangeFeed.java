@@ -0,0 +1,262 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.DeviceChange;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Feed of the changes in the membership of the devices in the listings, with a
+ * sequence number each.
+ *
+ * The last changes are kept in a ring buffer of device.changes.buffer-size
+ * events, so a subscriber can resume after the last one it received. The
+ * subscribers do not get the events pushed: they are only signalled that there
+ * are new ones, and read them from the buffer after their own position, on a
+ * shared pool of threads. A slow subscriber never holds back the others, nor
+ * buffers anything. If it falls behind the buffer, it gets a reset event
+ * instead, meaning the listings must be read again. So do the new subscribers,
+ * and all of them when the database is cleared.
+ *
+ * The changes are the devices of each {@link InventoryChange} that join or
+ * leave the listings, or change within them. They are published after the
+ * {@link ForSaleIndex} is updated, so the listings read on an event have it.
+ *
+ * Sequence numbers start at the start time in microseconds, as the
+ * {@link InventoryVersion}, so the ones of a previous run are not mistaken for
+ * current ones.
+ */
+@Component
+@Order(2)
+public class DeviceChangeFeed implements MeterBinder, InventoryListener {
+
+	private final Event[] buffer;
+
+	/**
+	 * Sequence number of the last event
+	 */
+	private long last = System.currentTimeMillis() * 1000;
+
+	/**
+	 * Sequence number of the oldest event in the buffer
+	 */
+	private long oldest = last + 1;
+
+	/**
+	 * Guards the buffer and the sequence numbers
+	 */
+	private final Lock lock = new ReentrantLock();
+
+	/**
+	 * Signals new events to the subscribers
+	 */
+	private final Sinks.Many<Long> signals = Sinks.many().multicast().directBestEffort();
+
+	private final AtomicInteger subscribers = new AtomicInteger();
+
+	/**
+	 * An event of the feed
+	 */
+	public static class Event {
+
+		private final long sequence;
+
+		private final DeviceChange change;
+
+		private Event(long sequence, DeviceChange change) {
+			this.sequence = sequence;
+			this.change = change;
+		}
+
+		/**
+		 * @return The sequence number
+		 */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return The change, or null for a reset
+		 */
+		public DeviceChange getChange() {
+			return change;
+		}
+
+		/**
+		 * @return Whether the listings must be read again
+		 */
+		public boolean isReset() {
+			return change == null;
+		}
+	}
+
+	/**
+	 * Position of a subscriber
+	 */
+	private static class Cursor {
+
+		private long sequence;
+
+		private Cursor(long sequence) {
+			this.sequence = sequence;
+		}
+	}
+
+	/**
+	 * Creates the feed
+	 *
+	 * @param bufferSize Number of events kept for the subscribers that resume
+	 */
+	public DeviceChangeFeed(@Value("${device.changes.buffer-size:10000}") int bufferSize) {
+		this.buffer = new Event[bufferSize];
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("device.changes.subscribers", subscribers, AtomicInteger::get)
+				.description("Subscribers of the device change feed").register(registry);
+	}
+
+	@Override
+	public void changed(InventoryChange change) {
+		if (change.isReload()) {
+			reset();
+			return;
+		}
+		List<DeviceChange> changes = new ArrayList<>();
+		for (long id : change.getChangedDevices()) {
+			// The devices that no longer exist leave the listings
+			DeviceChange before = listings(id, change.getDeviceBefore(id));
+			DeviceChange after = listings(id, change.getDeviceAfter(id));
+			if (!after.equals(before) && (isListed(before) || isListed(after))) {
+				changes.add(after);
+			}
+		}
+		publish(changes);
+	}
+
+	/**
+	 * Publishes some changes, with consecutive sequence numbers. If they do not
+	 * fit in the buffer, a reset is published instead
+	 *
+	 * @param changes The changes
+	 */
+	public void publish(List<DeviceChange> changes) {
+		if (changes.isEmpty()) {
+			return;
+		}
+		if (changes.size() > buffer.length) {
+			reset();
+			return;
+		}
+		lock.lock();
+		try {
+			changes.forEach(this::append);
+			signals.tryEmitNext(last);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes a reset: the subscribers must read the listings again
+	 */
+	public void reset() {
+		lock.lock();
+		try {
+			append(null);
+			signals.tryEmitNext(last);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Subscribes to the feed. It never completes
+	 *
+	 * @param lastSequence Sequence number of the last event received, to resume
+	 *                     after it, or null to start with a reset
+	 * @return The events
+	 */
+	public Flux<Event> subscribe(Long lastSequence) {
+		return Flux.defer(() -> {
+			Cursor cursor = new Cursor(lastSequence == null ? Long.MIN_VALUE : lastSequence);
+			// The first read is after listening to the signals, so no event is missed
+			return signals.asFlux().mergeWith(Mono.just(0L)).onBackpressureLatest()
+					.publishOn(Schedulers.boundedElastic(), 1).concatMapIterable(signal -> read(cursor));
+		}).doOnSubscribe(subscription -> subscribers.incrementAndGet())
+				.doFinally(signal -> subscribers.decrementAndGet());
+	}
+
+	/**
+	 * @return The events after the position of a subscriber, which is moved to
+	 *         the last one
+	 */
+	private List<Event> read(Cursor cursor) {
+		lock.lock();
+		try {
+			if (cursor.sequence == last) {
+				return Collections.emptyList();
+			}
+			if (cursor.sequence < oldest - 1 || cursor.sequence > last) {
+				cursor.sequence = last;
+				return Collections.singletonList(new Event(last, null));
+			}
+			List<Event> events = new ArrayList<>((int) (last - cursor.sequence));
+			for (long sequence = cursor.sequence + 1; sequence <= last; sequence++) {
+				events.add(buffer[index(sequence)]);
+			}
+			cursor.sequence = last;
+			return events;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param id     The device ID
+	 * @param device The device, or null if it does not exist
+	 * @return The listings the device is in
+	 */
+	private static DeviceChange listings(long id, DeviceView device) {
+		if (device == null) {
+			return new DeviceChange(id, null, false, false);
+		}
+		SimView sim = device.getSim();
+		return new DeviceChange(id, sim == null ? null : sim.getId(), InventoryCounters.isForSale(device),
+				sim != null && sim.getStatus() == SimStatus.WAITING_FOR_ACTIVATION);
+	}
+
+	private static boolean isListed(DeviceChange device) {
+		return device.isForSale() || device.isWaitingActivation();
+	}
+
+	private void append(DeviceChange change) {
+		last++;
+		buffer[index(last)] = new Event(last, change);
+		oldest = Math.max(oldest, last - buffer.length + 1);
+	}
+
+	private int index(long sequence) {
+		return (int) (sequence % buffer.length);
+	}
+}
@@ -0,0 +1,186 @@
+package com.example.demo.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+
+/**
+ * The device listings, with the {@link InventoryVersion} they were read at.
+ *
+ * The version is taken before the query, so a listing is never tagged with a
+ * version newer than its content: if a change commits meanwhile, the listing
+ * is only considered out of date a bit too early. The full listings are
+ * cached with their version, until a device is modified or deleted.
+ *
+ * The writers evict the cached listings, but a reader that was already reading
+ * when a change committed may cache a listing without it after the eviction.
+ * As such a listing was read at a version older than the change, a cached
+ * listing older than the current version is read again instead of returned.
+ *
+ * The devices for sale are read from the {@link ForSaleIndex}, if it is
+ * enabled and ready, without a transaction or a query.
+ */
+@Component
+public class DeviceListings {
+
+	/**
+	 * Cache of the full waiting-activation listing
+	 */
+	public static final String WAITING_ACTIVATION_CACHE = "waiting-activation";
+
+	/**
+	 * Cache of the full available-for-sale listing
+	 */
+	public static final String AVAILABLE_FOR_SALE_CACHE = "available-for-sale";
+
+	@Autowired
+	private DeviceRepository repository;
+
+	@Autowired
+	private InventoryVersion version;
+
+	@Autowired(required = false)
+	private ForSaleIndex index;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * Devices read at an inventory version
+	 */
+	public static class Listing {
+
+		private final long version;
+
+		private final List<DeviceView> items;
+
+		private Listing(long version, List<DeviceView> items) {
+			this.version = version;
+			this.items = Collections.unmodifiableList(items);
+		}
+
+		/**
+		 * @return The inventory version the devices were read at
+		 */
+		public long getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return The devices
+		 */
+		public List<DeviceView> getItems() {
+			return items;
+		}
+	}
+
+	/**
+	 * @return All devices in the warehouse that are waiting for activation
+	 */
+	public Listing findWaitingActivation() {
+		return cached(WAITING_ACTIVATION_CACHE, () -> {
+			long current = version.get();
+			return new Listing(current,
+					readOnly(() -> repository.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION)));
+		});
+	}
+
+	/**
+	 * @param after Device ID after which the page starts
+	 * @param limit Maximum number of devices
+	 * @return A page of the devices waiting for activation, ordered by device ID
+	 */
+	@Transactional(readOnly = true)
+	public Listing findWaitingActivationPage(long after, int limit) {
+		long current = version.get();
+		return new Listing(current, repository.findViewBySimStatusAfter(SimStatus.WAITING_FOR_ACTIVATION, after,
+				PageRequest.ofSize(limit)));
+	}
+
+	/**
+	 * @return The devices available for sale, ordered by SIM ID
+	 */
+	public Listing findAvailableForSale() {
+		return cached(AVAILABLE_FOR_SALE_CACHE, () -> {
+			long current = version.get();
+			return new Listing(current,
+					isIndexReady() ? index.findAll() : readOnly(() -> repository.findViewForSale()));
+		});
+	}
+
+	/**
+	 * @param after SIM ID after which the page starts
+	 * @param limit Maximum number of devices
+	 * @return A page of the devices available for sale, ordered by SIM ID
+	 */
+	public Listing findAvailableForSalePage(long after, int limit) {
+		long current = version.get();
+		return new Listing(current, isIndexReady() ? index.findAfter(after, limit)
+				: readOnly(() -> repository.findViewForSaleAfter(after, PageRequest.ofSize(limit))));
+	}
+
+	/**
+	 * @param filter The filter
+	 * @param after  SIM ID after which the page starts
+	 * @param limit  Maximum number of devices, or {@link Integer#MAX_VALUE} for
+	 *               all of them
+	 * @return A page of the devices available for sale that match the filter,
+	 *         ordered by SIM ID. Unless the filter is none, they are always read
+	 *         from the database
+	 */
+	public Listing findAvailableForSalePage(ForSaleFilter filter, long after, int limit) {
+		if (filter.isNone()) {
+			return findAvailableForSalePage(after, limit);
+		}
+		long current = version.get();
+		return new Listing(current, readOnly(() -> repository.findViewForSale(filter, after, limit)));
+	}
+
+	/**
+	 * @return Whether the devices for sale can be read from the index
+	 */
+	public boolean isIndexReady() {
+		return index != null && index.isReady();
+	}
+
+	/**
+	 * @param name   The cache of the listing
+	 * @param reader Reads the listing
+	 * @return The cached listing, unless it was read before the current version,
+	 *         or the listing read again, which is then cached
+	 */
+	private Listing cached(String name, Supplier<Listing> reader) {
+		Cache cache = cacheManager.getCache(name);
+		Listing listing = cache.get(SimpleKey.EMPTY, Listing.class);
+		if (listing == null || listing.getVersion() < version.get()) {
+			listing = reader.get();
+			cache.put(SimpleKey.EMPTY, listing);
+		}
+		return listing;
+	}
+
+	/**
+	 * @return The result of a query, in a read-only transaction
+	 */
+	private <T> T readOnly(Supplier<T> query) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setReadOnly(true);
+		return template.execute(status -> query.get());
+	}
+}
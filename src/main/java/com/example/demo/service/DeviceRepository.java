@@ -1,18 +1,74 @@
 package com.example.demo.service;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
 
 /**
  * This is the repository to store the Device registry
  */
-public interface DeviceRepository extends JpaRepository<Device, Long> {
+public interface DeviceRepository extends JpaRepository<Device, Long>, DeviceRepositoryCustom {
+
+	/**
+	 * Constructor expression shared by the {@link DeviceView} projections. The
+	 * device is joined to its SIM with alias <code>s</code>.
+	 */
+	String VIEW = "SELECT new com.example.demo.model.DeviceView(d.id, d.status, d.temperature, "
+			+ " s.id, s.operatorCode, s.country, s.status) FROM Device d JOIN d.sim s ";
+
+	/**
+	 * Condition and order of the for-sale projections.
+	 * 
+	 * The range on the SIM ID is always present (even for the full listing) so the
+	 * rows are driven by the SIM primary key, which already returns them in order.
+	 * Each SIM is then matched with the device index on (sim_id, status,
+	 * temperature), which covers the rest of the condition. No sort is needed.
+	 */
+	String FOR_SALE_AFTER = " WHERE s.id > :after AND d.status = com.example.demo.model.DeviceStatus.READY AND d.temperature BETWEEN -25 and 85 "
+			+ " ORDER by s.id";
+
+	List<Device> findBySimStatus(SimStatus status);
 
-	List<Device> findBySimStatus(String status);
+	/**
+	 * Same as {@link #findBySimStatus(SimStatus)}, but projected in a single
+	 * statement.
+	 * 
+	 * @param status SIM status
+	 * @return The devices whose SIM has the given status
+	 */
+	@Query(VIEW + " WHERE s.status = :status")
+	List<DeviceView> findViewBySimStatus(@Param("status") SimStatus status);
+
+	/**
+	 * Keyset page of the devices whose SIM has the given status, ordered by device
+	 * ID.
+	 * 
+	 * @param status SIM status
+	 * @param after  Only devices with an ID greater than this one are returned
+	 * @param limit  Page size. Only the size is used, it is not an offset
+	 * @return The page of devices
+	 */
+	@Query(VIEW + " WHERE s.status = :status AND d.id > :after ORDER by d.id")
+	List<DeviceView> findViewBySimStatusAfter(@Param("status") SimStatus status, @Param("after") long after,
+			Pageable limit);
 
 	/**
 	 * Gets the list of devices available for sale.
@@ -23,7 +79,89 @@ public interface DeviceRepository extends JpaRepository<Device, Long> {
 	 * 
 	 * @return
 	 */
-	@Query("SELECT d FROM Device d WHERE d.sim IS NOT NULL AND "
-			+ " d.status = 'READY' AND d.temperature BETWEEN -25 and 85 " + " ORDER by d.sim.id")
+	@Query("SELECT d FROM Device d WHERE d.sim.id IS NOT NULL AND "
+			+ " d.status = com.example.demo.model.DeviceStatus.READY AND d.temperature BETWEEN -25 and 85 " + " ORDER by d.sim.id")
 	List<Device> findForSale();
+
+	/**
+	 * Same as {@link #findForSale()}, but projected in a single statement.
+	 * 
+	 * @return The devices available for sale, ordered by SIM ID
+	 */
+	default List<DeviceView> findViewForSale() {
+		return findViewForSaleAfter(Long.MIN_VALUE, Pageable.unpaged());
+	}
+
+	/**
+	 * Same as {@link #findViewForSale()}, but the rows are returned lazily from a
+	 * scrollable cursor instead of being collected in a list.
+	 * 
+	 * It must be called inside a transaction, and the stream must be closed once
+	 * consumed.
+	 * 
+	 * @param after Only devices with a SIM ID greater than this one are returned
+	 * @return The stream of devices available for sale
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query(VIEW + FOR_SALE_AFTER)
+	Stream<DeviceView> streamViewForSale(@Param("after") long after);
+
+	/**
+	 * Keyset page of {@link #findViewForSale()}.
+	 * 
+	 * @param after Only devices with a SIM ID greater than this one are returned
+	 * @param limit Page size. Only the size is used, it is not an offset
+	 * @return The page of devices available for sale, ordered by SIM ID
+	 */
+	@Query(VIEW + FOR_SALE_AFTER)
+	List<DeviceView> findViewForSaleAfter(@Param("after") long after, Pageable limit);
+
+	/**
+	 * Counts the devices available for sale
+	 * 
+	 * @return The number of devices of {@link #findViewForSale()}
+	 */
+	@Query("SELECT COUNT(d) FROM Device d JOIN d.sim s WHERE d.status = com.example.demo.model.DeviceStatus.READY"
+			+ " AND d.temperature BETWEEN -25 and 85")
+	long countForSale();
+
+	/**
+	 * Reads a device, locking it until the end of the transaction
+	 * 
+	 * @param id The device ID
+	 * @return The device, if it exists
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT d FROM Device d WHERE d.id = :id")
+	Optional<Device> findForUpdate(@Param("id") long id);
+
+	/**
+	 * Deletes a device with a single statement, without loading it first.
+	 * 
+	 * @param id The device ID
+	 * @return The number of devices deleted, 0 or 1
+	 */
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM Device d WHERE d.id = :id")
+	int deleteDevice(@Param("id") long id);
+
+	/**
+	 * Updates a device with a single statement, only if it still has the expected
+	 * version. The version is incremented.
+	 * 
+	 * @param id          The device ID
+	 * @param version     The expected version
+	 * @param status      New status
+	 * @param temperature New ideal temperature
+	 * @param sim         New SIM (it may be a reference), or null
+	 * @return The number of devices updated. 0 if the device does not exist or it
+	 *         has a different version
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE Device d SET d.status = :status, d.temperature = :temperature, d.sim = :sim, "
+			+ " d.version = d.version + 1 WHERE d.id = :id AND d.version = :version")
+	int updateIfVersion(@Param("id") long id, @Param("version") long version, @Param("status") DeviceStatus status,
+			@Param("temperature") Float temperature, @Param("sim") Sim sim);
 }
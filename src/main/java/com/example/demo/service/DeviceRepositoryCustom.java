@@ -0,0 +1,24 @@
+package com.example.demo.service;
+
+import java.util.List;
+
+import com.example.demo.model.DeviceView;
+
+/**
+ * Queries of the {@link DeviceRepository} built with the Criteria API, as
+ * their conditions depend on the parameters
+ */
+public interface DeviceRepositoryCustom {
+
+	/**
+	 * Keyset page of the devices for sale that match a filter. Every condition
+	 * is in the SQL statement.
+	 * 
+	 * @param filter The filter
+	 * @param after  Only devices with a SIM ID greater than this one are returned
+	 * @param limit  Maximum number of devices, or {@link Integer#MAX_VALUE} for
+	 *               all of them
+	 * @return The devices, ordered by SIM ID
+	 */
+	List<DeviceView> findViewForSale(ForSaleFilter filter, long after, int limit);
+}
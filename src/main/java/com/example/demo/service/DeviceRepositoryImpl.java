@@ -0,0 +1,81 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Join;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+
+/**
+ * Implementation of {@link DeviceRepositoryCustom}.
+ * 
+ * The values are always bound as parameters, never as literals, so there is a
+ * single SQL statement (and query plan) per combination of filters. As in
+ * {@link DeviceRepository#FOR_SALE_AFTER}, the rows are driven by a SIM index
+ * in SIM ID order: the primary key, or the index on (country, operator code,
+ * ID) or (operator code, ID) when filtering by them. Each SIM is then matched
+ * with the device index on (SIM ID, status, temperature).
+ */
+public class DeviceRepositoryImpl implements DeviceRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public List<DeviceView> findViewForSale(ForSaleFilter filter, long after, int limit) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<DeviceView> criteria = builder.createQuery(DeviceView.class);
+		Root<Device> device = criteria.from(Device.class);
+		Join<Device, Sim> sim = device.join("sim");
+		criteria.select(builder.construct(DeviceView.class, device.get("id"), device.get("status"),
+				device.get("temperature"), sim.get("id"), sim.get("operatorCode"), sim.get("country"),
+				sim.get("status")));
+
+		ParameterExpression<Long> afterParameter = builder.parameter(Long.class);
+		ParameterExpression<DeviceStatus> statusParameter = builder.parameter(DeviceStatus.class);
+		ParameterExpression<Float> minParameter = builder.parameter(Float.class);
+		ParameterExpression<Float> maxParameter = builder.parameter(Float.class);
+		ParameterExpression<Country> countryParameter = builder.parameter(Country.class);
+		ParameterExpression<Integer> operatorParameter = builder.parameter(Integer.class);
+		List<Predicate> conditions = new ArrayList<>();
+		conditions.add(builder.gt(sim.get("id"), afterParameter));
+		conditions.add(builder.equal(device.get("status"), statusParameter));
+		conditions.add(builder.between(device.get("temperature"), minParameter, maxParameter));
+		if (filter.getCountry() != null) {
+			conditions.add(builder.equal(sim.get("country"), countryParameter));
+		}
+		if (filter.getOperator() != null) {
+			conditions.add(builder.equal(sim.get("operatorCode"), operatorParameter));
+		}
+		criteria.where(conditions.toArray(new Predicate[0])).orderBy(builder.asc(sim.get("id")));
+
+		TypedQuery<DeviceView> query = entityManager.createQuery(criteria)
+				.setParameter(afterParameter, after)
+				.setParameter(statusParameter, DeviceStatus.READY)
+				.setParameter(minParameter, filter.getMinTemp())
+				.setParameter(maxParameter, filter.getMaxTemp());
+		if (filter.getCountry() != null) {
+			query.setParameter(countryParameter, filter.getCountry());
+		}
+		if (filter.getOperator() != null) {
+			query.setParameter(operatorParameter, filter.getOperator());
+		}
+		if (limit < Integer.MAX_VALUE) {
+			query.setMaxResults(limit);
+		}
+		return query.getResultList();
+	}
+}
@@ -0,0 +1,47 @@
+package com.example.demo.service;
+
+/**
+ * Result of each device of a batch update. The status follows the single
+ * update: 200 OK if it was updated, 404 NOT FOUND if the device or SIM does not
+ * exist, and 409 CONFLICT if the SIM is assigned to another device.
+ */
+public class DeviceUpdateResult {
+
+	private final long id;
+
+	private final int status;
+
+	private final String message;
+
+	/**
+	 * @param id      Device ID
+	 * @param status  HTTP like status code
+	 * @param message Description of the problem, or null if updated
+	 */
+	DeviceUpdateResult(long id, int status, String message) {
+		this.id = id;
+		this.status = status;
+		this.message = message;
+	}
+
+	/**
+	 * @return The device ID
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The description of the problem, or null if updated
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,95 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Country;
+
+/**
+ * Filter of the devices available for sale, from the query parameters of the
+ * listing: <code>country</code>, <code>operator</code>, <code>minTemp</code>
+ * and <code>maxTemp</code>.
+ * 
+ * The temperatures that are not given are the ones of the UK standard (-25'C
+ * to 85'C), so the filter without parameters is the plain listing.
+ */
+public class ForSaleFilter {
+
+	/**
+	 * Minimum temperature of the UK standard
+	 */
+	public static final float MIN_TEMPERATURE = -25;
+
+	/**
+	 * Maximum temperature of the UK standard
+	 */
+	public static final float MAX_TEMPERATURE = 85;
+
+	/**
+	 * The plain listing
+	 */
+	public static final ForSaleFilter NONE = new ForSaleFilter(null, null, null, null);
+
+	private final Country country;
+
+	private final Integer operator;
+
+	private final float minTemp;
+
+	private final float maxTemp;
+
+	/**
+	 * Creates the filter
+	 * 
+	 * @param country  Country of the SIM, or null for any
+	 * @param operator Operator code of the SIM, or null for any
+	 * @param minTemp  Minimum temperature, or null for the standard one
+	 * @param maxTemp  Maximum temperature, or null for the standard one
+	 */
+	public ForSaleFilter(Country country, Integer operator, Float minTemp, Float maxTemp) {
+		this.country = country;
+		this.operator = operator;
+		this.minTemp = minTemp == null ? MIN_TEMPERATURE : minTemp;
+		this.maxTemp = maxTemp == null ? MAX_TEMPERATURE : maxTemp;
+	}
+
+	/**
+	 * @return Whether it is the plain listing, with no other condition than the
+	 *         UK standard
+	 */
+	public boolean isNone() {
+		return country == null && operator == null && minTemp == MIN_TEMPERATURE && maxTemp == MAX_TEMPERATURE;
+	}
+
+	/**
+	 * @return Whether the temperature range is not empty
+	 */
+	public boolean isValid() {
+		return minTemp <= maxTemp;
+	}
+
+	/**
+	 * @return The country of the SIM, or null for any
+	 */
+	public Country getCountry() {
+		return country;
+	}
+
+	/**
+	 * @return The operator code of the SIM, or null for any
+	 */
+	public Integer getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return The minimum temperature
+	 */
+	public float getMinTemp() {
+		return minTemp;
+	}
+
+	/**
+	 * @return The maximum temperature
+	 */
+	public float getMaxTemp() {
+		return maxTemp;
+	}
+}
@@ -0,0 +1,372 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * In-memory index of the devices available for sale, ordered by SIM ID, if
+ * device.index.enabled is true.
+ *
+ * The devices are packed in primitive arrays, 26 bytes each: the SIM and
+ * device IDs, the temperature, the operator code, and the ordinals of the
+ * country and the SIM status (the device status is always READY). The arrays
+ * are split in chunks of up to {@value #CHUNK_SIZE} devices, so an insert or a
+ * delete only moves part of a chunk.
+ *
+ * It is loaded on each {@link InventoryChange#RELOAD}, on startup and when the
+ * database is cleared, and then updated with the devices of each change, in
+ * the order they were committed. Once loaded, it is checked
+ * against the database: if the count or the first devices do not match, it is
+ * not used, and the listings are read from the database.
+ */
+@Component
+@ConditionalOnProperty(name = "device.index.enabled", havingValue = "true")
+@Order(1)
+public class ForSaleIndex implements MeterBinder, InventoryListener {
+	private static final Logger log = LoggerFactory.getLogger(ForSaleIndex.class);
+
+	/**
+	 * Maximum number of devices in a chunk
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * Number of devices in the chunks when loading, leaving room for inserts
+	 */
+	private static final int LOAD_SIZE = CHUNK_SIZE * 3 / 4;
+
+	/**
+	 * Number of devices compared with the database after loading
+	 */
+	private static final int CHECK_SIZE = 1000;
+
+	private static final Country[] COUNTRIES = Country.values();
+
+	private static final SimStatus[] SIM_STATUSES = SimStatus.values();
+
+	@Autowired
+	private DeviceRepository repository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Guards the chunks and the size
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Chunks ordered by SIM ID. None is empty, unless it is the only one
+	 */
+	private List<Chunk> chunks = new ArrayList<>(Arrays.asList(new Chunk()));
+
+	private int size;
+
+	private volatile boolean ready;
+
+	/**
+	 * Devices of a chunk, ordered by SIM ID
+	 */
+	private static final class Chunk {
+
+		private int size;
+
+		private final long[] simIds = new long[CHUNK_SIZE];
+
+		private final long[] deviceIds = new long[CHUNK_SIZE];
+
+		private final float[] temperatures = new float[CHUNK_SIZE];
+
+		private final int[] operatorCodes = new int[CHUNK_SIZE];
+
+		/**
+		 * Ordinal of the country, or -1 if null
+		 */
+		private final byte[] countries = new byte[CHUNK_SIZE];
+
+		/**
+		 * Ordinal of the SIM status, or -1 if null
+		 */
+		private final byte[] simStatuses = new byte[CHUNK_SIZE];
+
+		/**
+		 * @return The position of the SIM, or (-insertion point - 1) if it is not
+		 *         in the chunk
+		 */
+		private int find(long simId) {
+			return Arrays.binarySearch(simIds, 0, size, simId);
+		}
+
+		private DeviceView get(int i) {
+			return new DeviceView(deviceIds[i], DeviceStatus.READY, temperatures[i], simIds[i], operatorCodes[i],
+					countries[i] < 0 ? null : COUNTRIES[countries[i]],
+					simStatuses[i] < 0 ? null : SIM_STATUSES[simStatuses[i]]);
+		}
+
+		private void set(int i, DeviceView device) {
+			simIds[i] = device.getSim().getId();
+			deviceIds[i] = device.getId();
+			temperatures[i] = device.getTemperature();
+			operatorCodes[i] = device.getSim().getOperatorCode();
+			countries[i] = (byte) (device.getSim().getCountry() == null ? -1 : device.getSim().getCountry().ordinal());
+			simStatuses[i] = (byte) (device.getSim().getStatus() == null ? -1 : device.getSim().getStatus().ordinal());
+		}
+
+		private void insert(int i, DeviceView device) {
+			copy(this, i, this, i + 1, size - i);
+			set(i, device);
+			size++;
+		}
+
+		private void remove(int i) {
+			copy(this, i + 1, this, i, size - i - 1);
+			size--;
+		}
+
+		/**
+		 * Moves the upper half of the devices to a new chunk
+		 *
+		 * @return The new chunk
+		 */
+		private Chunk split() {
+			Chunk upper = new Chunk();
+			int half = size / 2;
+			copy(this, half, upper, 0, size - half);
+			upper.size = size - half;
+			size = half;
+			return upper;
+		}
+
+		private static void copy(Chunk source, int from, Chunk target, int to, int length) {
+			System.arraycopy(source.simIds, from, target.simIds, to, length);
+			System.arraycopy(source.deviceIds, from, target.deviceIds, to, length);
+			System.arraycopy(source.temperatures, from, target.temperatures, to, length);
+			System.arraycopy(source.operatorCodes, from, target.operatorCodes, to, length);
+			System.arraycopy(source.countries, from, target.countries, to, length);
+			System.arraycopy(source.simStatuses, from, target.simStatuses, to, length);
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("device.index.size", this, ForSaleIndex::size)
+				.description("Devices in the in-memory index of the devices for sale").register(registry);
+	}
+
+	/**
+	 * @return Whether the index is loaded and consistent with the database
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return The number of devices for sale
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The devices for sale, ordered by SIM ID
+	 */
+	public List<DeviceView> findAll() {
+		return findAfter(Long.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param after SIM ID after which the devices start
+	 * @param limit Maximum number of devices
+	 * @return The devices for sale after the SIM ID, ordered by SIM ID
+	 */
+	public List<DeviceView> findAfter(long after, int limit) {
+		lock.readLock().lock();
+		try {
+			List<DeviceView> devices = new ArrayList<>(Math.min(limit, size));
+			int c = chunkOf(after);
+			int i = chunks.get(c).find(after);
+			i = i >= 0 ? i + 1 : -i - 1;
+			for (; c < chunks.size() && devices.size() < limit; c++, i = 0) {
+				Chunk chunk = chunks.get(c);
+				for (; i < chunk.size && devices.size() < limit; i++) {
+					devices.add(chunk.get(i));
+				}
+			}
+			return devices;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void changed(InventoryChange change) {
+		if (change.isReload()) {
+			reload();
+			return;
+		}
+		List<DeviceView> removed = new ArrayList<>();
+		List<DeviceView> added = new ArrayList<>();
+		for (long id : change.getChangedDevices()) {
+			DeviceView before = change.getDeviceBefore(id);
+			DeviceView after = change.getDeviceAfter(id);
+			if (before != null) {
+				removed.add(before);
+			}
+			if (after != null) {
+				added.add(after);
+			}
+		}
+		update(removed, added);
+	}
+
+	/**
+	 * Applies the change of some devices. The ones not for sale are ignored
+	 *
+	 * @param removed The devices before the change
+	 * @param added   The devices after the change
+	 */
+	public void update(Collection<DeviceView> removed, Collection<DeviceView> added) {
+		lock.writeLock().lock();
+		try {
+			removed.stream().filter(InventoryCounters::isForSale).forEach(this::remove);
+			added.stream().filter(InventoryCounters::isForSale).forEach(this::insert);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Loads the devices for sale from the database, and checks the result
+	 */
+	public void reload() {
+		ready = false;
+		long start = System.currentTimeMillis();
+		List<Chunk> loaded = new ArrayList<>(Arrays.asList(new Chunk()));
+		boolean consistent = new TransactionTemplate(transactionManager).execute(status -> {
+			try (Stream<DeviceView> stream = repository.streamViewForSale(Long.MIN_VALUE)) {
+				stream.forEach(device -> {
+					Chunk last = loaded.get(loaded.size() - 1);
+					if (last.size == LOAD_SIZE) {
+						last = new Chunk();
+						loaded.add(last);
+					}
+					last.set(last.size++, device);
+				});
+			}
+			lock.writeLock().lock();
+			try {
+				chunks = loaded;
+				size = loaded.stream().mapToInt(chunk -> chunk.size).sum();
+			} finally {
+				lock.writeLock().unlock();
+			}
+			return check();
+		});
+		if (consistent) {
+			log.info("Indexed {} devices for sale in {} ms", size(), System.currentTimeMillis() - start);
+			ready = true;
+		}
+	}
+
+	/**
+	 * @return Whether the number of devices and the first ones are the same as in
+	 *         the database
+	 */
+	private boolean check() {
+		long expected = repository.countForSale();
+		if (expected != size()) {
+			log.error("Index of the devices for sale not used: {} devices, {} in the database", size(), expected);
+			return false;
+		}
+		List<DeviceView> first = repository.findViewForSaleAfter(Long.MIN_VALUE, PageRequest.ofSize(CHECK_SIZE));
+		if (!first.equals(findAfter(Long.MIN_VALUE, CHECK_SIZE))) {
+			log.error("Index of the devices for sale not used: the first {} devices are not the ones in the database",
+					CHECK_SIZE);
+			return false;
+		}
+		return true;
+	}
+
+	private void insert(DeviceView device) {
+		long simId = device.getSim().getId();
+		int c = chunkOf(simId);
+		Chunk chunk = chunks.get(c);
+		int i = chunk.find(simId);
+		if (i >= 0) {
+			chunk.set(i, device);
+			return;
+		}
+		i = -i - 1;
+		if (chunk.size == CHUNK_SIZE) {
+			Chunk upper = chunk.split();
+			chunks.add(c + 1, upper);
+			if (i > chunk.size) {
+				i -= chunk.size;
+				chunk = upper;
+			}
+		}
+		chunk.insert(i, device);
+		size++;
+	}
+
+	private void remove(DeviceView device) {
+		long simId = device.getSim().getId();
+		int c = chunkOf(simId);
+		Chunk chunk = chunks.get(c);
+		int i = chunk.find(simId);
+		if (i >= 0 && chunk.deviceIds[i] == device.getId()) {
+			chunk.remove(i);
+			size--;
+			if (chunk.size == 0 && chunks.size() > 1) {
+				chunks.remove(c);
+			}
+		}
+	}
+
+	/**
+	 * @return The position of the last chunk starting at or before the SIM ID, or
+	 *         0 if there is none
+	 */
+	private int chunkOf(long simId) {
+		int low = 0;
+		int high = chunks.size() - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (chunks.get(middle).simIds[0] <= simId) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+}
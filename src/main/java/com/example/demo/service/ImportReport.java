@@ -0,0 +1,134 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of an inventory import.
+ * 
+ * Records are imported in batches. A batch is rejected as a whole if it cannot
+ * be written (e.g. a SIM assigned twice), and single records are rejected if
+ * they are not valid (e.g. an unknown SIM). Each problem is reported with the
+ * batch and the range of lines of the file affected, numbered from 1.
+ */
+public class ImportReport {
+
+	/**
+	 * Maximum number of errors reported. The rest are only counted
+	 */
+	static final int MAX_ERRORS = 1000;
+
+	private long records;
+
+	private long imported;
+
+	private long rejected;
+
+	private final List<BatchError> errors = new ArrayList<>();
+
+	/**
+	 * Adds the result of a batch
+	 * 
+	 * @param size     Number of records in the batch
+	 * @param rejected Number of records rejected
+	 */
+	void addBatch(int size, int rejected) {
+		this.records += size;
+		this.imported += size - rejected;
+		this.rejected += rejected;
+	}
+
+	/**
+	 * Adds an error, if the maximum has not been reached
+	 * 
+	 * @param error The error
+	 */
+	void addError(BatchError error) {
+		if (errors.size() < MAX_ERRORS) {
+			errors.add(error);
+		}
+	}
+
+	/**
+	 * @return The number of records read
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return The number of records written
+	 */
+	public long getImported() {
+		return imported;
+	}
+
+	/**
+	 * @return The number of records not written
+	 */
+	public long getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return The errors found, up to {@link #MAX_ERRORS}
+	 */
+	public List<BatchError> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * A problem found in a batch
+	 */
+	public static class BatchError {
+
+		private final int batch;
+
+		private final long firstLine;
+
+		private final long lastLine;
+
+		private final String message;
+
+		/**
+		 * @param batch       Batch number, from 1
+		 * @param firstLine First line affected
+		 * @param lastLine  Last line affected
+		 * @param message     Description of the problem
+		 */
+		BatchError(int batch, long firstLine, long lastLine, String message) {
+			this.batch = batch;
+			this.firstLine = firstLine;
+			this.lastLine = lastLine;
+			this.message = message;
+		}
+
+		/**
+		 * @return The batch number, from 1
+		 */
+		public int getBatch() {
+			return batch;
+		}
+
+		/**
+		 * @return The first line affected
+		 */
+		public long getFirstLine() {
+			return firstLine;
+		}
+
+		/**
+		 * @return The last line affected
+		 */
+		public long getLastLine() {
+			return lastLine;
+		}
+
+		/**
+		 * @return The description of the problem
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.example.demo.service;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimView;
+
+/**
+ * Rows of the inventory changed by a committed transaction, before and after
+ * it. It is published by {@link InventoryChanges} to every
+ * {@link InventoryListener}, in the order the transactions committed.
+ *
+ * A row is null before the transaction if it was inserted, and null after it if
+ * it was deleted. The devices are published with the columns of their SIMs, so
+ * a device whose SIM changed country, operator or status is changed as well.
+ */
+public class InventoryChange {
+
+	/**
+	 * Any row may have changed (e.g. the database was cleared), so the listeners
+	 * must read them again
+	 */
+	public static final InventoryChange RELOAD = new InventoryChange(Collections.emptyMap(),
+			Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+
+	private final Map<Long, SimView> simsBefore;
+
+	private final Map<Long, SimView> simsAfter;
+
+	private final Map<Long, DeviceView> devicesBefore;
+
+	private final Map<Long, DeviceView> devicesAfter;
+
+	/**
+	 * @param simsBefore    The changed SIMs before the transaction, by ID
+	 * @param simsAfter     The changed SIMs after the transaction, by ID
+	 * @param devicesBefore The changed devices before the transaction, by ID
+	 * @param devicesAfter  The changed devices after the transaction, by ID
+	 */
+	InventoryChange(Map<Long, SimView> simsBefore, Map<Long, SimView> simsAfter,
+			Map<Long, DeviceView> devicesBefore, Map<Long, DeviceView> devicesAfter) {
+		this.simsBefore = simsBefore;
+		this.simsAfter = simsAfter;
+		this.devicesBefore = devicesBefore;
+		this.devicesAfter = devicesAfter;
+	}
+
+	/**
+	 * The change of a single device, for the writers whose transactions are not
+	 * captured (R2DBC)
+	 *
+	 * @param id     The device ID
+	 * @param before The device before the change, or null if it was inserted
+	 * @param after  The device after the change, or null if it was deleted
+	 * @return The change
+	 */
+	public static InventoryChange ofDevice(long id, DeviceView before, DeviceView after) {
+		return new InventoryChange(Collections.emptyMap(), Collections.emptyMap(),
+				Collections.singletonMap(id, before), Collections.singletonMap(id, after));
+	}
+
+	/**
+	 * @return Whether the listeners must read all the rows again
+	 */
+	public boolean isReload() {
+		return this == RELOAD;
+	}
+
+	/**
+	 * @return The changed SIMs that existed before the transaction
+	 */
+	public Collection<SimView> getSimsBefore() {
+		return existing(simsBefore);
+	}
+
+	/**
+	 * @return The changed SIMs that exist after the transaction
+	 */
+	public Collection<SimView> getSimsAfter() {
+		return existing(simsAfter);
+	}
+
+	/**
+	 * @return The changed devices that existed before the transaction
+	 */
+	public Collection<DeviceView> getDevicesBefore() {
+		return existing(devicesBefore);
+	}
+
+	/**
+	 * @return The changed devices that exist after the transaction
+	 */
+	public Collection<DeviceView> getDevicesAfter() {
+		return existing(devicesAfter);
+	}
+
+	/**
+	 * @return The IDs of the devices whose columns, or the columns of their SIMs,
+	 *         are different after the transaction
+	 */
+	public Set<Long> getChangedDevices() {
+		Set<Long> ids = new LinkedHashSet<>(devicesBefore.keySet());
+		ids.addAll(devicesAfter.keySet());
+		ids.removeIf(id -> Objects.equals(devicesBefore.get(id), devicesAfter.get(id)));
+		return ids;
+	}
+
+	/**
+	 * @param id The device ID
+	 * @return The device before the transaction, or null if it did not exist
+	 */
+	public DeviceView getDeviceBefore(long id) {
+		return devicesBefore.get(id);
+	}
+
+	/**
+	 * @param id The device ID
+	 * @return The device after the transaction, or null if it no longer exists
+	 */
+	public DeviceView getDeviceAfter(long id) {
+		return devicesAfter.get(id);
+	}
+
+	private static <T> Collection<T> existing(Map<Long, T> rows) {
+		return rows.values().stream().filter(Objects::nonNull).collect(Collectors.toList());
+	}
+}
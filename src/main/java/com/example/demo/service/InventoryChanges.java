@@ -0,0 +1,337 @@
+package com.example.demo.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimView;
+
+/**
+ * Publishes the rows of the inventory changed by each committed transaction,
+ * before and after it ({@link InventoryChange}), to every
+ * {@link InventoryListener}: the {@link InventoryCounters}, the
+ * {@link DeviceChangeFeed}, the {@link ForSaleIndex}, if enabled, and the
+ * {@link InventoryVersion}.
+ *
+ * The rows are captured by {@link InventoryTrigger} while they are written, and
+ * handed to the transaction running on the same thread. So the writers neither
+ * read nor lock them before or after the change. Only the transactions of the
+ * JPA transaction manager are captured: the writers that do not use it (R2DBC)
+ * publish their changes themselves, with a {@link Ticket}. A transaction that
+ * changes more than inventory.changes.max-rows rows is not captured row by
+ * row: a {@link InventoryChange#RELOAD} is published once it commits. So is
+ * one on startup.
+ *
+ * The changes are published in the order the transactions committed: each one
+ * takes a ticket after writing its last row, while it still holds the locks of
+ * its rows, and the changes are published by ticket once committed. So two
+ * changes of the same device are never published the other way round.
+ *
+ * The tickets are guarded by a lock rather than by synchronized blocks, which
+ * would pin the carrier of a virtual thread.
+ */
+@Component
+public class InventoryChanges {
+
+	/**
+	 * Publishers of the running applications, to find the one of the
+	 * transaction of the current thread. There is more than one if several
+	 * applications share the database, as the tests do
+	 */
+	private static final Set<InventoryChanges> instances = new CopyOnWriteArraySet<>();
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private DataSource dataSource;
+
+	/**
+	 * The listeners, in their order
+	 */
+	@Autowired
+	private List<InventoryListener> listeners;
+
+	/**
+	 * Maximum number of rows captured in a transaction. Larger ones publish a
+	 * reload
+	 */
+	@Value("${inventory.changes.max-rows:100000}")
+	private int maxRows;
+
+	/**
+	 * Guards the tickets and the changes waiting for the previous ones
+	 */
+	private final Lock publicationLock = new ReentrantLock();
+
+	private long nextTicket;
+
+	private long nextPublished;
+
+	/**
+	 * Changes of the completed transactions, by ticket, while a previous one is
+	 * not completed. Null for the rolled back ones
+	 */
+	private final Map<Long, InventoryChange> completed = new HashMap<>();
+
+	/**
+	 * Creates the triggers that capture the changed rows, and publishes a reload,
+	 * so the listeners read the rows
+	 *
+	 * @throws SQLException If the triggers cannot be created
+	 */
+	@PostConstruct
+	public void init() throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+				Statement statement = connection.createStatement()) {
+			for (String table : new String[] { "sim", "device" }) {
+				statement.execute("CREATE TRIGGER IF NOT EXISTS inventory_" + table
+						+ " AFTER INSERT, UPDATE, DELETE ON " + table + " FOR EACH ROW CALL \""
+						+ InventoryTrigger.class.getName() + "\"");
+			}
+		}
+		instances.add(this);
+		reload();
+	}
+
+	@PreDestroy
+	public void close() {
+		instances.remove(this);
+	}
+
+	/**
+	 * Publishes a {@link InventoryChange#RELOAD}, after the changes already
+	 * committed. It is used after the database is cleared
+	 */
+	public void reload() {
+		publish(reserve(), InventoryChange.RELOAD);
+	}
+
+	/**
+	 * @return The rows captured by the transaction of the current thread, or null
+	 *         if there is none, or it changed too many rows to be captured
+	 */
+	static Capture capture() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		for (InventoryChanges changes : instances) {
+			if (TransactionSynchronizationManager.hasResource(changes.entityManagerFactory)) {
+				Capture capture = (Capture) TransactionSynchronizationManager.getResource(changes);
+				if (capture == null) {
+					capture = changes.new Capture();
+					TransactionSynchronizationManager.bindResource(changes, capture);
+					TransactionSynchronizationManager.registerSynchronization(capture);
+				}
+				return capture.overflow ? null : capture;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Rows changed by a transaction, before and after it, captured by
+	 * {@link InventoryTrigger}. The first row before and the last one after are
+	 * kept, null if the row did not exist. They are published when the
+	 * transaction commits.
+	 */
+	final class Capture implements TransactionSynchronization {
+
+		private final Map<Long, SimView> simsBefore = new HashMap<>();
+
+		private final Map<Long, SimView> simsAfter = new HashMap<>();
+
+		private final Map<Long, DeviceView> devicesBefore = new HashMap<>();
+
+		private final Map<Long, DeviceView> devicesAfter = new HashMap<>();
+
+		/**
+		 * Whether more than {@link InventoryChanges#maxRows} rows were changed
+		 */
+		private boolean overflow;
+
+		private long ticket = -1;
+
+		/**
+		 * @param id     The SIM ID
+		 * @param before The SIM before the change, or null if it was inserted
+		 * @param after  The SIM after the change, or null if it was deleted
+		 */
+		void sim(long id, SimView before, SimView after) {
+			if (!simsBefore.containsKey(id)) {
+				simsBefore.put(id, before);
+			}
+			simsAfter.put(id, after);
+			changed();
+		}
+
+		/**
+		 * @param id     The device ID
+		 * @param before The device before the change, or null if it was inserted
+		 * @param after  The device after the change, or null if it was deleted
+		 */
+		void device(long id, DeviceView before, DeviceView after) {
+			if (!devicesBefore.containsKey(id)) {
+				devicesBefore.put(id, before);
+			}
+			devicesAfter.put(id, after);
+			changed();
+		}
+
+		/**
+		 * @param id The SIM ID
+		 * @return The SIM, if this transaction wrote it and it still exists
+		 */
+		SimView getSim(long id) {
+			return simsAfter.get(id);
+		}
+
+		/**
+		 * Takes a ticket after the last row written, unless no other transaction took
+		 * one since the previous row. The rows are locked until the transaction
+		 * ends, so a later change of the same rows always gets a later ticket
+		 */
+		private void changed() {
+			if (simsAfter.size() + devicesAfter.size() > maxRows) {
+				overflow = true;
+				simsBefore.clear();
+				simsAfter.clear();
+				devicesBefore.clear();
+				devicesAfter.clear();
+			}
+			publicationLock.lock();
+			try {
+				if (ticket < 0 || ticket != nextTicket - 1) {
+					if (ticket >= 0) {
+						// Released without publishing anything, which would run the listeners
+						// of the others inside this statement. The next publication runs them
+						completed.put(ticket, null);
+					}
+					ticket = nextTicket++;
+				}
+			} finally {
+				publicationLock.unlock();
+			}
+		}
+
+		@Override
+		public void suspend() {
+			TransactionSynchronizationManager.unbindResource(InventoryChanges.this);
+		}
+
+		@Override
+		public void resume() {
+			TransactionSynchronizationManager.bindResource(InventoryChanges.this, this);
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			TransactionSynchronizationManager.unbindResourceIfPossible(InventoryChanges.this);
+			if (status != STATUS_COMMITTED) {
+				publish(ticket, null);
+			} else if (overflow) {
+				publish(ticket, InventoryChange.RELOAD);
+			} else {
+				publish(ticket, new InventoryChange(simsBefore, simsAfter, devicesBefore, devicesAfter));
+			}
+		}
+	}
+
+	/**
+	 * Position of a change in the order of publication, for the writers whose
+	 * transactions are not captured (R2DBC). It must be reserved before the
+	 * transaction commits, while the written rows are still locked, and then
+	 * published once it commits, or cancelled otherwise, as the later changes
+	 * wait for it.
+	 */
+	public class Ticket {
+
+		private long number = -1;
+
+		private boolean done;
+
+		/**
+		 * Reserves the position, after the changes committed before
+		 */
+		public void reserve() {
+			number = InventoryChanges.this.reserve();
+		}
+
+		/**
+		 * Publishes a change, once the previous ones are published. Nothing is done
+		 * if it was not reserved
+		 *
+		 * @param change The committed change
+		 */
+		public void publish(InventoryChange change) {
+			if (number >= 0 && !done) {
+				done = true;
+				InventoryChanges.this.publish(number, change);
+			}
+		}
+
+		/**
+		 * Releases the position, if it was reserved and not published, so the
+		 * later changes are not held back
+		 */
+		public void cancel() {
+			if (number >= 0 && !done) {
+				done = true;
+				InventoryChanges.this.publish(number, null);
+			}
+		}
+	}
+
+	/**
+	 * @return A ticket, to publish changes in this order
+	 */
+	private long reserve() {
+		publicationLock.lock();
+		try {
+			return nextTicket++;
+		} finally {
+			publicationLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishes the change of a ticket once the previous ones are published, and
+	 * then the ones waiting for it
+	 *
+	 * @param ticket The ticket
+	 * @param change The change, or null if there is nothing to publish
+	 */
+	private void publish(long ticket, InventoryChange change) {
+		publicationLock.lock();
+		try {
+			completed.put(ticket, change);
+			while (completed.containsKey(nextPublished)) {
+				InventoryChange next = completed.remove(nextPublished++);
+				if (next != null) {
+					listeners.forEach(listener -> listener.changed(next));
+				}
+			}
+		} finally {
+			publicationLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package com.example.demo.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.CodedEnum;
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
+
+/**
+ * In-memory counters of the inventory, so the statistics are served without
+ * querying the database.
+ *
+ * They are seeded with GROUP BY queries on each
+ * {@link InventoryChange#RELOAD}, and then kept up to date with the rows
+ * changed by each transaction, before and after it, published by
+ * {@link InventoryChanges} once it commits.
+ *
+ * The counters are grouped by (country, operator, SIM status) and the sellable
+ * devices by (country, operator). There are only a few dozen groups, so the
+ * statistics are aggregated on each request.
+ *
+ * They are guarded by a lock rather than by synchronized blocks, which would
+ * pin the carrier of a virtual thread.
+ */
+@Component
+@Order(0)
+public class InventoryCounters implements InventoryListener {
+
+	/**
+	 * Condition of the devices for sale. It is the same as
+	 * {@link DeviceRepository#findForSale()}
+	 */
+	private static final String FOR_SALE = "d.status = com.example.demo.model.DeviceStatus.READY"
+			+ " AND d.temperature BETWEEN -25 and 85";
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	private Counts counts = new Counts();
+
+	/**
+	 * Guards {@link #counts}
+	 */
+	private final Lock countsLock = new ReentrantLock();
+
+	@Override
+	public void changed(InventoryChange change) {
+		if (change.isReload()) {
+			refresh();
+			return;
+		}
+		Counts before = new Counts();
+		change.getSimsBefore().forEach(before::addSim);
+		change.getDevicesBefore().forEach(before::addDevice);
+		Counts delta = new Counts();
+		change.getSimsAfter().forEach(delta::addSim);
+		change.getDevicesAfter().forEach(delta::addDevice);
+		delta.merge(before, -1);
+		countsLock.lock();
+		try {
+			counts.merge(delta, 1);
+		} finally {
+			countsLock.unlock();
+		}
+	}
+
+	/**
+	 * Seeds the counters from the database
+	 */
+	public void refresh() {
+		Counts seed = new Counts();
+		entityManager.createQuery("SELECT s.country, s.operatorCode, s.status, COUNT(s) FROM Sim s"
+				+ " GROUP BY s.country, s.operatorCode, s.status", Object[].class).getResultList()
+				.forEach(row -> seed.add(seed.sims, new Key((Country) row[0], (Integer) row[1], (SimStatus) row[2]),
+						(Long) row[3]));
+		entityManager.createQuery("SELECT s.country, s.operatorCode, COUNT(d) FROM Device d JOIN d.sim s WHERE "
+				+ FOR_SALE + " GROUP BY s.country, s.operatorCode", Object[].class).getResultList()
+				.forEach(row -> seed.add(seed.sellable, new Key((Country) row[0], (Integer) row[1], null),
+						(Long) row[2]));
+		seed.devices = entityManager.createQuery("SELECT COUNT(d) FROM Device d", Long.class).getSingleResult();
+		countsLock.lock();
+		try {
+			counts = seed;
+		} finally {
+			countsLock.unlock();
+		}
+	}
+
+	/**
+	 * @return The current statistics
+	 */
+	public InventoryStats get() {
+		countsLock.lock();
+		try {
+			return aggregate();
+		} finally {
+			countsLock.unlock();
+		}
+	}
+
+	private InventoryStats aggregate() {
+		long sims = 0;
+		Map<String, Long> simsByStatus = new TreeMap<>();
+		Map<String, Long> simsByCountry = new TreeMap<>();
+		Map<Integer, Long> simsByOperator = new TreeMap<>();
+		for (Map.Entry<Key, Long> entry : counts.sims.entrySet()) {
+			Key key = entry.getKey();
+			sims += entry.getValue();
+			sum(simsByStatus, key.status, entry.getValue());
+			sum(simsByCountry, key.country, entry.getValue());
+			simsByOperator.merge(key.operatorCode, entry.getValue(), Long::sum);
+		}
+
+		long sellable = 0;
+		Map<String, Long> sellableByCountry = new TreeMap<>();
+		Map<Integer, Long> sellableByOperator = new TreeMap<>();
+		for (Map.Entry<Key, Long> entry : counts.sellable.entrySet()) {
+			sellable += entry.getValue();
+			sum(sellableByCountry, entry.getKey().country, entry.getValue());
+			sellableByOperator.merge(entry.getKey().operatorCode, entry.getValue(), Long::sum);
+		}
+
+		return new InventoryStats(sims, counts.devices, sellable, simsByStatus, simsByCountry, simsByOperator,
+				sellableByCountry, sellableByOperator);
+	}
+
+	private static boolean isForSale(DeviceStatus status, Float temperature) {
+		return status == DeviceStatus.READY && temperature != null && temperature >= -25 && temperature <= 85;
+	}
+
+	/**
+	 * @param device A device
+	 * @return Whether it is available for sale
+	 */
+	static boolean isForSale(DeviceView device) {
+		return device.getSim() != null && isForSale(device.getStatus(), device.getTemperature());
+	}
+
+	/**
+	 * Adds a count to a breakdown. Rows without value (e.g. imported without
+	 * status) are only in the totals
+	 */
+	private static void sum(Map<String, Long> breakdown, CodedEnum value, long count) {
+		if (value != null) {
+			breakdown.merge(value.getLabel(), count, Long::sum);
+		}
+	}
+
+	/**
+	 * Contribution of some rows to the counters
+	 */
+	private static class Counts {
+
+		private final Map<Key, Long> sims = new HashMap<>();
+
+		private final Map<Key, Long> sellable = new HashMap<>();
+
+		private long devices;
+
+		private void addSim(SimView sim) {
+			add(sims, new Key(sim.getCountry(), sim.getOperatorCode(), sim.getStatus()), 1);
+		}
+
+		private void addDevice(DeviceView device) {
+			devices++;
+			if (isForSale(device)) {
+				add(sellable, new Key(device.getSim().getCountry(), device.getSim().getOperatorCode(), null), 1);
+			}
+		}
+
+		private void add(Map<Key, Long> counters, Key key, long count) {
+			Long total = counters.merge(key, count, Long::sum);
+			if (total == 0) {
+				counters.remove(key);
+			}
+		}
+
+		private void merge(Counts other, int sign) {
+			other.sims.forEach((key, count) -> add(sims, key, sign * count));
+			other.sellable.forEach((key, count) -> add(sellable, key, sign * count));
+			devices += sign * other.devices;
+		}
+	}
+
+	/**
+	 * Group of the counters. The status is null for the sellable devices
+	 */
+	private static final class Key {
+
+		private final Country country;
+
+		private final int operatorCode;
+
+		private final SimStatus status;
+
+		private Key(Country country, int operatorCode, SimStatus status) {
+			this.country = country;
+			this.operatorCode = operatorCode;
+			this.status = status;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return country == other.country && operatorCode == other.operatorCode && status == other.status;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(country, operatorCode, status);
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package com.example.demo.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.demo.model.InventoryRecord;
+import com.example.demo.service.ImportReport.BatchError;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+/**
+ * Imports inventory files with SIMs and devices (see {@link InventoryRecord}).
+ * 
+ * The file is read line by line, and the records are written in batches of
+ * {@link #batchSize} by the {@link InventoryWriter}, so only one batch is kept
+ * in memory. Two formats are supported:
+ * <ul>
+ * <li>CSV: the first line is the header, with the names of the record fields
+ * (e.g. type,id,status,temperature,simId,operatorCode,country), optionally
+ * quoted. It must have the type column, and no unknown or repeated ones.
+ * Empty values are null
+ * <li>NDJSON: one JSON object per line
+ * </ul>
+ */
+@Component
+public class InventoryImporter {
+	private static final Logger log = LoggerFactory.getLogger(InventoryImporter.class);
+
+	/**
+	 * Supported file formats
+	 */
+	public enum Format {
+		CSV, NDJSON
+	}
+
+	@Autowired
+	private InventoryWriter writer;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	/**
+	 * Number of records written in each transaction
+	 */
+	@Value("${import.batch-size:5000}")
+	private int batchSize;
+
+	private final CsvMapper csvMapper = (CsvMapper) new CsvMapper()
+			.enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+			.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	/**
+	 * Names of the CSV columns: the fields of the records
+	 */
+	private final Set<String> csvColumns = new LinkedHashSet<>();
+	{
+		csvMapper.schemaFor(InventoryRecord.class).forEach(column -> csvColumns.add(column.getName()));
+	}
+
+	/**
+	 * The header of a CSV file has unknown, repeated or missing columns
+	 */
+	public static class InvalidHeaderException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		InvalidHeaderException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Imports a file. The format is CSV if the file name ends with .csv, and
+	 * NDJSON otherwise.
+	 * 
+	 * @param file The file
+	 * @return The import report
+	 * @throws IOException If the file cannot be read
+	 */
+	public ImportReport importFile(Path file) throws IOException {
+		Format format = file.getFileName().toString().toLowerCase().endsWith(".csv") ? Format.CSV : Format.NDJSON;
+		try (InputStream in = Files.newInputStream(file)) {
+			return importStream(in, format);
+		}
+	}
+
+	/**
+	 * Imports the records read from a stream
+	 * 
+	 * @param in     The stream, in UTF-8
+	 * @param format The stream format
+	 * @return The import report
+	 * @throws IOException            If the stream cannot be read
+	 * @throws InvalidHeaderException If the header of a CSV stream is invalid.
+	 *                                Nothing is imported
+	 */
+	public ImportReport importStream(InputStream in, Format format) throws IOException {
+		ImportReport report = new ImportReport();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+		long lineNumber = 0;
+		ObjectReader recordReader = mapper.readerFor(InventoryRecord.class);
+		if (format == Format.CSV) {
+			String header = reader.readLine();
+			if (header == null) {
+				return report;
+			}
+			lineNumber++;
+			recordReader = csvMapper.readerFor(InventoryRecord.class).with(parseHeader(header));
+		}
+
+		List<InventoryRecord> records = new ArrayList<>(batchSize);
+		List<Long> lines = new ArrayList<>(batchSize);
+		int batch = 1;
+		int malformed = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				records.add(recordReader.readValue(line));
+				lines.add(lineNumber);
+			} catch (IOException e) {
+				malformed++;
+				report.addError(new BatchError(batch, lineNumber, lineNumber, "Malformed record"));
+			}
+			if (records.size() + malformed >= batchSize) {
+				write(report, batch++, records, lines, malformed);
+				malformed = 0;
+			}
+		}
+		if (records.size() + malformed > 0) {
+			write(report, batch, records, lines, malformed);
+		}
+
+		log.info("Imported {} of {} records", report.getImported(), report.getRecords());
+		return report;
+	}
+
+	/**
+	 * Reads the column names of a CSV header. They are trimmed and unquoted, and
+	 * a leading byte order mark is ignored
+	 * 
+	 * @param header The first line
+	 * @return The schema of the records
+	 * @throws InvalidHeaderException If a column is unknown, empty or repeated,
+	 *                                or the type column is missing
+	 */
+	private CsvSchema parseHeader(String header) {
+		if (header.startsWith("\uFEFF")) {
+			header = header.substring(1);
+		}
+		CsvSchema.Builder schema = CsvSchema.builder();
+		Set<String> names = new LinkedHashSet<>();
+		for (String column : header.split(",", -1)) {
+			String name = column.trim();
+			if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+				name = name.substring(1, name.length() - 1).trim();
+			}
+			if (name.isEmpty()) {
+				throw new InvalidHeaderException("Invalid CSV header: empty column name at position "
+						+ (names.size() + 1) + ", expected some of " + csvColumns);
+			}
+			if (!csvColumns.contains(name)) {
+				throw new InvalidHeaderException(
+						"Invalid CSV header: unknown column '" + name + "', expected some of " + csvColumns);
+			}
+			if (!names.add(name)) {
+				throw new InvalidHeaderException("Invalid CSV header: column '" + name + "' is repeated");
+			}
+			schema.addColumn(name);
+		}
+		if (!names.contains("type")) {
+			throw new InvalidHeaderException("Invalid CSV header: missing column 'type'");
+		}
+		return schema.build();
+	}
+
+	/**
+	 * Writes a batch and adds its result to the report. The lists are cleared for
+	 * the next batch.
+	 * 
+	 * @param report    The import report
+	 * @param batch     The batch number
+	 * @param records   The records of the batch
+	 * @param lines     The line of each record
+	 * @param malformed The number of lines of the batch that could not be parsed
+	 */
+	private void write(ImportReport report, int batch, List<InventoryRecord> records, List<Long> lines,
+			int malformed) {
+		int rejected = malformed;
+		if (!records.isEmpty()) {
+			try {
+				Map<Integer, String> errors = writer.upsert(records);
+				errors.forEach((i, message) -> report
+						.addError(new BatchError(batch, lines.get(i), lines.get(i), message)));
+				rejected += errors.size();
+			} catch (RuntimeException e) {
+				log.warn("Batch {} could not be imported", batch, e);
+				report.addError(new BatchError(batch, lines.get(0), lines.get(lines.size() - 1),
+						"Batch not imported: " + e.getMessage()));
+				rejected += records.size();
+			}
+		}
+		report.addBatch(records.size() + malformed, rejected);
+		records.clear();
+		lines.clear();
+	}
+}
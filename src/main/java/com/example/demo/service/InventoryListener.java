@@ -0,0 +1,18 @@
+package com.example.demo.service;
+
+/**
+ * Listener of the changes of the inventory, once they are committed. The
+ * components implementing it are called by {@link InventoryChanges} in the
+ * order the transactions committed, one change at a time, and in their
+ * {@link org.springframework.core.annotation.Order}.
+ */
+public interface InventoryListener {
+
+	/**
+	 * Called after a transaction changing the inventory commits. The later
+	 * changes wait for it
+	 *
+	 * @param change The changed rows, or {@link InventoryChange#RELOAD}
+	 */
+	void changed(InventoryChange change);
+}
@@ -0,0 +1,95 @@
+package com.example.demo.service;
+
+import java.util.Map;
+
+/**
+ * Statistics of the inventory: number of SIMs by status, country and operator,
+ * and number of devices for sale by country and operator.
+ */
+public class InventoryStats {
+
+	private final long sims;
+
+	private final long devices;
+
+	private final long sellable;
+
+	private final Map<String, Long> simsByStatus;
+
+	private final Map<String, Long> simsByCountry;
+
+	private final Map<Integer, Long> simsByOperator;
+
+	private final Map<String, Long> sellableByCountry;
+
+	private final Map<Integer, Long> sellableByOperator;
+
+	InventoryStats(long sims, long devices, long sellable, Map<String, Long> simsByStatus,
+			Map<String, Long> simsByCountry, Map<Integer, Long> simsByOperator, Map<String, Long> sellableByCountry,
+			Map<Integer, Long> sellableByOperator) {
+		this.sims = sims;
+		this.devices = devices;
+		this.sellable = sellable;
+		this.simsByStatus = simsByStatus;
+		this.simsByCountry = simsByCountry;
+		this.simsByOperator = simsByOperator;
+		this.sellableByCountry = sellableByCountry;
+		this.sellableByOperator = sellableByOperator;
+	}
+
+	/**
+	 * @return Number of SIMs
+	 */
+	public long getSims() {
+		return sims;
+	}
+
+	/**
+	 * @return Number of devices
+	 */
+	public long getDevices() {
+		return devices;
+	}
+
+	/**
+	 * @return Number of devices available for sale
+	 */
+	public long getSellable() {
+		return sellable;
+	}
+
+	/**
+	 * @return Number of SIMs by status
+	 */
+	public Map<String, Long> getSimsByStatus() {
+		return simsByStatus;
+	}
+
+	/**
+	 * @return Number of SIMs by country
+	 */
+	public Map<String, Long> getSimsByCountry() {
+		return simsByCountry;
+	}
+
+	/**
+	 * @return Number of SIMs by operator code
+	 */
+	public Map<Integer, Long> getSimsByOperator() {
+		return simsByOperator;
+	}
+
+	/**
+	 * @return Number of devices for sale by SIM country
+	 */
+	public Map<String, Long> getSellableByCountry() {
+		return sellableByCountry;
+	}
+
+	/**
+	 * @return Number of devices for sale by SIM operator code
+	 */
+	public Map<Integer, Long> getSellableByOperator() {
+		return sellableByOperator;
+	}
+}
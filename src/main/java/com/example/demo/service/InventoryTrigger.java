@@ -0,0 +1,174 @@
+package com.example.demo.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.h2.api.Trigger;
+
+import com.example.demo.model.CodedEnum;
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
+
+/**
+ * H2 trigger of the device and SIM tables, which hands every inserted, updated
+ * or deleted row, before and after the change, to the
+ * {@link InventoryChanges} of the transaction running on the current thread.
+ *
+ * It runs inside the statement that changes the rows, so the writers do not
+ * read them before or after: a device is deleted or updated with a single
+ * statement. The rows of the devices are completed with the columns of their
+ * SIMs, read in the same transaction, unless the SIM was written by it. When
+ * the country, operator or status of a SIM change, its device changes as
+ * well, as it is sold by SIM country and operator.
+ */
+public class InventoryTrigger implements Trigger {
+
+	/**
+	 * Columns read by the trigger, by table
+	 */
+	private static final Map<String, String[]> COLUMNS = new HashMap<>();
+
+	static {
+		COLUMNS.put("DEVICE", new String[] { "ID", "STATUS", "TEMPERATURE", "SIM_ID" });
+		COLUMNS.put("SIM", new String[] { "ID", "OPERATOR_CODE", "COUNTRY", "STATUS" });
+	}
+
+	private boolean device;
+
+	/**
+	 * Positions of {@link #COLUMNS} in the rows
+	 */
+	private int[] columns;
+
+	@Override
+	public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before,
+			int type) throws SQLException {
+		String[] names = COLUMNS.get(tableName.toUpperCase());
+		if (names == null) {
+			throw new SQLException("Table " + tableName + " is not part of the inventory");
+		}
+		device = tableName.equalsIgnoreCase("DEVICE");
+		columns = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			columns[i] = -1;
+			try (ResultSet rs = conn.getMetaData().getColumns(null, schemaName, tableName, null)) {
+				while (rs.next()) {
+					if (names[i].equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+						columns[i] = rs.getInt("ORDINAL_POSITION") - 1;
+					}
+				}
+			}
+			if (columns[i] < 0) {
+				throw new SQLException("Table " + tableName + " has no " + names[i] + " column");
+			}
+		}
+	}
+
+	@Override
+	public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+		InventoryChanges.Capture capture = InventoryChanges.capture();
+		if (capture == null) {
+			return;
+		}
+		if (device) {
+			long id = ((Number) (newRow != null ? newRow : oldRow)[columns[0]]).longValue();
+			capture.device(id, toDevice(conn, capture, oldRow), toDevice(conn, capture, newRow));
+			return;
+		}
+
+		SimView before = toSim(oldRow);
+		SimView after = toSim(newRow);
+		capture.sim((before != null ? before : after).getId(), before, after);
+		if (before != null && after != null && !before.equals(after)) {
+			try (PreparedStatement query = conn
+					.prepareStatement("SELECT id, status, temperature FROM device WHERE sim_id = ?")) {
+				query.setLong(1, after.getId());
+				try (ResultSet rs = query.executeQuery()) {
+					while (rs.next()) {
+						long id = rs.getLong(1);
+						DeviceStatus status = CodedEnum.fromCode(DeviceStatus.class, getShort(rs.getObject(2)));
+						Float temperature = getFloat(rs.getObject(3));
+						capture.device(id, toDevice(id, status, temperature, before),
+								toDevice(id, status, temperature, after));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The device of a row, with its SIM, or null if there is no row
+	 */
+	private DeviceView toDevice(Connection conn, InventoryChanges.Capture capture, Object[] row)
+			throws SQLException {
+		if (row == null) {
+			return null;
+		}
+		long id = ((Number) row[columns[0]]).longValue();
+		DeviceStatus status = CodedEnum.fromCode(DeviceStatus.class, getShort(row[columns[1]]));
+		Float temperature = getFloat(row[columns[2]]);
+		Object simId = row[columns[3]];
+		if (simId == null) {
+			return toDevice(id, status, temperature, null);
+		}
+		SimView sim = capture.getSim(((Number) simId).longValue());
+		if (sim == null) {
+			try (PreparedStatement query = conn
+					.prepareStatement("SELECT id, operator_code, country, status FROM sim WHERE id = ?")) {
+				query.setLong(1, ((Number) simId).longValue());
+				try (ResultSet rs = query.executeQuery()) {
+					if (rs.next()) {
+						sim = new SimView(rs.getLong(1), rs.getInt(2),
+								CodedEnum.fromCode(Country.class, getShort(rs.getObject(3))),
+								CodedEnum.fromCode(SimStatus.class, getShort(rs.getObject(4))));
+					}
+				}
+			}
+		}
+		return toDevice(id, status, temperature, sim);
+	}
+
+	private static DeviceView toDevice(long id, DeviceStatus status, Float temperature, SimView sim) {
+		return sim == null ? new DeviceView(id, status, temperature, null, null, null, null)
+				: new DeviceView(id, status, temperature, sim.getId(), sim.getOperatorCode(), sim.getCountry(),
+						sim.getStatus());
+	}
+
+	/**
+	 * @return The SIM of a row, or null if there is no row
+	 */
+	private SimView toSim(Object[] row) {
+		if (row == null) {
+			return null;
+		}
+		return new SimView(((Number) row[columns[0]]).longValue(), ((Number) row[columns[1]]).intValue(),
+				CodedEnum.fromCode(Country.class, getShort(row[columns[2]])),
+				CodedEnum.fromCode(SimStatus.class, getShort(row[columns[3]])));
+	}
+
+	private static Short getShort(Object value) {
+		return value == null ? null : ((Number) value).shortValue();
+	}
+
+	/**
+	 * @return The temperature of a device. It is stored as a double
+	 */
+	private static Float getFloat(Object value) {
+		return value == null ? null : ((Number) value).floatValue();
+	}
+
+	@Override
+	public void close() {
+	}
+
+	@Override
+	public void remove() {
+	}
+}
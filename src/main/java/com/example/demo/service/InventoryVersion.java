@@ -0,0 +1,44 @@
+package com.example.demo.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Version of the inventory, increased after every committed change of the
+ * devices or the SIMs, so the listings can be validated without querying the
+ * database.
+ *
+ * It is increased by every {@link InventoryChange} once committed, including
+ * the reload after the database is cleared. It is the last listener, so the
+ * other ones already have the change once the new version is read.
+ * The version starts at the start time in microseconds, so it also increases
+ * across restarts of the application.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class InventoryVersion implements InventoryListener {
+
+	private final AtomicLong version = new AtomicLong(System.currentTimeMillis() * 1000);
+
+	/**
+	 * @return The current version
+	 */
+	public long get() {
+		return version.get();
+	}
+
+	@Override
+	public void changed(InventoryChange change) {
+		increment();
+	}
+
+	/**
+	 * Increases the version, after a change has been committed
+	 */
+	public void increment() {
+		version.incrementAndGet();
+	}
+}
@@ -0,0 +1,284 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.InventoryRecord;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Writes large amounts of SIMs and devices, in batches.
+ * 
+ * Each call is a transaction. The entities are persisted (not merged, so no
+ * select is issued for the assigned SIM IDs), and then flushed and detached.
+ * With JDBC batching enabled (hibernate.jdbc.batch_size and
+ * hibernate.order_inserts) each batch is sent in a few round-trips.
+ */
+@Component
+public class InventoryWriter {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	/**
+	 * Inserts a batch of new SIMs and devices.
+	 * 
+	 * The SIMs are persisted first, so the devices may reference any of them
+	 * without further queries.
+	 * 
+	 * @param sims    New SIMs
+	 * @param devices New devices
+	 */
+	@Transactional
+	public void insert(List<Sim> sims, List<Device> devices) {
+		sims.forEach(entityManager::persist);
+		devices.forEach(entityManager::persist);
+		entityManager.flush();
+		entityManager.clear();
+	}
+
+	/**
+	 * Creates or updates a batch of SIMs and devices from an import file.
+	 * 
+	 * The existing SIMs, devices and referenced SIM IDs of the whole batch are
+	 * read with one query each. Then the entities are updated or persisted, and
+	 * everything is written when the batch is flushed.
+	 * 
+	 * Records that are not valid are skipped, and reported as rejected. If the
+	 * batch cannot be written, the transaction is rolled back and the exception is
+	 * thrown.
+	 * 
+	 * @param records The records of the batch
+	 * @return The messages of the rejected records, by position in the batch
+	 */
+	@Transactional
+	public Map<Integer, String> upsert(List<InventoryRecord> records) {
+		Map<Integer, String> rejected = new TreeMap<>();
+		List<InventoryRecord> simRecords = new ArrayList<>();
+		List<InventoryRecord> deviceRecords = new ArrayList<>();
+		Map<InventoryRecord, Integer> positions = new IdentityHashMap<>();
+		for (int i = 0; i < records.size(); i++) {
+			InventoryRecord record = records.get(i);
+			positions.put(record, i);
+			if (InventoryRecord.SIM.equals(record.getType()) && record.getId() != null
+					&& record.getOperatorCode() != null) {
+				simRecords.add(record);
+			} else if (InventoryRecord.DEVICE.equals(record.getType())) {
+				deviceRecords.add(record);
+			} else {
+				rejected.put(i, "Not a valid SIM or device record");
+			}
+		}
+
+		// SIMs
+		Map<Long, Sim> sims = findAll(Sim.class, simRecords.stream().map(InventoryRecord::getId), Sim::getId);
+		for (InventoryRecord record : simRecords) {
+			Country country;
+			SimStatus status;
+			try {
+				country = Country.fromLabel(record.getCountry());
+				status = SimStatus.fromLabel(record.getStatus());
+			} catch (IllegalArgumentException e) {
+				rejected.put(positions.get(record), e.getMessage());
+				continue;
+			}
+			Sim sim = sims.get(record.getId());
+			if (sim == null) {
+				sim = new Sim(record.getId(), record.getOperatorCode(), country, status);
+				entityManager.persist(sim);
+				sims.put(sim.getId(), sim);
+			} else {
+				sim.update(record.getOperatorCode(), country, status);
+			}
+		}
+
+		// Devices
+		Map<Long, Device> devices = findAll(Device.class,
+				deviceRecords.stream().map(InventoryRecord::getId).filter(id -> id != null), Device::getId);
+		Set<Long> knownSims = new HashSet<>(sims.keySet());
+		List<Long> otherSims = deviceRecords.stream().map(InventoryRecord::getSimId)
+				.filter(id -> id != null && !knownSims.contains(id)).distinct().collect(Collectors.toList());
+		if (!otherSims.isEmpty()) {
+			knownSims.addAll(entityManager.createQuery("SELECT s.id FROM Sim s WHERE s.id IN :ids", Long.class)
+					.setParameter("ids", otherSims).getResultList());
+		}
+		for (InventoryRecord record : deviceRecords) {
+			if (record.getSimId() != null && !knownSims.contains(record.getSimId())) {
+				rejected.put(positions.get(record), "Unknown SIM " + record.getSimId());
+				continue;
+			}
+			DeviceStatus status;
+			try {
+				status = DeviceStatus.fromLabel(record.getStatus());
+			} catch (IllegalArgumentException e) {
+				rejected.put(positions.get(record), e.getMessage());
+				continue;
+			}
+			Sim sim = record.getSimId() == null ? null : entityManager.getReference(Sim.class, record.getSimId());
+			if (record.getId() == null) {
+				entityManager.persist(new Device(status, record.getTemperature(), sim));
+			} else if (devices.containsKey(record.getId())) {
+				devices.get(record.getId()).update(status, record.getTemperature(), sim);
+			} else {
+				rejected.put(positions.get(record), "Unknown device " + record.getId());
+			}
+		}
+
+		entityManager.flush();
+		entityManager.clear();
+		return rejected;
+	}
+
+	/**
+	 * Updates the configuration of a batch of existing devices.
+	 * 
+	 * All the devices, their SIMs and the devices currently holding those SIMs
+	 * are read with one query each, and every update is validated before writing
+	 * anything. Devices or SIMs that do not exist, and SIMs that would end up
+	 * assigned to two devices, are rejected without affecting the rest. The
+	 * accepted updates are written in a single flush, using JDBC batching.
+	 * 
+	 * @param updates The new configuration of the devices, with their IDs. Only
+	 *                the SIM ID is used
+	 * @return The result of each device, in the same order
+	 */
+	@Transactional
+	public List<DeviceUpdateResult> update(List<Device> updates) {
+		Map<Long, Device> stored = findAll(Device.class, updates.stream().map(Device::getId), Device::getId);
+		List<Long> simIds = updates.stream().map(Device::getSim).filter(sim -> sim != null).map(Sim::getId)
+				.distinct().collect(Collectors.toList());
+		Set<Long> knownSims = new HashSet<>();
+		Map<Long, Long> holders = new HashMap<>();
+		if (!simIds.isEmpty()) {
+			knownSims.addAll(entityManager.createQuery("SELECT s.id FROM Sim s WHERE s.id IN :ids", Long.class)
+					.setParameter("ids", simIds).getResultList());
+			entityManager.createQuery("SELECT d.sim.id, d.id FROM Device d WHERE d.sim.id IN :ids", Object[].class)
+					.setParameter("ids", simIds).getResultList()
+					.forEach(row -> holders.put((Long) row[0], (Long) row[1]));
+		}
+
+		// Checks that do not depend on the rest of updates
+		DeviceUpdateResult[] results = new DeviceUpdateResult[updates.size()];
+		Map<Long, Device> accepted = new HashMap<>();
+		Map<Long, Long> claimed = new HashMap<>();
+		for (int i = 0; i < updates.size(); i++) {
+			Device update = updates.get(i);
+			Long simId = update.getSim() == null ? null : update.getSim().getId();
+			if (!stored.containsKey(update.getId())) {
+				results[i] = new DeviceUpdateResult(update.getId(), 404, "Unknown device");
+			} else if (accepted.containsKey(update.getId())) {
+				results[i] = new DeviceUpdateResult(update.getId(), 409, "Device updated twice");
+			} else if (simId != null && !knownSims.contains(simId)) {
+				results[i] = new DeviceUpdateResult(update.getId(), 404, "Unknown SIM " + simId);
+			} else if (simId != null && claimed.containsKey(simId)) {
+				results[i] = new DeviceUpdateResult(update.getId(), 409, "SIM " + simId + " assigned twice");
+			} else {
+				accepted.put(update.getId(), update);
+				if (simId != null) {
+					claimed.put(simId, update.getId());
+				}
+			}
+		}
+
+		// A SIM held by another device is only available if that device is updated
+		// to a different SIM. Rejecting an update may keep a SIM held, so repeat
+		// until nothing changes
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int i = 0; i < updates.size(); i++) {
+				Device update = updates.get(i);
+				if (results[i] != null || update.getSim() == null) {
+					continue;
+				}
+				Long simId = simIdOf(update);
+				Long holder = holders.get(simId);
+				if (holder != null && holder != update.getId() && (!accepted.containsKey(holder)
+						|| simId.equals(simIdOf(accepted.get(holder))))) {
+					results[i] = new DeviceUpdateResult(update.getId(), 409,
+							"SIM " + simId + " already assigned to device " + holder);
+					accepted.remove(update.getId());
+					claimed.remove(simId);
+					changed = true;
+				}
+			}
+		}
+
+		// SIMs moved between updated devices are released first, so the unique
+		// constraint is never violated in between
+		boolean released = false;
+		for (Device update : accepted.values()) {
+			Device device = stored.get(update.getId());
+			Long current = simIdOf(device);
+			if (current != null && claimed.containsKey(current) && claimed.get(current) != device.getId()) {
+				device.update(device.getStatus(), device.getTemperature(), null);
+				released = true;
+			}
+		}
+		if (released) {
+			entityManager.flush();
+		}
+
+		for (int i = 0; i < updates.size(); i++) {
+			if (results[i] == null) {
+				Device update = updates.get(i);
+				Long simId = simIdOf(update);
+				stored.get(update.getId()).update(update.getStatus(), update.getTemperature(),
+						simId == null ? null : entityManager.getReference(Sim.class, simId));
+				results[i] = new DeviceUpdateResult(update.getId(), 200, null);
+			}
+		}
+		entityManager.flush();
+		entityManager.clear();
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * @param device A device
+	 * @return The ID of its SIM, or null
+	 */
+	private static Long simIdOf(Device device) {
+		return device.getSim() == null ? null : device.getSim().getId();
+	}
+
+	/**
+	 * Reads the entities with the given IDs, in a single query
+	 * 
+	 * @param <T>   Entity type
+	 * @param type  Entity class
+	 * @param ids   IDs to be read
+	 * @param getId Function to get the ID of an entity
+	 * @return The existing entities, by ID
+	 */
+	private <T> Map<Long, T> findAll(Class<T> type, Stream<Long> ids, Function<T, Long> getId) {
+		Collection<Long> idList = ids.distinct().collect(Collectors.toList());
+		Map<Long, T> found = new HashMap<>();
+		if (!idList.isEmpty()) {
+			entityManager
+					.createQuery("SELECT e FROM " + type.getSimpleName() + " e WHERE e.id IN :ids", type)
+					.setParameter("ids", idList).getResultList().forEach(e -> found.put(getId.apply(e), e));
+		}
+		return found;
+	}
+}
@@ -0,0 +1,65 @@
+package com.example.demo.service;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Filter of the SIM search, from its query parameters: <code>status</code>,
+ * <code>country</code>, <code>operator</code> and <code>unassigned</code>.
+ * The ones not given match any SIM.
+ */
+public class SimFilter {
+
+	private final SimStatus status;
+
+	private final Country country;
+
+	private final Integer operator;
+
+	private final Boolean unassigned;
+
+	/**
+	 * Creates the filter
+	 * 
+	 * @param status     Status of the SIM, or null for any
+	 * @param country    Country of the SIM, or null for any
+	 * @param operator   Operator code of the SIM, or null for any
+	 * @param unassigned True for the SIMs without device, false for the ones
+	 *                   with a device, or null for any
+	 */
+	public SimFilter(SimStatus status, Country country, Integer operator, Boolean unassigned) {
+		this.status = status;
+		this.country = country;
+		this.operator = operator;
+		this.unassigned = unassigned;
+	}
+
+	/**
+	 * @return The status of the SIM, or null for any
+	 */
+	public SimStatus getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return The country of the SIM, or null for any
+	 */
+	public Country getCountry() {
+		return country;
+	}
+
+	/**
+	 * @return The operator code of the SIM, or null for any
+	 */
+	public Integer getOperator() {
+		return operator;
+	}
+
+	/**
+	 * @return True for the SIMs without device, false for the ones with a device,
+	 *         or null for any
+	 */
+	public Boolean getUnassigned() {
+		return unassigned;
+	}
+}
@@ -0,0 +1,199 @@
+package com.example.demo.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.SimStatus;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Pool of the IDs of the SIMs that can be assigned to a device: not assigned,
+ * and active or waiting for activation. There is one pool per country.
+ *
+ * Each pool is a lock-free queue, so concurrent assignments take different
+ * SIMs without waiting for each other, and never try to assign the same one.
+ * It is refilled in batches of sim.pool.batch-size IDs, read in ID order from
+ * where the previous batch ended, under a lock of the country. When the end is
+ * reached, it starts again, so the SIMs released since (e.g. by a deleted
+ * device) are found.
+ *
+ * The pool is only a hint, nothing is stored: a SIM may have been assigned,
+ * changed or deleted after it was read. So the assigner locks the SIM and
+ * checks it is still free ({@link SimRepository#isFree}) before assigning it,
+ * and otherwise takes another one. After a restart, the pools are read again
+ * from the database.
+ */
+@Component
+public class SimPool implements MeterBinder {
+
+	/**
+	 * Statuses of the SIMs that can be assigned
+	 */
+	public static final Collection<SimStatus> ASSIGNABLE = Collections
+			.unmodifiableList(Arrays.asList(SimStatus.ACTIVE, SimStatus.WAITING_FOR_ACTIVATION));
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	/**
+	 * Number of SIM IDs read in each refill
+	 */
+	private final int batchSize;
+
+	private final Map<Country, Stripe> stripes = new EnumMap<>(Country.class);
+
+	/**
+	 * Pool of a country
+	 */
+	private static final class Stripe {
+
+		private final Country country;
+
+		private final Queue<Long> free = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * IDs in {@link #free}, so a refill does not add them twice
+		 */
+		private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		/**
+		 * Guards the refills
+		 */
+		private final Lock lock = new ReentrantLock();
+
+		/**
+		 * SIM ID after which the next refill starts
+		 */
+		private long cursor = Long.MIN_VALUE;
+
+		private Stripe(Country country) {
+			this.country = country;
+		}
+
+		private Long poll() {
+			Long id = free.poll();
+			if (id != null) {
+				queued.remove(id);
+				size.decrementAndGet();
+			}
+			return id;
+		}
+
+		private void offer(Long id) {
+			if (queued.add(id)) {
+				free.offer(id);
+				size.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Creates the pools
+	 *
+	 * @param batchSize Number of SIM IDs read in each refill
+	 */
+	public SimPool(@Value("${sim.pool.batch-size:1000}") int batchSize) {
+		this.batchSize = batchSize;
+		for (Country country : Country.values()) {
+			stripes.put(country, new Stripe(country));
+		}
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		stripes.values().forEach(stripe -> Gauge.builder("sim.pool.size", stripe.size, AtomicInteger::get)
+				.tag("country", stripe.country.getLabel()).description("SIM IDs in the pool of free SIMs")
+				.register(registry));
+	}
+
+	/**
+	 * Takes a SIM that was free when it was read. It is refilled when it is
+	 * running low, by the first thread that gets the lock, while the others go
+	 * on. If it is empty, they wait for the refill.
+	 *
+	 * @param country Country of the SIM
+	 * @return The SIM ID, or null if there are no free SIMs
+	 */
+	public Long take(Country country) {
+		Stripe stripe = stripes.get(country);
+		Long id = stripe.poll();
+		if (stripe.size.get() < batchSize / 4 && stripe.lock.tryLock()) {
+			try {
+				refill(stripe);
+			} finally {
+				stripe.lock.unlock();
+			}
+		}
+		if (id != null) {
+			return id;
+		}
+		stripe.lock.lock();
+		try {
+			id = stripe.poll();
+			if (id == null) {
+				refill(stripe);
+				id = stripe.poll();
+			}
+			return id;
+		} finally {
+			stripe.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param country Country of the pool
+	 * @return The number of SIM IDs in the pool
+	 */
+	public int size(Country country) {
+		return stripes.get(country).size.get();
+	}
+
+	/**
+	 * Reads the next batch of free SIMs, starting again from the first one when
+	 * the end is reached. The stripe must be locked
+	 */
+	private void refill(Stripe stripe) {
+		List<Long> ids = read(stripe.country, stripe.cursor);
+		if (ids.isEmpty() && stripe.cursor != Long.MIN_VALUE) {
+			ids = read(stripe.country, Long.MIN_VALUE);
+		}
+		stripe.cursor = ids.size() < batchSize ? Long.MIN_VALUE : ids.get(ids.size() - 1);
+		ids.forEach(stripe::offer);
+	}
+
+	/**
+	 * Reads a batch of free SIM IDs. It is not a read-only transaction, so it is
+	 * read from the primary, not from a replica behind it
+	 */
+	private List<Long> read(Country country, long after) {
+		return new TransactionTemplate(transactionManager)
+				.execute(status -> sims.findFreeIds(country, ASSIGNABLE, after, PageRequest.ofSize(batchSize)));
+	}
+}
@@ -1,11 +1,86 @@
 package com.example.demo.service;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.example.demo.model.Country;
 import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
 
 /**
  * This is the repository to store the SIM registry
  */
-public interface SimRepository extends JpaRepository<Sim, Long> {
-}
\ No newline at end of file
+public interface SimRepository extends JpaRepository<Sim, Long>, SimRepositoryCustom {
+
+	/**
+	 * Constructor expression of the {@link SimView} projections, with alias
+	 * <code>s</code>. Loading the entities would also load their devices, one by
+	 * one.
+	 */
+	String VIEW = "SELECT new com.example.demo.model.SimView(s.id, s.operatorCode, s.country, s.status) FROM Sim s ";
+
+	/**
+	 * @param id SIM ID
+	 * @return The SIM, if it exists
+	 */
+	@Query(VIEW + " WHERE s.id = :id")
+	Optional<SimView> findViewById(@Param("id") long id);
+
+	/**
+	 * Reads a SIM, locking it until the end of the transaction
+	 * 
+	 * @param id SIM ID
+	 * @return The SIM, if it exists
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT s FROM Sim s WHERE s.id = :id")
+	Optional<Sim> findForUpdate(@Param("id") long id);
+
+	/**
+	 * @param ids SIM IDs
+	 * @return The SIMs that exist, ordered by ID
+	 */
+	@Query(VIEW + " WHERE s.id IN :ids ORDER BY s.id")
+	List<SimView> findViewByIdIn(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Condition of the SIMs that can be assigned to a device, with alias
+	 * <code>s</code>
+	 */
+	String FREE = " s.country = :country AND s.status IN :statuses"
+			+ " AND NOT EXISTS (SELECT d.id FROM Device d WHERE d.sim = s) ";
+
+	/**
+	 * Keyset page of the IDs of the SIMs not assigned to any device
+	 * 
+	 * @param country  Country of the SIMs
+	 * @param statuses Statuses of the SIMs
+	 * @param after    Only SIMs with an ID greater than this one are returned
+	 * @param limit    Page size. Only the size is used, it is not an offset
+	 * @return The IDs, in order
+	 */
+	@Query("SELECT s.id FROM Sim s WHERE s.id > :after AND " + FREE + " ORDER BY s.id")
+	List<Long> findFreeIds(@Param("country") Country country, @Param("statuses") Collection<SimStatus> statuses,
+			@Param("after") long after, Pageable limit);
+
+	/**
+	 * @param id       SIM ID
+	 * @param country  Country of the SIM
+	 * @param statuses Statuses of the SIM
+	 * @return Whether the SIM exists, with that country and one of the statuses,
+	 *         and it is not assigned to any device
+	 */
+	@Query("SELECT COUNT(s) > 0 FROM Sim s WHERE s.id = :id AND " + FREE)
+	boolean isFree(@Param("id") long id, @Param("country") Country country,
+			@Param("statuses") Collection<SimStatus> statuses);
+}
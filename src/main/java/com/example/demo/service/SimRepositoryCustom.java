@@ -0,0 +1,23 @@
+package com.example.demo.service;
+
+import java.util.List;
+
+import com.example.demo.model.SimView;
+
+/**
+ * Queries of the {@link SimRepository} built with the Criteria API, as their
+ * conditions depend on the parameters
+ */
+public interface SimRepositoryCustom {
+
+	/**
+	 * Keyset page of the SIMs that match a filter. Every condition is in the SQL
+	 * statement.
+	 * 
+	 * @param filter The filter
+	 * @param after  Only SIMs with an ID greater than this one are returned
+	 * @param limit  Maximum number of SIMs
+	 * @return The SIMs, ordered by ID
+	 */
+	List<SimView> findView(SimFilter filter, long after, int limit);
+}
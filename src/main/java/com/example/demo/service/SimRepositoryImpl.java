@@ -0,0 +1,79 @@
+package com.example.demo.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.model.SimView;
+
+/**
+ * Implementation of {@link SimRepositoryCustom}.
+ * 
+ * As in {@link DeviceRepositoryImpl}, the values are always bound as
+ * parameters. The SIMs are read from the index that starts with the filtered
+ * columns (see {@link Sim}), with the keyset condition on the ID, and the
+ * assignment is checked on the device index on the SIM ID.
+ */
+public class SimRepositoryImpl implements SimRepositoryCustom {
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Override
+	public List<SimView> findView(SimFilter filter, long after, int limit) {
+		CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+		CriteriaQuery<SimView> criteria = builder.createQuery(SimView.class);
+		Root<Sim> sim = criteria.from(Sim.class);
+		criteria.select(builder.construct(SimView.class, sim.get("id"), sim.get("operatorCode"), sim.get("country"),
+				sim.get("status")));
+
+		ParameterExpression<Long> afterParameter = builder.parameter(Long.class);
+		ParameterExpression<SimStatus> statusParameter = builder.parameter(SimStatus.class);
+		ParameterExpression<Country> countryParameter = builder.parameter(Country.class);
+		ParameterExpression<Integer> operatorParameter = builder.parameter(Integer.class);
+		List<Predicate> conditions = new ArrayList<>();
+		conditions.add(builder.gt(sim.get("id"), afterParameter));
+		if (filter.getStatus() != null) {
+			conditions.add(builder.equal(sim.get("status"), statusParameter));
+		}
+		if (filter.getCountry() != null) {
+			conditions.add(builder.equal(sim.get("country"), countryParameter));
+		}
+		if (filter.getOperator() != null) {
+			conditions.add(builder.equal(sim.get("operatorCode"), operatorParameter));
+		}
+		if (filter.getUnassigned() != null) {
+			Subquery<Long> device = criteria.subquery(Long.class);
+			Root<Device> assigned = device.from(Device.class);
+			device.select(assigned.get("id")).where(builder.equal(assigned.get("sim"), sim));
+			conditions.add(filter.getUnassigned() ? builder.not(builder.exists(device)) : builder.exists(device));
+		}
+		criteria.where(conditions.toArray(new Predicate[0])).orderBy(builder.asc(sim.get("id")));
+
+		TypedQuery<SimView> query = entityManager.createQuery(criteria).setParameter(afterParameter, after)
+				.setMaxResults(limit);
+		if (filter.getStatus() != null) {
+			query.setParameter(statusParameter, filter.getStatus());
+		}
+		if (filter.getCountry() != null) {
+			query.setParameter(countryParameter, filter.getCountry());
+		}
+		if (filter.getOperator() != null) {
+			query.setParameter(operatorParameter, filter.getOperator());
+		}
+		return query.getResultList();
+	}
+}
@@ -0,0 +1,87 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.SimRepository;
+
+/**
+ * Test of the compressed listings. They keep their strong ETags, one per
+ * encoding, and can still be validated.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = { "server.compression.enabled=true",
+		"server.compression.mime-types=application/json", "server.compression.min-response-size=1" })
+class CompressionConfigurationTest {
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	/**
+	 * The listing is compressed if the client accepts gzip, with another ETag
+	 * than the uncompressed one
+	 */
+	@Test
+	void testCompressedListing() throws IOException {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		Sim sim = sims.save(new Sim(5332, 123, Country.SPAIN, SimStatus.ACTIVE));
+		devices.save(new Device(DeviceStatus.READY, 12.5f, sim));
+
+		HttpURLConnection gzip = get("gzip", null);
+		assertEquals(200, gzip.getResponseCode());
+		assertEquals("gzip", gzip.getHeaderField("Content-Encoding"));
+		String eTag = gzip.getHeaderField("ETag");
+		assertNotNull(eTag);
+		try (InputStream in = new GZIPInputStream(gzip.getInputStream())) {
+			assertEquals('[', in.read());
+		}
+
+		HttpURLConnection identity = get("identity", null);
+		assertEquals(200, identity.getResponseCode());
+		assertNull(identity.getHeaderField("Content-Encoding"));
+		assertNotEquals(eTag, identity.getHeaderField("ETag"));
+		identity.getInputStream().close();
+
+		HttpURLConnection notModified = get("gzip", eTag);
+		assertEquals(304, notModified.getResponseCode());
+		assertEquals(eTag, notModified.getHeaderField("ETag"));
+	}
+
+	private HttpURLConnection get(String acceptEncoding, String ifNoneMatch) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://localhost:" + port + "/api/device/available-for-sale").openConnection();
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setRequestProperty("Accept", "application/json");
+		connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+		if (ifNoneMatch != null) {
+			connection.setRequestProperty("If-None-Match", ifNoneMatch);
+		}
+		return connection;
+	}
+}
@@ -1,19 +1,34 @@
 package com.example.demo;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.when;
 
-import org.apache.commons.collections4.IterableUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 
+import com.example.demo.model.Device;
+import com.example.demo.model.Sim;
 import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryWriter;
 import com.example.demo.service.SimRepository;
 
 @SpringBootTest
@@ -25,28 +40,49 @@ class DbInitTest {
 	@MockBean
 	private SimRepository simRepo;
 
+	@MockBean
+	private InventoryWriter writer;
+
 	@Autowired
 	private DbInit dbInit;
 
+	/**
+	 * Number of SIMs written
+	 */
+	private final AtomicInteger simCount = new AtomicInteger();
+
+	/**
+	 * IDs of the SIMs written
+	 */
+	private final Set<Long> simIds = new HashSet<>();
+
+	/**
+	 * IDs of the SIMs assigned to the written devices
+	 */
+	private final Set<Long> assignedSimIds = new HashSet<>();
+
 	/**
 	 * Mocks to avoid writing to DB
 	 */
 	@BeforeEach
 	public void before() {
-		when(deviceRepo.saveAll(any())).then(i -> {
-			Iterable devices = i.getArgument(0);
+		doAnswer(i -> {
+			List<Sim> sims = i.getArgument(0);
+			List<Device> devices = i.getArgument(1);
 			
-			// Check there are some devices
-			assertTrue(IterableUtils.size(devices) > 0);
-			return null;
-		});
-		when(simRepo.saveAll(any())).then(i -> {
-			Iterable sims = i.getArgument(0);
+			// Check there are some sims and devices
+			assertTrue(sims.size() > 0);
+			assertEquals(sims.size(), devices.size());
 			
-			// Check there are some sims
-			assertTrue(IterableUtils.size(sims) > 0);
+			// Check the devices only use SIMs in the same batch, and not repeated
+			simCount.addAndGet(sims.size());
+			sims.forEach(sim -> simIds.add(sim.getId()));
+			devices.stream().map(Device::getSim).filter(Objects::nonNull).forEach(sim -> {
+				assertTrue(sims.contains(sim));
+				assertTrue(assignedSimIds.add(sim.getId()));
+			});
 			return null;
-		});
+		}).when(writer).insert(any(), any());
 	}
 
 	/**
@@ -60,9 +96,8 @@ class DbInitTest {
 		verify(deviceRepo, times(1)).deleteAllInBatch();
 		verify(simRepo, times(1)).deleteAllInBatch();
 
-		// Check the saveAll method was not called
-		verify(deviceRepo, times(0)).saveAll(any());
-		verify(simRepo, times(0)).saveAll(any());
+		// Check the insert method was not called
+		verify(writer, times(0)).insert(any(), any());
 	}
 
 	/**
@@ -76,9 +111,10 @@ class DbInitTest {
 		verify(deviceRepo, times(0)).deleteAllInBatch();
 		verify(simRepo, times(0)).deleteAllInBatch();
 
-		// Check the saveAll method was called once
-		verify(deviceRepo, times(1)).saveAll(any());
-		verify(simRepo, times(1)).saveAll(any());
+		// Check the default 200000 SIMs and devices were inserted, in batches of 10000
+		verify(writer, times(20)).insert(any(), any());
+		assertEquals(200000, simCount.get());
+		assertEquals(200000, simIds.size());
 	}
 
 	/**
@@ -92,9 +128,10 @@ class DbInitTest {
 		verify(deviceRepo, times(1)).deleteAllInBatch();
 		verify(simRepo, times(1)).deleteAllInBatch();
 
-		// Check the saveAll method was called once
-		verify(deviceRepo, times(1)).saveAll(any());
-		verify(simRepo, times(1)).saveAll(any());
+		// Check the default 200000 SIMs and devices were inserted, in batches of 10000
+		verify(writer, times(20)).insert(any(), any());
+		assertEquals(200000, simCount.get());
+		assertEquals(200000, simIds.size());
 	}
 
 	/**
@@ -108,9 +145,59 @@ class DbInitTest {
 		verify(deviceRepo, times(0)).deleteAllInBatch();
 		verify(simRepo, times(0)).deleteAllInBatch();
 
-		// Check the saveAll method was not called
-		verify(deviceRepo, times(0)).saveAll(any());
-		verify(simRepo, times(0)).saveAll(any());
+		// Check the insert method was not called
+		verify(writer, times(0)).insert(any(), any());
 	}
 
+	/**
+	 * Call run init-db with a custom size
+	 */
+	@Test
+	final void testInitDbSize() {
+		dbInit.run("init-db=25000");
+
+		// Check the SIMs were inserted in three batches, with unique IDs
+		verify(writer, times(3)).insert(any(), any());
+		assertEquals(25000, simCount.get());
+		assertEquals(25000, simIds.size());
+
+		// Check approximately half of the SIMs were assigned
+		assertTrue(assignedSimIds.size() > 10000);
+		assertTrue(assignedSimIds.size() < 15000);
+	}
+
+	/**
+	 * Call run init-db with an invalid size, together with clear-db
+	 */
+	@Test
+	final void testInitDbInvalidSize() {
+		for (String arg : new String[] { "init-db=abc", "init-db=", "init-db=-5", "init-db=0" }) {
+			IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+					() -> dbInit.run(arg, "clear-db"));
+			assertTrue(e.getMessage().startsWith("Invalid init-db size"));
+		}
+
+		// Check nothing was cleared or inserted
+		verify(deviceRepo, times(0)).deleteAllInBatch();
+		verify(simRepo, times(0)).deleteAllInBatch();
+		verify(writer, times(0)).insert(any(), any());
+	}
+
+	/**
+	 * Call run import with a NDJSON file
+	 * @throws IOException 
+	 */
+	@Test
+	final void testImport(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("inventory.ndjson");
+		Files.write(file, Arrays.asList(
+				"{\"type\": \"sim\", \"id\": 600, \"operatorCode\": 30, \"country\": \"UK\", \"status\": \"Active\"}",
+				"{\"type\": \"device\", \"status\": \"READY\", \"temperature\": 2.5, \"simId\": 600}"));
+
+		dbInit.run("import=" + file);
+
+		// Check the records were written in one batch of two, without generating data
+		verify(writer, times(1)).upsert(any());
+		verify(writer, times(0)).insert(any(), any());
+	}
 }
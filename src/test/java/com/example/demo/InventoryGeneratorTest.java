@@ -0,0 +1,55 @@
+package com.example.demo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.Device;
+import com.example.demo.model.Sim;
+
+/**
+ * Test of the seeded generator of the sample data
+ */
+class InventoryGeneratorTest {
+
+	/**
+	 * The same seed generates the same data, whatever the order of the batches
+	 */
+	@Test
+	void testSameSeedSameData() {
+		InventoryGenerator first = new InventoryGenerator(1000, 42);
+		InventoryGenerator second = new InventoryGenerator(1000, 42);
+
+		String later = second.createBatch(500, 1000).getDevices().toString();
+		assertEquals(first.createBatch(0, 500).getDevices().toString(),
+				second.createBatch(0, 500).getDevices().toString());
+		assertEquals(first.createBatch(500, 1000).getDevices().toString(), later);
+		assertNotEquals(new InventoryGenerator(1000, 43).createBatch(0, 500).getDevices().toString(),
+				first.createBatch(0, 500).getDevices().toString());
+	}
+
+	/**
+	 * SIMs are never repeated, and ready devices get a SIM of their batch
+	 */
+	@Test
+	void testSimsNotRepeated() {
+		InventoryGenerator generator = new InventoryGenerator(1000, 7);
+		Set<Long> ids = new HashSet<>();
+		for (int from = 0; from < 1000; from += 300) {
+			InventoryGenerator.Batch batch = generator.createBatch(from, Math.min(1000, from + 300));
+			batch.getSims().forEach(sim -> ids.add(sim.getId()));
+			for (Device device : batch.getDevices()) {
+				Sim sim = device.getSim();
+				assertTrue(sim == null || batch.getSims().contains(sim));
+			}
+		}
+		assertEquals(1000, ids.size());
+		assertTrue(ids.stream().allMatch(
+				id -> id >= InventoryGenerator.FIRST_SIM_ID && id < InventoryGenerator.FIRST_SIM_ID + 1000));
+	}
+}
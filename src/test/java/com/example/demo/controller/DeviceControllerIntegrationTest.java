@@ -1,28 +1,57 @@
 package com.example.demo.controller;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import com.example.demo.model.Country;
 import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
 import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
 import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryVersion;
 import com.example.demo.service.SimRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * This is an example of integration test over Device Controller.
@@ -42,13 +71,32 @@ class DeviceControllerIntegrationTest {
 	@Autowired
 	private SimRepository sims;
 
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private InventoryVersion version;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	@Autowired
+	private EntityManagerFactory emf;
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
 	/**
-	 * Clear the repositories
+	 * Clear the repositories, and the cached listings
 	 */
 	@BeforeEach
 	final void clearDb() {
 		devices.deleteAllInBatch();
 		sims.deleteAllInBatch();
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
 	}
 
 	/**
@@ -71,13 +119,13 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testFindWaitingActivationSingle() throws Exception {
-		Sim sim1 = new Sim(1332, 123, "Spain", "Waiting for activation");
-		Sim sim2 = new Sim(2134, 123, "Spain", "Active");
+		Sim sim1 = new Sim(1332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		Sim sim2 = new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE);
 		sims.save(sim1);
 		sims.save(sim2);
 		
-		devices.save(new Device("READY", 12.3f, sim1));
-		devices.save(new Device("READY", 15.3f, sim2));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
 		devices.save(new Device(null, null, null));
 		
 		mvc.perform(get("/api/device/waiting-activation").contentType(MediaType.APPLICATION_JSON))
@@ -95,8 +143,8 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testDeleteDeviceFound() throws Exception {
-		devices.save(new Device("READY", 32.5f, null));
-		Device toRemove = devices.save(new Device("READY", 12.3f, null));
+		devices.save(new Device(DeviceStatus.READY, 32.5f, null));
+		Device toRemove = devices.save(new Device(DeviceStatus.READY, 12.3f, null));
 		devices.save(new Device(null, 52.5f, null));
 		
 		// It should return OK
@@ -115,8 +163,8 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testDeleteDeviceNotFound() throws Exception {
-		devices.save(new Device("READY", 32.5f, null));
-		devices.save(new Device("READY", 12.3f, null));
+		devices.save(new Device(DeviceStatus.READY, 32.5f, null));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, null));
 		devices.save(new Device(null, 52.5f, null));
 		
 		// It should return NOT FOUND
@@ -134,10 +182,10 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testModifyDeviceFound() throws Exception {
-		Sim sim1 = new Sim(1332, 123, "Spain", "Waiting for activation");
+		Sim sim1 = new Sim(1332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
 		sims.save(sim1);
 		
-		devices.save(new Device("READY", 32.5f, null));
+		devices.save(new Device(DeviceStatus.READY, 32.5f, null));
 		Device toModify = devices.save(new Device(null, 12.3f, null));
 		devices.save(new Device(null, 52.5f, null));
 		
@@ -166,8 +214,8 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testModifyDeviceNotFound() throws Exception {
-		devices.save(new Device("READY", 32.5f, null));
-		devices.save(new Device("READY", 12.3f, null));
+		devices.save(new Device(DeviceStatus.READY, 32.5f, null));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, null));
 		devices.save(new Device(null, 52.5f, null));
 
 		String newValue = "{\"id\": 1000000, \"status\": \"READY\", \"temperature\": 23.4, \"sim\": null}";
@@ -204,13 +252,13 @@ class DeviceControllerIntegrationTest {
 	 */
 	@Test
 	final void testFindAvailableForSaleTwo() throws Exception {
-		Sim sim1 = new Sim(6332, 123, "Spain", "Waiting for activation");
-		Sim sim2 = new Sim(2134, 123, "Spain", "Active");
+		Sim sim1 = new Sim(6332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		Sim sim2 = new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE);
 		sims.save(sim1);
 		sims.save(sim2);
 		
-		devices.save(new Device("READY", 12.3f, sim1));
-		devices.save(new Device("READY", 15.3f, sim2));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
 		devices.save(new Device(null, null, null));
 		
 		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
@@ -220,4 +268,851 @@ class DeviceControllerIntegrationTest {
 			.andExpect(jsonPath("$[0].sim.id", is(2134)))
 			.andExpect(jsonPath("$[1].sim.id", is(6332)));
 	}
+
+	/**
+	 * Test available-for-sale endpoint streaming as NDJSON with no data
+	 * @throws Exception
+	 */
+	@Test
+	final void testStreamAvailableForSaleNone() throws Exception {
+		mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_NDJSON))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andExpect(content().string(""));
+	}
+
+	/**
+	 * Test available-for-sale endpoint streaming as NDJSON
+	 * 
+	 * Four devices are to be added, only three will be available for sale.
+	 * There should be one line per device, in the proper order (by sim.id)
+	 * @throws Exception
+	 */
+	@Test
+	final void testStreamAvailableForSaleThree() throws Exception {
+		Sim sim1 = new Sim(6332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		Sim sim2 = new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE);
+		Sim sim3 = new Sim(4134, 123, Country.ITALY, SimStatus.ACTIVE);
+		sims.save(sim1);
+		sims.save(sim2);
+		sims.save(sim3);
+		
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
+		devices.save(new Device(DeviceStatus.READY, 17.3f, sim3));
+		devices.save(new Device(null, null, null));
+		
+		String body = mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_NDJSON))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+			.andReturn().getResponse().getContentAsString();
+		
+		String[] lines = body.split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].contains("\"id\":2134"));
+		assertTrue(lines[1].contains("\"id\":4134"));
+		assertTrue(lines[2].contains("\"id\":6332"));
+		assertTrue(body.endsWith("\n"));
+	}
+
+	/**
+	 * Test walking the available-for-sale endpoint with keyset pagination
+	 * 
+	 * Three devices are available for sale, in pages of two.
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSalePages() throws Exception {
+		Sim sim1 = new Sim(6332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		Sim sim2 = new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE);
+		Sim sim3 = new Sim(4134, 123, Country.ITALY, SimStatus.ACTIVE);
+		sims.save(sim1);
+		sims.save(sim2);
+		sims.save(sim3);
+		
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
+		devices.save(new Device(DeviceStatus.READY, 17.3f, sim3));
+		devices.save(new Device(null, null, null));
+		
+		mvc.perform(get("/api/device/available-for-sale?limit=2").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(2134)))
+			.andExpect(jsonPath("$.items[1].sim.id", is(4134)))
+			.andExpect(jsonPath("$.next", is(4134)));
+		
+		mvc.perform(get("/api/device/available-for-sale?after=4134&limit=2").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(6332)))
+			.andExpect(jsonPath("$.next", nullValue()));
+	}
+
+	/**
+	 * Test walking the waiting-activation endpoint with keyset pagination
+	 * 
+	 * Two devices are waiting for activation, in pages of one.
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindWaitingActivationPages() throws Exception {
+		Sim sim1 = new Sim(1332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		Sim sim2 = new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE);
+		Sim sim3 = new Sim(3134, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		sims.save(sim1);
+		sims.save(sim2);
+		sims.save(sim3);
+		
+		Device first = devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
+		Device second = devices.save(new Device(null, null, sim3));
+		
+		mvc.perform(get("/api/device/waiting-activation?limit=1").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(1332)))
+			.andExpect(jsonPath("$.next", is((int) first.getId())));
+		
+		mvc.perform(get("/api/device/waiting-activation?limit=1&after=" + first.getId())
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(3134)))
+			.andExpect(jsonPath("$.next", is((int) second.getId())));
+		
+		mvc.perform(get("/api/device/waiting-activation?limit=1&after=" + second.getId())
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", empty()))
+			.andExpect(jsonPath("$.next", nullValue()));
+	}
+
+	/**
+	 * Test the available-for-sale endpoint filtered by country, operator and
+	 * temperature range, as a list, pages and a stream
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleFiltered() throws Exception {
+		Sim sim1 = sims.save(new Sim(6332, 10, Country.UK, SimStatus.ACTIVE));
+		Sim sim2 = sims.save(new Sim(2134, 10, Country.UK, SimStatus.ACTIVE));
+		Sim sim3 = sims.save(new Sim(4134, 20, Country.UK, SimStatus.ACTIVE));
+		Sim sim4 = sims.save(new Sim(5134, 10, Country.ITALY, SimStatus.ACTIVE));
+		Sim sim5 = sims.save(new Sim(7134, 10, Country.UK, SimStatus.ACTIVE));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
+		devices.save(new Device(DeviceStatus.READY, 17.3f, sim3));
+		devices.save(new Device(DeviceStatus.READY, 17.3f, sim4));
+		// Too hot for the standard, but not for this market
+		devices.save(new Device(DeviceStatus.READY, 90f, sim5));
+		
+		mvc.perform(get("/api/device/available-for-sale?country=UK&operator=10").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].sim.id", is(2134)))
+			.andExpect(jsonPath("$[1].sim.id", is(6332)));
+		mvc.perform(get("/api/device/available-for-sale?country=UK&minTemp=13&maxTemp=95")
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(3)))
+			.andExpect(jsonPath("$[0].sim.id", is(2134)))
+			.andExpect(jsonPath("$[1].sim.id", is(4134)))
+			.andExpect(jsonPath("$[2].sim.id", is(7134)));
+		// By the label of the JSON too
+		mvc.perform(get("/api/device/available-for-sale?country=Italy").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].sim.id", is(5134)));
+		mvc.perform(get("/api/device/available-for-sale?operator=10&minTemp=&maxTemp=")
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(3)));
+		
+		mvc.perform(get("/api/device/available-for-sale?operator=10&limit=2&after=2134")
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(5134)))
+			.andExpect(jsonPath("$.items[1].sim.id", is(6332)))
+			.andExpect(jsonPath("$.next", is(6332)));
+		
+		String body = mvc.perform(get("/api/device/available-for-sale?country=ITALY")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_NDJSON))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		assertEquals(1, body.split("\n").length);
+		assertTrue(body.contains("\"id\":5134"));
+		
+		// The plain listing is not filtered
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(4)));
+	}
+
+	/**
+	 * Test the available-for-sale endpoint with wrong filters
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleInvalidFilter() throws Exception {
+		mvc.perform(get("/api/device/available-for-sale?minTemp=40&maxTemp=0").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+		mvc.perform(get("/api/device/available-for-sale?limit=10&minTemp=40&maxTemp=0")
+				.contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+		mvc.perform(get("/api/device/available-for-sale?country=FRANCE").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Test paginated endpoints with a wrong page size
+	 * @throws Exception
+	 */
+	@Test
+	final void testPageInvalidLimit() throws Exception {
+		mvc.perform(get("/api/device/available-for-sale?limit=0").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+		mvc.perform(get("/api/device/waiting-activation?limit=100001").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isBadRequest());
+	}
+
+	/**
+	 * Test the available-for-sale listing is served from the cache until a device
+	 * is modified
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleCached() throws Exception {
+		Sim sim1 = new Sim(6332, 123, Country.SPAIN, SimStatus.ACTIVE);
+		sims.save(sim1);
+		Device device = devices.save(new Device(null, null, null));
+		double hits = cacheGets("hit");
+		
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", empty()));
+		
+		// Changes made behind the controller are not seen, the cached result is returned
+		devices.save(new Device(DeviceStatus.READY, 12.3f, null));
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", empty()));
+		assertEquals(hits + 1, cacheGets("hit"));
+		
+		// Modifying through the controller invalidates it
+		String newValue = String
+				.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 23.4, \"sim\": {\"id\": 6332}}", 
+						device.getId());
+		mvc.perform(put("/api/device/" + device.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(newValue))
+			.andExpect(status().isOk());
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].sim.id", is(6332)));
+		
+		// Deleting through the controller invalidates it
+		mvc.perform(delete("/api/device/" + device.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", empty()));
+	}
+
+	/**
+	 * Test a listing cached after the eviction of a change it was read before is
+	 * not returned once the change is published
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleCachedBeforeChange() throws Exception {
+		Sim sim1 = sims.save(new Sim(6332, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Device device = devices.save(new Device(null, 12.3f, sim1));
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", empty()));
+
+		// Committed after the listing was read, and published after it was cached.
+		// It is written outside a transaction of the application, so it is only
+		// published when the version is increased
+		jdbc.update("UPDATE device SET status = ? WHERE id = ?", DeviceStatus.READY.getCode(), device.getId());
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", empty()));
+		version.increment();
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].sim.id", is(6332)));
+	}
+
+	/**
+	 * Test the available-for-sale listing is validated with its ETag without
+	 * reading the database, until a device is modified through the controller
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleNotModified() throws Exception {
+		Sim sim1 = sims.save(new Sim(8332, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Device device = devices.save(new Device(DeviceStatus.READY, 12.5f, sim1));
+		
+		String eTag = mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(header().exists("ETag"))
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andReturn().getResponse().getHeader("ETag");
+		
+		// Still current, neither the database nor the cache are read
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		double hits = cacheGets("hit");
+		mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", eTag))
+			.andExpect(status().isNotModified())
+			.andExpect(header().string("ETag", eTag))
+			.andExpect(content().string(""));
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertEquals(hits, cacheGets("hit"));
+		
+		// Another representation has another ETag
+		mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_CBOR)
+				.header("If-None-Match", eTag))
+			.andExpect(status().isOk())
+			.andExpect(header().string("Vary", containsString("Accept")));
+		
+		// Modifying through the controller changes it
+		mvc.perform(put("/api/device/" + device.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(String.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 23.5, \"sim\": {\"id\": 8332}}",
+						device.getId())))
+			.andExpect(status().isOk());
+		String newETag = mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", eTag))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].temperature", is(23.5)))
+			.andReturn().getResponse().getHeader("ETag");
+		assertNotEquals(eTag, newETag);
+	}
+
+	/**
+	 * Test a page of the waiting-activation listing is validated with its ETag,
+	 * until a device is deleted through the controller
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindWaitingActivationPageNotModified() throws Exception {
+		Sim sim1 = sims.save(new Sim(9332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		Device device = devices.save(new Device(DeviceStatus.READY, 12.5f, sim1));
+		
+		String eTag = mvc.perform(get("/api/device/waiting-activation?limit=1").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andReturn().getResponse().getHeader("ETag");
+		
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		mvc.perform(get("/api/device/waiting-activation?limit=1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", "\"other\", " + eTag))
+			.andExpect(status().isNotModified());
+		assertEquals(0, statistics.getPrepareStatementCount());
+		
+		mvc.perform(delete("/api/device/" + device.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+		mvc.perform(get("/api/device/waiting-activation?limit=1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-None-Match", eTag))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", empty()));
+	}
+
+	/**
+	 * Test the change stream starts with a reset, and then has the devices that
+	 * join or leave the listings through the controller
+	 * @throws Exception
+	 */
+	@Test
+	final void testStreamChanges() throws Exception {
+		Sim sim1 = sims.save(new Sim(9432, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Device device = devices.save(new Device(null, 12.5f, sim1));
+		String update = "{\"id\": %d, \"status\": \"READY\", \"temperature\": %s, \"sim\": {\"id\": 9432}}";
+		
+		MvcResult stream = mvc.perform(get("/api/device/changes"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+		try {
+			awaitContent(stream, "event:reset\ndata:{}\n\n");
+			
+			// Ready, it joins the for-sale listing
+			mvc.perform(put("/api/device/" + device.getId())
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(String.format(update, device.getId(), "20")))
+				.andExpect(status().isOk());
+			awaitContent(stream, "event:change\ndata:{\"id\":" + device.getId()
+					+ ",\"simId\":9432,\"forSale\":true,\"waitingActivation\":false}\n\n");
+			
+			// Still for sale, no event
+			mvc.perform(put("/api/device/" + device.getId())
+					.contentType(MediaType.APPLICATION_JSON)
+					.content(String.format(update, device.getId(), "21")))
+				.andExpect(status().isOk());
+			
+			// Deleted, it leaves the listing
+			mvc.perform(delete("/api/device/" + device.getId()).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+			awaitContent(stream, "event:change\ndata:{\"id\":" + device.getId()
+					+ ",\"simId\":null,\"forSale\":false,\"waitingActivation\":false}\n\n");
+			assertEquals(2, stream.getResponse().getContentAsString().split("event:change").length - 1);
+		} finally {
+			stream.getRequest().getAsyncContext().complete();
+		}
+	}
+
+	/**
+	 * Test a client resuming the change stream gets the events it missed, or a
+	 * reset if they are not known
+	 * @throws Exception
+	 */
+	@Test
+	final void testStreamChangesResume() throws Exception {
+		sims.save(new Sim(9532, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		MvcResult first = mvc.perform(get("/api/device/changes")).andReturn();
+		String lastEventId;
+		try {
+			awaitContent(first, "event:reset");
+			lastEventId = first.getResponse().getContentAsString().split("\n")[0].substring("id:".length());
+		} finally {
+			first.getRequest().getAsyncContext().complete();
+		}
+		
+		// Imported while disconnected
+		mvc.perform(post("/api/device/import")
+				.contentType(DeviceController.TEXT_CSV_VALUE)
+				.content("type,id,status,temperature,simId,operatorCode,country\n"
+						+ "device,,READY,20,9532,,\n"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.imported", is(1)));
+		long id = devices.findBySimStatus(SimStatus.WAITING_FOR_ACTIVATION).get(0).getId();
+		
+		MvcResult resumed = mvc.perform(get("/api/device/changes").header("Last-Event-ID", lastEventId)).andReturn();
+		try {
+			awaitContent(resumed, "data:{\"id\":" + id + ",\"simId\":9532,\"forSale\":true,\"waitingActivation\":true}");
+			assertTrue(resumed.getResponse().getContentAsString().startsWith("id:" + (Long.parseLong(lastEventId) + 1)
+					+ "\nevent:change\n"));
+		} finally {
+			resumed.getRequest().getAsyncContext().complete();
+		}
+		
+		MvcResult unknown = mvc.perform(get("/api/device/changes").header("Last-Event-ID", "1")).andReturn();
+		try {
+			awaitContent(unknown, "event:reset");
+		} finally {
+			unknown.getRequest().getAsyncContext().complete();
+		}
+	}
+
+	/**
+	 * Waits until an event stream has some content
+	 */
+	private static void awaitContent(MvcResult stream, String content) throws Exception {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!stream.getResponse().getContentAsString().contains(content)) {
+			assertTrue(System.currentTimeMillis() < deadline, stream.getResponse().getContentAsString());
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Test the listings written from the cached JSON fragments are the same as
+	 * Jackson's, and that a fragment is not reused once the device has changed,
+	 * even if it was not evicted
+	 * @throws Exception
+	 */
+	@Test
+	final void testListingJsonFragments() throws Exception {
+		Sim sim1 = new Sim(7332, 123, Country.ITALY, SimStatus.WAITING_FOR_ACTIVATION);
+		sims.save(sim1);
+		Device device = devices.save(new Device(DeviceStatus.READY, 12.5f, sim1));
+		devices.save(new Device(null, null, null));
+		List<DeviceView> views = devices.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION);
+		
+		mvc.perform(get("/api/device/waiting-activation").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(content().string(mapper.writeValueAsString(views)));
+		double hits = cacheGets(DeviceJsonCache.NAME, "hit");
+		mvc.perform(get("/api/device/waiting-activation").param("limit", "1").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(content().string(mapper.writeValueAsString(new DevicePage(views, device.getId()))));
+		assertEquals(hits + 1, cacheGets(DeviceJsonCache.NAME, "hit"));
+		
+		// Changed behind the controller, the fragment is encoded again
+		device.update(DeviceStatus.READY, 30f, sim1);
+		devices.save(device);
+		mvc.perform(get("/api/device/waiting-activation").param("limit", "1").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items[0].temperature", is(30.0)));
+	}
+
+	/**
+	 * Test the available-for-sale listing encoded as CBOR, selected with the
+	 * Accept header
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindAvailableForSaleCbor() throws Exception {
+		Sim sim1 = new Sim(8332, 123, Country.UK, SimStatus.ACTIVE);
+		sims.save(sim1);
+		Device device = devices.save(new Device(DeviceStatus.READY, 12.5f, sim1));
+		
+		byte[] body = mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_CBOR))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_CBOR))
+			.andReturn().getResponse().getContentAsByteArray();
+		JsonNode listing = new ObjectMapper(new CBORFactory()).readTree(body);
+		assertEquals(1, listing.size());
+		assertEquals(device.getId(), listing.get(0).get("id").asLong());
+		assertEquals("READY", listing.get(0).get("status").asText());
+		assertEquals(12.5, listing.get(0).get("temperature").asDouble());
+		assertEquals("UK", listing.get(0).get("sim").get("country").asText());
+	}
+
+	/**
+	 * Test modifying a device with a Smile body, and getting it back as Smile
+	 * @throws Exception
+	 */
+	@Test
+	final void testModifyDeviceSmile() throws Exception {
+		Sim sim1 = new Sim(9332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION);
+		sims.save(sim1);
+		Device toModify = devices.save(new Device(null, 12.5f, null));
+		ObjectMapper smile = new ObjectMapper(new SmileFactory());
+		
+		Map<String, Object> newValue = new HashMap<>();
+		newValue.put("status", "READY");
+		newValue.put("temperature", 23.5);
+		newValue.put("sim", Collections.singletonMap("id", 9332));
+		byte[] body = mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(DeviceController.APPLICATION_SMILE_VALUE)
+				.accept(DeviceController.APPLICATION_SMILE_VALUE)
+				.content(smile.writeValueAsBytes(newValue)))
+			.andExpect(status().isOk())
+			.andExpect(content().contentTypeCompatibleWith(DeviceController.APPLICATION_SMILE_VALUE))
+			.andReturn().getResponse().getContentAsByteArray();
+		JsonNode modified = smile.readTree(body);
+		assertEquals(9332, modified.get("sim").get("id").asLong());
+		assertEquals(23.5, modified.get("temperature").asDouble());
+		assertEquals(23.5f, devices.findById(toModify.getId()).get().getTemperature());
+	}
+
+	/**
+	 * @param result hit or miss
+	 * @return The number of cache gets of the available-for-sale listing with that result
+	 */
+	private double cacheGets(String result) {
+		return cacheGets(DeviceController.AVAILABLE_FOR_SALE_CACHE, result);
+	}
+
+	/**
+	 * @param cache  The cache name
+	 * @param result hit or miss
+	 * @return The number of cache gets with that result
+	 */
+	private double cacheGets(String cache, String result) {
+		return meterRegistry.get("cache.gets")
+				.tag("cache", cache)
+				.tag("result", result)
+				.functionCounter().count();
+	}
+
+	/**
+	 * Test importing a CSV file, in batches of two records
+	 * 
+	 * Two SIMs and three devices, one of them referencing an unknown SIM, which is rejected
+	 * @throws Exception
+	 */
+	@Test
+	final void testImportCsv() throws Exception {
+		String file = "type,id,status,temperature,simId,operatorCode,country\n"
+				+ "sim,500,Active,,,10,Spain\n"
+				+ "sim,501,Waiting for activation,,,11,Italy\n"
+				+ "device,,READY,20.5,500,,\n"
+				+ "device,,READY,21.5,999,,\n"
+				+ "device,,READY,22.5,501,,\n";
+		
+		mvc.perform(post("/api/device/import").contentType("text/csv").content(file))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.records", is(5)))
+			.andExpect(jsonPath("$.imported", is(4)))
+			.andExpect(jsonPath("$.rejected", is(1)))
+			.andExpect(jsonPath("$.errors", hasSize(1)))
+			.andExpect(jsonPath("$.errors[0].batch", is(2)))
+			.andExpect(jsonPath("$.errors[0].firstLine", is(5)))
+			.andExpect(jsonPath("$.errors[0].message", is("Unknown SIM 999")));
+		
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].sim.id", is(500)))
+			.andExpect(jsonPath("$[0].sim.country", is("Spain")))
+			.andExpect(jsonPath("$[1].sim.id", is(501)))
+			.andExpect(jsonPath("$[1].sim.status", is("Waiting for activation")));
+	}
+
+	/**
+	 * Test importing a CSV file whose header has quoted and padded column names
+	 * @throws Exception
+	 */
+	@Test
+	final void testImportCsvQuotedHeader() throws Exception {
+		String file = "\uFEFF\"type\", \"id\" ,operatorCode , \"country\",status\n"
+				+ "sim,502,12,Spain,Active\n";
+
+		mvc.perform(post("/api/device/import").contentType("text/csv").content(file))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.records", is(1)))
+			.andExpect(jsonPath("$.imported", is(1)));
+
+		mvc.perform(get("/api/sim/502").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.country", is("Spain")))
+			.andExpect(jsonPath("$.operatorCode", is(12)));
+	}
+
+	/**
+	 * Test importing a CSV file with unknown, repeated or missing columns, which is
+	 * rejected as a whole
+	 * @throws Exception
+	 */
+	@Test
+	final void testImportCsvInvalidHeader() throws Exception {
+		mvc.perform(post("/api/device/import").contentType("text/csv")
+				.content("type,id,operator,country\nsim,503,12,Spain\n"))
+			.andExpect(status().isBadRequest())
+			.andExpect(content().string(startsWith("Invalid CSV header: unknown column 'operator'")));
+		mvc.perform(post("/api/device/import").contentType("text/csv")
+				.content("type,id,id\nsim,503,504\n"))
+			.andExpect(status().isBadRequest())
+			.andExpect(content().string("Invalid CSV header: column 'id' is repeated"));
+		mvc.perform(post("/api/device/import").contentType("text/csv")
+				.content("id,operatorCode,country\n503,12,Spain\n"))
+			.andExpect(status().isBadRequest())
+			.andExpect(content().string("Invalid CSV header: missing column 'type'"));
+		mvc.perform(post("/api/device/import").contentType("text/csv")
+				.content("type,,id\nsim,,503\n"))
+			.andExpect(status().isBadRequest())
+			.andExpect(content().string(startsWith("Invalid CSV header: empty column name at position 2")));
+
+		assertFalse(sims.existsById(503L));
+	}
+
+	/**
+	 * Test importing a NDJSON file, in batches of two records
+	 * 
+	 * The SIM and an existing device are updated. A malformed line is rejected, and the
+	 * last batch is rejected as a whole because it assigns the same SIM twice
+	 * @throws Exception
+	 */
+	@Test
+	final void testImportNdjson() throws Exception {
+		sims.save(new Sim(600, 10, Country.SPAIN, SimStatus.BLOCKED));
+		Device device = devices.save(new Device(null, null, null));
+		
+		String file = "{\"type\": \"sim\", \"id\": 600, \"operatorCode\": 30, \"country\": \"UK\", \"status\": \"Active\"}\n"
+				+ "not json\n"
+				+ "{\"type\": \"device\", \"id\": " + device.getId() + ", \"status\": \"READY\", \"temperature\": 1.5, \"simId\": 600}\n"
+				+ "{\"type\": \"device\", \"status\": \"READY\", \"temperature\": 2.5, \"simId\": 600}\n";
+		
+		mvc.perform(post("/api/device/import").contentType(MediaType.APPLICATION_NDJSON).content(file))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.records", is(4)))
+			.andExpect(jsonPath("$.imported", is(1)))
+			.andExpect(jsonPath("$.rejected", is(3)))
+			.andExpect(jsonPath("$.errors", hasSize(2)))
+			.andExpect(jsonPath("$.errors[0].firstLine", is(2)))
+			.andExpect(jsonPath("$.errors[0].message", is("Malformed record")))
+			.andExpect(jsonPath("$.errors[1].batch", is(2)))
+			.andExpect(jsonPath("$.errors[1].firstLine", is(3)))
+			.andExpect(jsonPath("$.errors[1].lastLine", is(4)));
+		
+		assertEquals(Country.UK, sims.findById(600L).get().getCountry());
+		assertEquals(null, devices.findById(device.getId()).get().getSim());
+		assertEquals(1, devices.count());
+	}
+
+	/**
+	 * Test modifying a batch of devices
+	 * 
+	 * Some of the updates are valid (including two devices swapping their SIMs) and
+	 * some are not, which must not prevent the others
+	 * @throws Exception
+	 */
+	@Test
+	final void testModifyDevices() throws Exception {
+		Sim simA = sims.save(new Sim(100, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Sim simB = sims.save(new Sim(200, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Sim simC = sims.save(new Sim(300, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Sim simD = sims.save(new Sim(400, 123, Country.SPAIN, SimStatus.ACTIVE));
+		
+		Device d1 = devices.save(new Device(null, null, null));
+		Device d2 = devices.save(new Device(DeviceStatus.READY, 10f, simB));
+		Device d3 = devices.save(new Device(null, null, null));
+		Device d6 = devices.save(new Device(DeviceStatus.READY, 10f, simC));
+		Device d7 = devices.save(new Device(DeviceStatus.READY, 10f, simD));
+		
+		String updates = "["
+				+ update(d1.getId(), 100) + ", "
+				+ update(d3.getId(), 200) + ", "
+				+ update(100000, 100) + ", "
+				+ update(d1.getId() + 100000, 999) + ", "
+				+ update(d6.getId(), 400) + ", "
+				+ update(d7.getId(), 300) + "]";
+		
+		mvc.perform(put("/api/device")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(updates))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(6)))
+			.andExpect(jsonPath("$[0].status", is(200)))
+			.andExpect(jsonPath("$[1].status", is(409)))
+			.andExpect(jsonPath("$[2].status", is(404)))
+			.andExpect(jsonPath("$[3].status", is(404)))
+			.andExpect(jsonPath("$[4].status", is(200)))
+			.andExpect(jsonPath("$[5].status", is(200)));
+		
+		assertEquals(simA.getId(), devices.findById(d1.getId()).get().getSim().getId());
+		assertEquals(simB.getId(), devices.findById(d2.getId()).get().getSim().getId());
+		assertEquals(null, devices.findById(d3.getId()).get().getSim());
+		assertEquals(simD.getId(), devices.findById(d6.getId()).get().getSim().getId());
+		assertEquals(simC.getId(), devices.findById(d7.getId()).get().getSim().getId());
+	}
+
+	/**
+	 * @param id    Device ID
+	 * @param simId SIM ID
+	 * @return The JSON of a device update, ready for sale
+	 */
+	private static String update(long id, long simId) {
+		return String.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 23.4, \"sim\": {\"id\": %d}}",
+				id, simId);
+	}
+
+	/**
+	 * Test deleting a device issues a single statement
+	 * @throws Exception
+	 */
+	@Test
+	final void testDeleteDeviceSingleStatement() throws Exception {
+		Device toRemove = devices.save(new Device(DeviceStatus.READY, 12.3f, null));
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		
+		mvc.perform(delete("/api/device/" + toRemove.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+		
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertFalse(devices.existsById(toRemove.getId()));
+	}
+
+	/**
+	 * Test the conditional update of a device, using its ETag
+	 * @throws Exception
+	 */
+	@Test
+	final void testModifyDeviceIfMatch() throws Exception {
+		Sim sim1 = sims.save(new Sim(1332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		Device toModify = devices.save(new Device(null, 12.3f, null));
+		String newValue = String
+				.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 23.4, \"sim\": {\"id\": 1332}}", 
+						toModify.getId());
+		
+		// The device ETag is its version
+		mvc.perform(get("/api/device/" + toModify.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(header().string("ETag", "\"0\""))
+			.andExpect(jsonPath("$.temperature", is(12.3)));
+		
+		// Updated with the current ETag, a new one is returned
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"0\"")
+				.content(newValue))
+			.andExpect(status().isNoContent())
+			.andExpect(header().string("ETag", "\"1\""));
+		assertEquals(1, statistics.getPrepareStatementCount());
+		
+		// The old ETag is not valid anymore
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"0\"")
+				.content(newValue))
+			.andExpect(status().isPreconditionFailed());
+		
+		// Unknown device or SIM, and wrong ETag
+		mvc.perform(put("/api/device/100000")
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"0\"")
+				.content(newValue))
+			.andExpect(status().isNotFound());
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"1\"")
+				.content(newValue.replace("1332", "9999")))
+			.andExpect(status().isNotFound());
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "abc")
+				.content(newValue))
+			.andExpect(status().isBadRequest());
+		
+		Device stored = devices.findById(toModify.getId()).get();
+		assertEquals(1, stored.getVersion());
+		assertEquals(DeviceStatus.READY, stored.getStatus());
+		assertEquals(sim1.getId(), stored.getSim().getId());
+		
+		// An unconditional update also returns the new ETag
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(newValue.replace("23.4", "25.4")))
+			.andExpect(status().isOk())
+			.andExpect(header().string("ETag", "\"2\""));
+	}
+
+	/**
+	 * Test modifying a device with a SIM assigned to another device
+	 * @throws Exception
+	 */
+	@Test
+	final void testModifyDeviceSimConflict() throws Exception {
+		Sim sim1 = sims.save(new Sim(1332, 123, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		Device toModify = devices.save(new Device(null, 12.3f, null));
+		String newValue = String
+				.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 23.4, \"sim\": {\"id\": 1332}}", 
+						toModify.getId());
+		
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"0\"")
+				.content(newValue))
+			.andExpect(status().isConflict());
+		mvc.perform(put("/api/device/" + toModify.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(newValue))
+			.andExpect(status().isConflict());
+	}
 }
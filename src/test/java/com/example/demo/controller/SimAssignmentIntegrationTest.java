@@ -0,0 +1,209 @@
+package com.example.demo.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryCounters;
+import com.example.demo.service.SimRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Integration test over the SIM assignment from the pool of free SIMs.
+ * 
+ * The batches of the pool are small, so the assignments refill it many times
+ * while they run.
+ */
+@SpringBootTest(properties = "sim.pool.batch-size=16")
+@AutoConfigureMockMvc
+class SimAssignmentIntegrationTest {
+
+	private static final int THREADS = 32;
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private InventoryCounters counters;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	/**
+	 * Clear the repositories
+	 */
+	@BeforeEach
+	final void clearDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+	}
+
+	/**
+	 * Many devices are assigned a SIM concurrently. Every assignment succeeds,
+	 * with a different free SIM of the country, and no integrity violation
+	 * @throws Exception
+	 */
+	@Test
+	final void testAssignSimConcurrently() throws Exception {
+		List<Sim> newSims = new ArrayList<>();
+		for (int i = 0; i < 600; i++) {
+			SimStatus status = i % 10 == 9 ? SimStatus.BLOCKED : SimStatus.ACTIVE;
+			newSims.add(new Sim(10000 + i, 10, i % 2 == 0 ? Country.UK : Country.SPAIN, status));
+		}
+		sims.saveAll(newSims);
+		// Some SIMs of the country are already assigned
+		List<Device> assigned = new ArrayList<>();
+		for (int i = 0; i < 100; i += 4) {
+			assigned.add(new Device(DeviceStatus.READY, 20f, newSims.get(i)));
+		}
+		devices.saveAll(assigned);
+		List<Device> unassigned = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			unassigned.add(new Device(DeviceStatus.READY, 20f, null));
+		}
+		devices.saveAll(unassigned);
+		counters.refresh();
+
+		List<MockHttpServletResponse> responses = assignConcurrently(unassigned, Country.UK);
+
+		Set<Long> simIds = new HashSet<>();
+		for (MockHttpServletResponse response : responses) {
+			assertEquals(200, response.getStatus());
+			Device device = mapper.readValue(response.getContentAsString(), Device.class);
+			assertEquals(Country.UK, device.getSim().getCountry());
+			assertEquals(SimStatus.ACTIVE, device.getSim().getStatus());
+			simIds.add(device.getSim().getId());
+		}
+		assertEquals(unassigned.size(), simIds.size());
+		assigned.forEach(device -> assertEquals(false, simIds.contains(device.getSim().getId())));
+		assertEquals(assigned.size() + unassigned.size(), devices.findAll().stream().filter(d -> d.getSim() != null)
+				.count());
+		assertEquals(devices.countForSale(), counters.get().getSellable());
+	}
+
+	/**
+	 * When there are more devices than free SIMs, the rest get 409 CONFLICT
+	 * @throws Exception
+	 */
+	@Test
+	final void testAssignSimExhausted() throws Exception {
+		for (int i = 0; i < 5; i++) {
+			sims.save(new Sim(10000 + i, 10, Country.ITALY, SimStatus.WAITING_FOR_ACTIVATION));
+		}
+		List<Device> unassigned = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			unassigned.add(devices.save(new Device(DeviceStatus.READY, 20f, null)));
+		}
+
+		Map<Integer, Long> statuses = assignConcurrently(unassigned, Country.ITALY).stream()
+				.collect(Collectors.groupingBy(MockHttpServletResponse::getStatus, Collectors.counting()));
+		assertEquals(5, statuses.get(200));
+		assertEquals(35, statuses.get(409));
+		assertEquals(2, statuses.size());
+	}
+
+	/**
+	 * The SIMs assigned or released after they were read by the pool are skipped
+	 * or found again
+	 * @throws Exception
+	 */
+	@Test
+	final void testAssignSimStalePool() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			sims.save(new Sim(10000 + i, 10, Country.GERMANY, SimStatus.ACTIVE));
+		}
+		List<Device> unassigned = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			unassigned.add(devices.save(new Device(DeviceStatus.READY, 20f, null)));
+		}
+		Device other = devices.save(new Device(DeviceStatus.READY, 20f, null));
+
+		assertEquals(10000, assign(unassigned.get(0), Country.GERMANY).getSim().getId());
+		// Assigned directly, while it is in the pool
+		mvc.perform(put("/api/device/" + other.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(String.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 20, \"sim\": {\"id\": 10001}}",
+						other.getId())))
+			.andExpect(status().isOk());
+		assertEquals(10002, assign(unassigned.get(1), Country.GERMANY).getSim().getId());
+
+		// Released after the pool was read
+		mvc.perform(delete("/api/device/" + unassigned.get(0).getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+		assertEquals(10000, assign(unassigned.get(2), Country.GERMANY).getSim().getId());
+		mvc.perform(post("/api/device/" + unassigned.get(3).getId() + "/assign-sim?country=GERMANY"))
+			.andExpect(status().isConflict());
+		mvc.perform(post("/api/device/100000/assign-sim?country=GERMANY"))
+			.andExpect(status().isNotFound());
+	}
+
+	/**
+	 * @return The device after assigning it a SIM, of the country given by its
+	 *         label in the JSON
+	 */
+	private Device assign(Device device, Country country) throws Exception {
+		String body = mvc.perform(post("/api/device/" + device.getId() + "/assign-sim?country=" + country.getLabel()))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		return mapper.readValue(body, Device.class);
+	}
+
+	/**
+	 * Assigns a SIM to each device, from {@link #THREADS} threads at once
+	 * 
+	 * @return The responses, in the order of the devices
+	 */
+	private List<MockHttpServletResponse> assignConcurrently(List<Device> targets, Country country)
+			throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			Function<Device, Callable<MockHttpServletResponse>> assignment = device -> () -> mvc
+					.perform(post("/api/device/" + device.getId() + "/assign-sim?country=" + country.name()))
+					.andReturn().getResponse();
+			List<Future<MockHttpServletResponse>> futures = executor
+					.invokeAll(targets.stream().map(assignment).collect(Collectors.toList()));
+			List<MockHttpServletResponse> responses = new ArrayList<>();
+			for (Future<MockHttpServletResponse> future : futures) {
+				responses.add(future.get());
+			}
+			return responses;
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
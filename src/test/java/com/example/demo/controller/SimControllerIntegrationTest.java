@@ -0,0 +1,148 @@
+package com.example.demo.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.SimRepository;
+
+/**
+ * Integration test over the SIM registry endpoints
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class SimControllerIntegrationTest {
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	/**
+	 * Creates four SIMs, two of them assigned to a device
+	 */
+	@BeforeEach
+	final void initDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		Sim sim1 = sims.save(new Sim(1332, 10, Country.UK, SimStatus.ACTIVE));
+		sims.save(new Sim(2134, 10, Country.UK, SimStatus.ACTIVE));
+		sims.save(new Sim(3134, 11, Country.UK, SimStatus.BLOCKED));
+		Sim sim4 = sims.save(new Sim(4134, 10, Country.ITALY, SimStatus.ACTIVE));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim4));
+	}
+
+	/**
+	 * Test the lookup by ID
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindSim() throws Exception {
+		mvc.perform(get("/api/sim/3134"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.id", is(3134)))
+			.andExpect(jsonPath("$.operatorCode", is(11)))
+			.andExpect(jsonPath("$.country", is("UK")))
+			.andExpect(jsonPath("$.status", is("Blocked")));
+		mvc.perform(get("/api/sim/9999"))
+			.andExpect(status().isNotFound());
+	}
+
+	/**
+	 * Test the multi-get, which skips the unknown and empty IDs
+	 * @throws Exception
+	 */
+	@Test
+	final void testFindSims() throws Exception {
+		mvc.perform(get("/api/sim?ids=4134,9999,1332"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].id", is(1332)))
+			.andExpect(jsonPath("$[1].id", is(4134)));
+		mvc.perform(get("/api/sim?ids="))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(0)));
+		mvc.perform(get("/api/sim?ids=,2134,"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(1)))
+			.andExpect(jsonPath("$[0].id", is(2134)));
+	}
+
+	/**
+	 * Test the search by each filter, paginated by ID
+	 * @throws Exception
+	 */
+	@Test
+	final void testSearchSims() throws Exception {
+		mvc.perform(get("/api/sim?status=ACTIVE&country=UK&operator=10"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].id", is(1332)))
+			.andExpect(jsonPath("$.items[1].id", is(2134)))
+			.andExpect(jsonPath("$.next", nullValue()));
+		// By the labels of the JSON too
+		mvc.perform(get("/api/sim?status=Active&country=Italy"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].id", is(4134)));
+		mvc.perform(get("/api/sim?status=Blocked&country=UK"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].id", is(3134)));
+		mvc.perform(get("/api/sim").param("status", "Waiting for activation"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(0)));
+		mvc.perform(get("/api/sim?unassigned=true"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].id", is(2134)))
+			.andExpect(jsonPath("$.items[1].id", is(3134)));
+		mvc.perform(get("/api/sim?unassigned=false&operator=10"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].id", is(1332)))
+			.andExpect(jsonPath("$.items[1].id", is(4134)));
+
+		mvc.perform(get("/api/sim?limit=2"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.next", is(2134)));
+		mvc.perform(get("/api/sim?limit=2&after=2134"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(2)))
+			.andExpect(jsonPath("$.items[0].id", is(3134)))
+			.andExpect(jsonPath("$.items[1].id", is(4134)));
+	}
+
+	/**
+	 * Test the search with wrong parameters
+	 * @throws Exception
+	 */
+	@Test
+	final void testSearchSimsInvalid() throws Exception {
+		mvc.perform(get("/api/sim?limit=0"))
+			.andExpect(status().isBadRequest());
+		mvc.perform(get("/api/sim?status=LOST"))
+			.andExpect(status().isBadRequest());
+	}
+}
@@ -0,0 +1,214 @@
+package com.example.demo.controller;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryCounters;
+import com.example.demo.service.InventoryWriter;
+import com.example.demo.service.SimRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Integration test over the statistics endpoint.
+ * 
+ * After each write, the counters updated incrementally must be the same as
+ * seeding them again from the database. The transactions of more than 5 rows
+ * seed them again.
+ */
+@SpringBootTest(properties = "inventory.changes.max-rows=5")
+@AutoConfigureMockMvc
+class StatsControllerIntegrationTest {
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private InventoryCounters counters;
+
+	@Autowired
+	private InventoryWriter writer;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	private Device sellable;
+
+	private Device waiting;
+
+	/**
+	 * Creates two SIMs in Spain and one in Italy, with two devices for sale, and
+	 * seeds the counters
+	 */
+	@BeforeEach
+	final void initDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		Sim sim1 = sims.save(new Sim(1332, 10, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		Sim sim2 = sims.save(new Sim(2134, 11, Country.SPAIN, SimStatus.ACTIVE));
+		Sim sim3 = sims.save(new Sim(4134, 20, Country.ITALY, SimStatus.ACTIVE));
+		waiting = devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		sellable = devices.save(new Device(DeviceStatus.READY, 15.3f, sim3));
+		devices.save(new Device(DeviceStatus.READY, 95f, sim2));
+		devices.save(new Device(null, null, null));
+		counters.refresh();
+	}
+
+	/**
+	 * Test the statistics of the initial data
+	 * @throws Exception
+	 */
+	@Test
+	final void testStats() throws Exception {
+		mvc.perform(get("/api/stats"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.sims", is(3)))
+			.andExpect(jsonPath("$.devices", is(4)))
+			.andExpect(jsonPath("$.sellable", is(2)))
+			.andExpect(jsonPath("$.simsByStatus.Active", is(2)))
+			.andExpect(jsonPath("$.simsByStatus['Waiting for activation']", is(1)))
+			.andExpect(jsonPath("$.simsByCountry.Spain", is(2)))
+			.andExpect(jsonPath("$.simsByCountry.Italy", is(1)))
+			.andExpect(jsonPath("$.simsByOperator.10", is(1)))
+			.andExpect(jsonPath("$.sellableByCountry.Spain", is(1)))
+			.andExpect(jsonPath("$.sellableByCountry.Italy", is(1)))
+			.andExpect(jsonPath("$.sellableByOperator.20", is(1)));
+	}
+
+	/**
+	 * Test the counters follow the updates and deletions of devices
+	 * @throws Exception
+	 */
+	@Test
+	final void testStatsAfterModifyAndDelete() throws Exception {
+		// Too hot to be sold
+		mvc.perform(put("/api/device/" + sellable.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"status\": \"READY\", \"temperature\": 90, \"sim\": {\"id\": 4134}}"))
+			.andExpect(status().isOk());
+		assertCounters();
+		mvc.perform(get("/api/stats"))
+			.andExpect(jsonPath("$.sellable", is(1)))
+			.andExpect(jsonPath("$.sellableByCountry.Italy").doesNotExist());
+
+		// Back for sale, with a conditional update
+		mvc.perform(put("/api/device/" + sellable.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "\"1\"")
+				.content("{\"status\": \"READY\", \"temperature\": 20, \"sim\": {\"id\": 4134}}"))
+			.andExpect(status().isNoContent());
+		assertCounters();
+
+		mvc.perform(delete("/api/device/" + waiting.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+		assertCounters();
+		mvc.perform(get("/api/stats"))
+			.andExpect(jsonPath("$.devices", is(3)))
+			.andExpect(jsonPath("$.sellable", is(1)));
+
+		// Deleted twice, nothing changes
+		mvc.perform(delete("/api/device/" + waiting.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isNotFound());
+		assertCounters();
+	}
+
+	/**
+	 * Test the counters follow batch updates moving SIMs between devices, and
+	 * imports
+	 * @throws Exception
+	 */
+	@Test
+	final void testStatsAfterBatchUpdateAndImport() throws Exception {
+		String batch = String.format("[{\"id\": %d, \"status\": \"READY\", \"temperature\": 1, \"sim\": {\"id\": 4134}},"
+				+ " {\"id\": %d, \"status\": \"READY\", \"temperature\": 2, \"sim\": {\"id\": 1332}}]",
+				waiting.getId(), sellable.getId());
+		mvc.perform(put("/api/device").contentType(MediaType.APPLICATION_JSON).content(batch))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].status", is(200)))
+			.andExpect(jsonPath("$[1].status", is(200)));
+		assertCounters();
+
+		String file = "{\"type\": \"sim\", \"id\": 4134, \"operatorCode\": 30, \"country\": \"UK\", \"status\": \"Blocked\"}\n"
+				+ "{\"type\": \"sim\", \"id\": 700, \"operatorCode\": 30, \"country\": \"UK\", \"status\": \"Active\"}\n"
+				+ "{\"type\": \"device\", \"status\": \"READY\", \"temperature\": 2.5, \"simId\": 700}\n";
+		mvc.perform(post("/api/device/import").contentType(MediaType.APPLICATION_NDJSON).content(file))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.imported", is(3)));
+		assertCounters();
+		mvc.perform(get("/api/stats"))
+			.andExpect(jsonPath("$.sims", is(4)))
+			.andExpect(jsonPath("$.sellableByCountry.UK", is(2)))
+			.andExpect(jsonPath("$.simsByStatus.Blocked", is(1)));
+	}
+
+	/**
+	 * Test the counters follow the bulk inserts of the database initialization
+	 */
+	@Test
+	final void testStatsAfterInsert() throws Exception {
+		Sim sim = new Sim(800, 40, Country.GERMANY, SimStatus.ACTIVE);
+		writer.insert(Arrays.asList(sim), Arrays.asList(new Device(DeviceStatus.READY, 0f, sim),
+				new Device(null, null, null)));
+		assertCounters();
+		mvc.perform(get("/api/stats"))
+			.andExpect(jsonPath("$.devices", is(6)))
+			.andExpect(jsonPath("$.sellableByCountry.Germany", is(1)));
+	}
+
+	/**
+	 * Test the counters are seeded again after a transaction changing more rows
+	 * than they capture
+	 */
+	@Test
+	final void testStatsAfterLargeInsert() throws Exception {
+		List<Sim> newSims = new ArrayList<>();
+		List<Device> newDevices = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Sim sim = new Sim(900 + i, 40, Country.GERMANY, SimStatus.ACTIVE);
+			newSims.add(sim);
+			newDevices.add(new Device(DeviceStatus.READY, 0f, sim));
+		}
+		writer.insert(newSims, newDevices);
+		mvc.perform(get("/api/stats"))
+			.andExpect(jsonPath("$.devices", is(7)))
+			.andExpect(jsonPath("$.sellableByCountry.Germany", is(3)));
+		assertCounters();
+	}
+
+	/**
+	 * Checks the counters are the same as seeding them again
+	 */
+	private void assertCounters() throws Exception {
+		String incremental = mapper.writeValueAsString(counters.get());
+		counters.refresh();
+		assertEquals(mapper.writeValueAsString(counters.get()), incremental);
+	}
+}
@@ -0,0 +1,188 @@
+package com.example.demo.metrics;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.system.CapturedOutput;
+import org.springframework.boot.test.system.OutputCaptureExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.SimRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Integration test of the per-request metrics and the slow query log. The
+ * metrics export is enabled, so they are also published for Prometheus
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+@ExtendWith(OutputCaptureExtension.class)
+class RequestMetricsIntegrationTest {
+
+	private static final String FOR_SALE = "/api/device/available-for-sale";
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private SlowQueryLogger slowQueryLogger;
+
+	@Autowired
+	private RequestMetricsFilter filter;
+
+	/**
+	 * Two devices for sale, and the meters of the previous tests removed
+	 */
+	@BeforeEach
+	final void initDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+		Sim sim1 = sims.save(new Sim(1332, 123, Country.SPAIN, SimStatus.ACTIVE));
+		Sim sim2 = sims.save(new Sim(2134, 123, Country.SPAIN, SimStatus.ACTIVE));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		devices.save(new Device(DeviceStatus.READY, 15.3f, sim2));
+		registry.getMeters().stream().filter(meter -> meter.getId().getName().startsWith("http.server"))
+				.forEach(registry::remove);
+	}
+
+	/**
+	 * Rows and bytes are recorded for the listing, also when served from the
+	 * cache, and the Hibernate work only when it is read from the database
+	 * @throws Exception
+	 */
+	@Test
+	final void testListingMetrics() throws Exception {
+		int length = mvc.perform(get(FOR_SALE).contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsByteArray().length;
+		mvc.perform(get(FOR_SALE).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+
+		DistributionSummary rows = summary("http.server.response.rows");
+		assertEquals(2, rows.count());
+		assertEquals(4, rows.totalAmount());
+		assertEquals(2 * length, summary("http.server.response.bytes").totalAmount());
+		DistributionSummary statements = summary("http.server.requests.statements");
+		assertEquals(2, statements.count());
+		assertEquals(1, statements.totalAmount());
+		assertEquals(1, registry.get("http.server.requests.jdbc").tag("uri", FOR_SALE).timer().count() / 2);
+	}
+
+	/**
+	 * Rows are counted when streaming, and entities loaded are counted
+	 * @throws Exception
+	 */
+	@Test
+	final void testStreamAndEntityMetrics() throws Exception {
+		mvc.perform(get(FOR_SALE).contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_NDJSON))
+				.andExpect(status().isOk());
+		assertEquals(2, summary("http.server.response.rows").totalAmount());
+
+		long id = devices.findAll().get(0).getId();
+		mvc.perform(get("/api/device/" + id).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+		assertTrue(registry.get("http.server.requests.entity.loads").tag("uri", "/api/device/{id}").summary()
+				.totalAmount() >= 1);
+	}
+
+	/**
+	 * The metrics are published in the Prometheus format, with percentiles
+	 * @throws Exception
+	 */
+	@Test
+	final void testPrometheus() throws Exception {
+		mvc.perform(get(FOR_SALE).contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+		mvc.perform(get("/actuator/prometheus"))
+			.andExpect(status().isOk())
+			.andExpect(content().string(containsString("http_server_response_rows_count{method=\"GET\",uri=\""
+					+ FOR_SALE + "\",}")))
+			.andExpect(content().string(containsString("quantile=\"0.99\"")))
+			.andExpect(content().string(containsString("hikaricp_connections_acquire")))
+			.andExpect(content().string(containsString("hibernate_statements_total")));
+	}
+
+	/**
+	 * With a zero threshold, every repository call is logged with its JPQL and
+	 * parameters, summarized if large, and the streams once closed
+	 * @throws Exception
+	 */
+	@Test
+	final void testSlowQueryLog(CapturedOutput output) throws Exception {
+		long threshold = (Long) ReflectionTestUtils.getField(slowQueryLogger, "thresholdMs");
+		ReflectionTestUtils.setField(slowQueryLogger, "thresholdMs", 0L);
+		try {
+			mvc.perform(get("/api/device/waiting-activation").param("limit", "10").param("after", "5")
+					.contentType(MediaType.APPLICATION_JSON)).andExpect(status().isOk());
+			mvc.perform(get("/api/sim").param("ids", LongStream.rangeClosed(1, 20).mapToObj(Long::toString)
+					.collect(Collectors.joining(",")))).andExpect(status().isOk());
+			mvc.perform(get(FOR_SALE).contentType(MediaType.APPLICATION_JSON).accept(MediaType.APPLICATION_NDJSON))
+					.andExpect(status().isOk());
+		} finally {
+			ReflectionTestUtils.setField(slowQueryLogger, "thresholdMs", threshold);
+		}
+		assertTrue(output.getOut().contains("DeviceRepository.findViewBySimStatusAfter \"SELECT new"));
+		assertTrue(output.getOut().contains("parameters [Waiting for activation, 5, Page request"));
+		// Large parameters are summarized
+		assertTrue(output.getOut().contains("parameters [[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, ... (20 elements)]]"));
+		// Streams are logged when closed
+		assertTrue(output.getOut().contains("DeviceRepository.streamViewForSale"));
+	}
+
+	/**
+	 * Test the bytes written through the writer of the response are counted as
+	 * encoded
+	 * @throws Exception
+	 */
+	@Test
+	final void testWriterBytes() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		response.setCharacterEncoding("UTF-8");
+		filter.doFilter(new MockHttpServletRequest("GET", "/unmapped"), response,
+				(request, filtered) -> filtered.getWriter().print("Grüße €"));
+
+		assertEquals("Grüße €", response.getContentAsString());
+		assertEquals(11, registry.get("http.server.response.bytes").tag("uri", "UNKNOWN").summary().totalAmount());
+	}
+
+	private DistributionSummary summary(String name) {
+		return registry.get(name).tag("uri", FOR_SALE).summary();
+	}
+}
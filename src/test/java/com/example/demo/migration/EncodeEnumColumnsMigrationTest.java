@@ -0,0 +1,62 @@
+package com.example.demo.migration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Migrates a database with the labels stored as text, as created by previous
+ * versions
+ */
+public class EncodeEnumColumnsMigrationTest {
+
+	private static final String URL = "jdbc:h2:mem:legacy;DB_CLOSE_DELAY=-1";
+
+	@Test
+	void testLabelsEncoded() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+				Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE sim (id BIGINT PRIMARY KEY, operator_code INT NOT NULL, "
+					+ "country VARCHAR(255), status VARCHAR(255))");
+			statement.execute("CREATE INDEX idx_sim_status ON sim(status)");
+			statement.execute("CREATE TABLE device (id BIGINT PRIMARY KEY, status VARCHAR(255), temperature REAL, "
+					+ "sim_id BIGINT UNIQUE REFERENCES sim(id))");
+			statement.execute("INSERT INTO sim VALUES (1, 10, 'Spain', 'Waiting for activation'), "
+					+ "(2, 20, 'UK', 'Blocked'), (3, 30, 'Atlantis', 'Lost')");
+			statement.execute("INSERT INTO device VALUES (1, 'READY', 12.5, 1), (2, NULL, NULL, NULL)");
+
+			Flyway.configure().dataSource(URL, "sa", "").locations("classpath:com/example/demo/migration")
+					.baselineOnMigrate(true).baselineVersion("1").load().migrate();
+
+			try (ResultSet sims = statement.executeQuery("SELECT country, status FROM sim ORDER BY id")) {
+				sims.next();
+				assertEquals(Country.SPAIN.getCode(), sims.getShort(1));
+				assertEquals(SimStatus.WAITING_FOR_ACTIVATION.getCode(), sims.getShort(2));
+				sims.next();
+				assertEquals(Country.UK.getCode(), sims.getShort(1));
+				assertEquals(SimStatus.BLOCKED.getCode(), sims.getShort(2));
+				sims.next();
+				assertNull(sims.getObject(1));
+				assertNull(sims.getObject(2));
+			}
+			try (ResultSet devices = statement.executeQuery("SELECT status FROM device ORDER BY id")) {
+				devices.next();
+				assertEquals(DeviceStatus.READY.getCode(), devices.getShort(1));
+				devices.next();
+				assertNull(devices.getObject(1));
+			}
+		}
+	}
+}
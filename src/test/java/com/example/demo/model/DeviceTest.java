@@ -15,8 +15,8 @@ class DeviceTest {
 	 */
 	@Test
 	final void testToString() {
-		Sim sim = new Sim(1234, 8876, "UK", "Active");
-		Device device = new Device("READY", 45f, sim);
+		Sim sim = new Sim(1234, 8876, Country.UK, SimStatus.ACTIVE);
+		Device device = new Device(DeviceStatus.READY, 45f, sim);
 
 		String str = device.toString();
 
@@ -15,7 +15,7 @@ class SimTest {
 	 */
 	@Test
 	final void testToString() {
-		Sim sim = new Sim(52334, 234, "Italy", "Waiting for activation");
+		Sim sim = new Sim(52334, 234, Country.ITALY, SimStatus.WAITING_FOR_ACTIVATION);
 
 		String str = sim.toString();
 
@@ -0,0 +1,171 @@
+package com.example.demo.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.InventoryCounters;
+import com.example.demo.service.SimRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Integration test over the reactive endpoints. They must return the same
+ * devices as the servlet ones, and keep the counters up to date.
+ */
+@SpringBootTest
+class ReactiveDeviceHandlerIntegrationTest {
+
+	@Autowired
+	private RouterFunction<ServerResponse> routes;
+
+	@Autowired
+	private HandlerStrategies strategies;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private InventoryCounters counters;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	private WebTestClient client;
+
+	private Device sellable;
+
+	private Device waiting;
+
+	/**
+	 * Creates two SIMs waiting for activation and one active, with two devices
+	 * for sale
+	 */
+	@BeforeEach
+	final void initDb() {
+		client = WebTestClient.bindToRouterFunction(routes).handlerStrategies(strategies).build();
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		Sim sim1 = sims.save(new Sim(1332, 10, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		Sim sim2 = sims.save(new Sim(2134, 11, Country.UK, SimStatus.WAITING_FOR_ACTIVATION));
+		Sim sim3 = sims.save(new Sim(4134, 20, Country.ITALY, SimStatus.ACTIVE));
+		waiting = devices.save(new Device(DeviceStatus.READY, 95f, sim1));
+		sellable = devices.save(new Device(DeviceStatus.READY, 15.3f, sim3));
+		devices.save(new Device(DeviceStatus.READY, -3f, sim2));
+		devices.save(new Device(null, null, null));
+		counters.refresh();
+	}
+
+	/**
+	 * The listings are streamed as NDJSON, with the same devices and layout as
+	 * the servlet endpoints
+	 */
+	@Test
+	final void testListings() throws Exception {
+		assertEquals(toNdjson(devices.findViewForSale()), client.get()
+				.uri("/api/reactive/device/available-for-sale").exchange().expectStatus().isOk().expectHeader()
+				.contentType(MediaType.APPLICATION_NDJSON).expectBody(String.class).returnResult().getResponseBody());
+		assertEquals(toNdjson(devices.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION)),
+				client.get().uri("/api/reactive/device/waiting-activation").exchange().expectStatus().isOk()
+						.expectBody(String.class).returnResult().getResponseBody());
+	}
+
+	/**
+	 * Updates, conditional or not, return the new ETag and keep the counters
+	 */
+	@Test
+	final void testModifyDevice() throws Exception {
+		String etag = client.put().uri("/api/reactive/device/" + sellable.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"status\": \"READY\", \"temperature\": 90, \"sim\": {\"id\": 4134}}").exchange()
+				.expectStatus().isOk().expectBody().jsonPath("$.temperature").isEqualTo(90.0)
+				.jsonPath("$.sim.country").isEqualTo("Italy").returnResult().getResponseHeaders().getETag();
+		assertEquals("\"1\"", etag);
+		assertCounters();
+		assertFalse(devices.findViewForSale().stream().anyMatch(d -> d.getId() == sellable.getId()));
+
+		// Back for sale, only if not modified since
+		client.put().uri("/api/reactive/device/" + sellable.getId()).header("If-Match", etag)
+				.contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"status\": \"READY\", \"temperature\": 20, \"sim\": {\"id\": 4134}}").exchange()
+				.expectStatus().isNoContent().expectHeader().valueEquals("ETag", "\"2\"");
+		assertCounters();
+		assertTrue(devices.findViewForSale().stream().anyMatch(d -> d.getId() == sellable.getId()));
+
+		client.put().uri("/api/reactive/device/" + sellable.getId()).header("If-Match", etag)
+				.contentType(MediaType.APPLICATION_JSON).bodyValue("{\"status\": \"READY\", \"temperature\": 30}")
+				.exchange().expectStatus().isEqualTo(412);
+		assertEquals(2, devices.findById(sellable.getId()).get().getVersion());
+	}
+
+	/**
+	 * Missing devices and SIMs are not found, and assigned SIMs are a conflict.
+	 * The failed writes do not hold back the publication of the next ones.
+	 */
+	@Test
+	final void testModifyDeviceErrors() throws Exception {
+		client.put().uri("/api/reactive/device/100000").contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"status\": \"READY\", \"temperature\": 20}").exchange().expectStatus().isNotFound();
+		client.put().uri("/api/reactive/device/" + sellable.getId()).contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"status\": \"READY\", \"temperature\": 20, \"sim\": {\"id\": 9999}}").exchange()
+				.expectStatus().isNotFound();
+		client.put().uri("/api/reactive/device/" + sellable.getId()).contentType(MediaType.APPLICATION_JSON)
+				.bodyValue("{\"status\": \"READY\", \"temperature\": 20, \"sim\": {\"id\": 1332}}").exchange()
+				.expectStatus().isEqualTo(409);
+		client.put().uri("/api/reactive/device/" + sellable.getId()).header("If-Match", "1")
+				.contentType(MediaType.APPLICATION_JSON).bodyValue("{\"status\": \"READY\", \"temperature\": 20}")
+				.exchange().expectStatus().isBadRequest();
+		assertEquals(0, devices.findById(sellable.getId()).get().getVersion());
+		client.delete().uri("/api/reactive/device/" + waiting.getId()).exchange().expectStatus().isOk();
+		assertCounters();
+	}
+
+	/**
+	 * A device is deleted once, and the counters follow
+	 */
+	@Test
+	final void testDeleteDevice() throws Exception {
+		client.delete().uri("/api/reactive/device/" + waiting.getId()).exchange().expectStatus().isOk();
+		assertFalse(devices.existsById(waiting.getId()));
+		assertCounters();
+		client.delete().uri("/api/reactive/device/" + waiting.getId()).exchange().expectStatus().isNotFound();
+	}
+
+	private String toNdjson(List<DeviceView> views) {
+		return views.stream().map(view -> {
+			try {
+				return mapper.writeValueAsString(view) + "\n";
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}).collect(Collectors.joining());
+	}
+
+	private void assertCounters() throws Exception {
+		String incremental = mapper.writeValueAsString(counters.get());
+		counters.refresh();
+		assertEquals(mapper.writeValueAsString(counters.get()), incremental);
+	}
+}
@@ -0,0 +1,205 @@
+package com.example.demo.replica;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+import com.example.demo.service.DeviceRepository;
+import com.example.demo.service.SimRepository;
+
+/**
+ * Integration test of the read/write splitting, with a replica kept in sync
+ * with the primary
+ */
+@SpringBootTest(properties = { "spring.datasource.url=jdbc:h2:mem:replication-primary",
+		"replica.datasource.url=jdbc:h2:mem:replication-replica", "replica.poll-interval-ms=20",
+		"replica.max-lag-ms=2000" })
+@AutoConfigureMockMvc
+class ReplicaIntegrationTest {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private ReplicaSynchronizer synchronizer;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	private DataSource primary;
+
+	@Autowired
+	@Qualifier("replicaDataSource")
+	private DataSource replica;
+
+	private Sim sim;
+
+	private Device device;
+
+	@BeforeEach
+	final void initDb() throws Exception {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		sim = sims.save(new Sim(1332, 10, Country.SPAIN, SimStatus.WAITING_FOR_ACTIVATION));
+		device = devices.save(new Device(DeviceStatus.READY, 12.5f, sim));
+		awaitReplicated();
+	}
+
+	@AfterEach
+	final void resetDelay() {
+		synchronizer.setApplyDelayMs(0);
+	}
+
+	/**
+	 * Inserts, updates and deletes reach the replica
+	 */
+	@Test
+	final void testChangesReplicated() throws Exception {
+		assertEquals(1, countReplica("device WHERE id = " + device.getId() + " AND temperature = 12.5"));
+		assertEquals(1, countReplica("sim WHERE id = 1332"));
+
+		device.update(DeviceStatus.READY, 20f, null);
+		devices.save(device);
+		awaitReplicated();
+		assertEquals(1, countReplica("device WHERE id = " + device.getId() + " AND sim_id IS NULL"));
+
+		devices.deleteById(device.getId());
+		awaitReplicated();
+		assertEquals(0, countReplica("device"));
+	}
+
+	/**
+	 * A SIM moved from a deleted device to a new one, with both changes applied
+	 * together: the replica goes through a state with two devices with the same
+	 * SIM
+	 */
+	@Test
+	final void testSimMovedToNewDevice() throws Exception {
+		synchronizer.setApplyDelayMs(60000);
+		devices.delete(device);
+		Device replacement = devices.save(new Device(DeviceStatus.READY, 20f, sim));
+		synchronizer.setApplyDelayMs(0);
+		awaitReplicated();
+
+		assertEquals(1, countReplica("device WHERE sim_id = 1332 AND id = " + replacement.getId()));
+		assertEquals(0, countReplica("device WHERE id = " + device.getId()));
+	}
+
+	/**
+	 * The GET endpoints read from the replica, and the writes go to the primary
+	 */
+	@Test
+	final void testReadsFromReplica() throws Exception {
+		// Only in the replica
+		executeReplica("INSERT INTO device (id, version, status, temperature) VALUES (999999, 0, 1, 20)");
+		try {
+			mvc.perform(get("/api/device/999999").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.id", is(999999)));
+			mvc.perform(get("/api/device/waiting-activation").param("limit", "10").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[0].id", is((int) device.getId())));
+			mvc.perform(delete("/api/device/999999").contentType(MediaType.APPLICATION_JSON))
+				.andExpect(status().isNotFound());
+		} finally {
+			executeReplica("DELETE FROM device WHERE id = 999999");
+		}
+	}
+
+	/**
+	 * When the replica lags behind more than tolerated, the reads go to the
+	 * primary
+	 */
+	@Test
+	final void testLagTolerance() throws Exception {
+		synchronizer.setApplyDelayMs(60000);
+		Device added = devices.save(new Device(DeviceStatus.READY, 30f, null));
+
+		// Still within the tolerance: the replica does not have it yet
+		mvc.perform(get("/api/device/" + added.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isNotFound());
+
+		await(() -> synchronizer.getLag() > 2000);
+		mvc.perform(get("/api/device/" + added.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+
+		synchronizer.setApplyDelayMs(0);
+		awaitReplicated();
+		assertEquals(1, countReplica("device WHERE id = " + added.getId()));
+	}
+
+	/**
+	 * Waits until the replica has applied every change
+	 */
+	private void awaitReplicated() throws Exception {
+		await(() -> {
+			try {
+				return synchronizer.getLag() == 0 && countPrimaryLog() == 0;
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+	}
+
+	private long countPrimaryLog() throws SQLException {
+		return count(primary, ReplicaSynchronizer.LOG_TABLE);
+	}
+
+	private long countReplica(String from) throws SQLException {
+		return count(replica, from);
+	}
+
+	private static long count(DataSource dataSource, String from) throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+				ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + from)) {
+			rows.next();
+			return rows.getLong(1);
+		}
+	}
+
+	private void executeReplica(String sql) throws SQLException {
+		try (Connection connection = replica.getConnection(); Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+			Thread.sleep(10);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.DeviceChange;
+
+/**
+ * Test of the ring buffer of the device change feed
+ */
+class DeviceChangeFeedTest {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+	/**
+	 * A new subscriber starts with a reset, and then gets the changes published
+	 */
+	@Test
+	void testSubscribe() {
+		DeviceChangeFeed feed = new DeviceChangeFeed(4);
+		DeviceChange change = new DeviceChange(1, 10L, true, false);
+		List<DeviceChangeFeed.Event> events = feed.subscribe(null).take(2)
+				.doOnNext(event -> feed.publish(Collections.singletonList(change))).collectList().block(TIMEOUT);
+
+		assertTrue(events.get(0).isReset());
+		assertFalse(events.get(1).isReset());
+		assertEquals(change, events.get(1).getChange());
+		assertEquals(events.get(0).getSequence() + 1, events.get(1).getSequence());
+	}
+
+	/**
+	 * A subscriber resumes after the last event it received while it is in the
+	 * buffer, and gets a reset otherwise
+	 */
+	@Test
+	void testResume() {
+		DeviceChangeFeed feed = new DeviceChangeFeed(2);
+		long start = feed.subscribe(null).blockFirst(TIMEOUT).getSequence();
+		feed.publish(Arrays.asList(new DeviceChange(1, 10L, true, false), new DeviceChange(2, null, false, false)));
+
+		List<DeviceChangeFeed.Event> events = feed.subscribe(start).take(2).collectList().block(TIMEOUT);
+		assertEquals(1, events.get(0).getChange().getId());
+		assertEquals(2, events.get(1).getChange().getId());
+		assertEquals(start + 2, events.get(1).getSequence());
+
+		// The first change is overwritten
+		feed.publish(Collections.singletonList(new DeviceChange(3, 30L, false, true)));
+		DeviceChangeFeed.Event reset = feed.subscribe(start).blockFirst(TIMEOUT);
+		assertTrue(reset.isReset());
+		assertEquals(start + 3, reset.getSequence());
+		assertEquals(3, feed.subscribe(start + 2).blockFirst(TIMEOUT).getChange().getId());
+
+		// Unknown sequence numbers, e.g. from another run
+		assertTrue(feed.subscribe(start + 100).blockFirst(TIMEOUT).isReset());
+	}
+
+	/**
+	 * More changes than the buffer holds are published as a reset
+	 */
+	@Test
+	void testPublishOverflow() {
+		DeviceChangeFeed feed = new DeviceChangeFeed(2);
+		long start = feed.subscribe(null).blockFirst(TIMEOUT).getSequence();
+		feed.publish(Arrays.asList(new DeviceChange(1, 10L, true, false), new DeviceChange(2, 20L, true, false),
+				new DeviceChange(3, 30L, true, false)));
+
+		DeviceChangeFeed.Event reset = feed.subscribe(start).blockFirst(TIMEOUT);
+		assertTrue(reset.isReset());
+		assertEquals(start + 1, reset.getSequence());
+	}
+}
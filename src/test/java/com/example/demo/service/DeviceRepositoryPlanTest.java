@@ -0,0 +1,142 @@
+package com.example.demo.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Regression test over the query plans of the for-sale queries.
+ * 
+ * The SQL generated by Hibernate is captured and explained by H2. The plan must
+ * use the indexes to get the rows already ordered, instead of scanning and
+ * sorting the tables.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.example.demo.service.SqlCapture")
+class DeviceRepositoryPlanTest {
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	/**
+	 * Fill the repositories with enough rows for the optimizer statistics to be
+	 * meaningful. Half of the devices are for sale.
+	 */
+	@BeforeEach
+	final void fillDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		List<Sim> newSims = new ArrayList<>();
+		List<Device> newDevices = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			Sim sim = new Sim(10000 + i, 10 + i % 5, Country.values()[i % 4], SimStatus.ACTIVE);
+			newSims.add(sim);
+			newDevices.add(i % 2 == 0 ? new Device(DeviceStatus.READY, (float) (i % 150 - 50), sim) : new Device(null, null, null));
+		}
+		sims.saveAll(newSims);
+		devices.saveAll(newDevices);
+		jdbc.execute("ANALYZE");
+		SqlCapture.clear();
+	}
+
+	/**
+	 * The full for-sale projection is read in index order
+	 */
+	@Test
+	final void testFindViewForSalePlan() {
+		devices.findViewForSale();
+
+		String plan = explain(SqlCapture.first(), Long.MIN_VALUE);
+		assertThat(plan, containsString("IDX_DEVICE_SALE"));
+		assertThat(plan, containsString("index sorted"));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * A for-sale page is a range scan in index order
+	 */
+	@Test
+	final void testFindViewForSaleAfterPlan() {
+		devices.findViewForSaleAfter(12000, PageRequest.ofSize(100));
+
+		String plan = explain(SqlCapture.first(), 12000, 100);
+		assertThat(plan, containsString("IDX_DEVICE_SALE"));
+		assertThat(plan, containsString("index sorted"));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * The for-sale entity query orders by the SIM foreign key, without joining the
+	 * SIM table
+	 */
+	@Test
+	final void testFindForSalePlan() {
+		devices.findForSale();
+
+		String plan = explain(SqlCapture.first());
+		assertThat(plan, containsString("IDX_DEVICE_SALE"));
+		assertThat(plan, containsString("index sorted"));
+		assertThat(plan, not(containsString("tableScan")));
+		assertThat(plan, not(containsString("JOIN")));
+	}
+
+	/**
+	 * A for-sale page filtered by country and operator only reads the SIMs of the
+	 * filter, and the values are bound as parameters
+	 */
+	@Test
+	final void testFindViewForSaleFilteredPlan() {
+		devices.findViewForSale(new ForSaleFilter(Country.UK, 11, 0f, 40f), 12000, 100);
+
+		String sql = SqlCapture.first();
+		assertThat(sql, not(containsString("40")));
+		String plan = explain(sql, 12000, DeviceStatus.READY.getCode(), 0f, 40f, Country.UK.getCode(), 11, 100);
+		assertThat(plan, containsString("IDX_SIM_COUNTRY: OPERATOR_CODE = ?6\n        AND COUNTRY = ?5"));
+		assertThat(plan, containsString("IDX_DEVICE_SALE"));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * A for-sale page filtered by operator only reads the SIMs of the operator
+	 */
+	@Test
+	final void testFindViewForSaleOperatorPlan() {
+		devices.findViewForSale(new ForSaleFilter(null, 11, null, null), 12000, 100);
+
+		String plan = explain(SqlCapture.first(), 12000, DeviceStatus.READY.getCode(), -25f, 85f, 11, 100);
+		assertThat(plan, containsString("IDX_SIM_OPERATOR: OPERATOR_CODE = ?5"));
+		assertThat(plan, containsString("IDX_DEVICE_SALE"));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * @param sql  The SQL statement
+	 * @param args The statement parameters
+	 * @return The H2 query plan of the statement
+	 */
+	private String explain(String sql, Object... args) {
+		return jdbc.queryForObject("EXPLAIN " + sql, String.class, args);
+	}
+}
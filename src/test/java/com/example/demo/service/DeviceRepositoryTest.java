@@ -0,0 +1,103 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Integration test over the Device repository queries.
+ * 
+ * Hibernate statistics are enabled in the test configuration, so the number of
+ * SQL statements issued by each query can be checked.
+ */
+@SpringBootTest
+class DeviceRepositoryTest {
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private EntityManagerFactory emf;
+
+	private Statistics statistics;
+
+	/**
+	 * Fill the repositories with some devices, some of them for sale and some of
+	 * them waiting for activation
+	 */
+	@BeforeEach
+	final void fillDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		for (int i = 0; i < 20; i++) {
+			Sim sim = sims.save(new Sim(1000 + i, 10, Country.SPAIN, i % 2 == 0 ? SimStatus.WAITING_FOR_ACTIVATION : SimStatus.ACTIVE));
+			devices.save(new Device(DeviceStatus.READY, 10f + i, sim));
+		}
+		devices.save(new Device(null, null, null));
+
+		statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	/**
+	 * The for-sale projection must be resolved with a single statement
+	 */
+	@Test
+	final void testFindViewForSaleSingleStatement() {
+		List<DeviceView> result = devices.findViewForSale();
+
+		assertEquals(20, result.size());
+		assertEquals(1000, result.get(0).getSim().getId());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	/**
+	 * The waiting-activation projection must be resolved with a single statement
+	 */
+	@Test
+	final void testFindViewBySimStatusSingleStatement() {
+		List<DeviceView> result = devices.findViewBySimStatus(SimStatus.WAITING_FOR_ACTIVATION);
+
+		assertEquals(10, result.size());
+		assertEquals(1, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	/**
+	 * Each keyset page must be resolved with a single statement
+	 */
+	@Test
+	final void testFindViewPagesSingleStatement() {
+		List<DeviceView> forSale = devices.findViewForSaleAfter(1004, PageRequest.ofSize(5));
+		assertEquals(5, forSale.size());
+		assertEquals(1005, forSale.get(0).getSim().getId());
+		assertEquals(1, statistics.getPrepareStatementCount());
+
+		List<DeviceView> waiting = devices.findViewBySimStatusAfter(SimStatus.WAITING_FOR_ACTIVATION, Long.MIN_VALUE,
+				PageRequest.ofSize(5));
+		assertEquals(5, waiting.size());
+		assertEquals(2, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+}
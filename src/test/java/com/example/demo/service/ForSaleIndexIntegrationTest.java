@@ -0,0 +1,148 @@
+package com.example.demo.service;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Integration test of the listings served from the in-memory index of the
+ * devices for sale.
+ */
+@SpringBootTest(properties = "device.index.enabled=true")
+@AutoConfigureMockMvc
+class ForSaleIndexIntegrationTest {
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private InventoryChanges changes;
+
+	@Autowired
+	private ForSaleIndex index;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private EntityManagerFactory emf;
+
+	private Device sellable;
+
+	private Device hot;
+
+	/**
+	 * Creates two devices for sale and one too hot to be sold, and loads the
+	 * index
+	 */
+	@BeforeEach
+	final void initDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		Sim sim1 = sims.save(new Sim(1332, 10, Country.SPAIN, SimStatus.ACTIVE));
+		Sim sim2 = sims.save(new Sim(2134, 11, Country.SPAIN, SimStatus.ACTIVE));
+		Sim sim3 = sims.save(new Sim(4134, 20, Country.ITALY, SimStatus.WAITING_FOR_ACTIVATION));
+		sellable = devices.save(new Device(DeviceStatus.READY, 15.3f, sim3));
+		devices.save(new Device(DeviceStatus.READY, 12.3f, sim1));
+		hot = devices.save(new Device(DeviceStatus.READY, 95f, sim2));
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+		changes.reload();
+	}
+
+	/**
+	 * Test the listing, the pages and the stream are read from the index,
+	 * without querying the database
+	 * @throws Exception
+	 */
+	@Test
+	final void testListingsFromIndex() throws Exception {
+		assertTrue(index.isReady());
+		assertEquals(2, index.size());
+
+		Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].sim.id", is(1332)))
+			.andExpect(jsonPath("$[1].sim.id", is(4134)))
+			.andExpect(jsonPath("$[1].sim.country", is("Italy")))
+			.andExpect(jsonPath("$[1].sim.status", is("Waiting for activation")));
+		mvc.perform(get("/api/device/available-for-sale?after=1332&limit=1").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.items", hasSize(1)))
+			.andExpect(jsonPath("$.items[0].sim.id", is(4134)));
+		String lines = mvc.perform(get("/api/device/available-for-sale")
+				.contentType(MediaType.APPLICATION_JSON)
+				.accept(MediaType.APPLICATION_NDJSON))
+			.andExpect(status().isOk())
+			.andReturn().getResponse().getContentAsString();
+		assertEquals(2, lines.split("\n").length);
+		assertEquals(0, statistics.getPrepareStatementCount());
+	}
+
+	/**
+	 * Test the index follows the devices modified and deleted through the
+	 * controller
+	 * @throws Exception
+	 */
+	@Test
+	final void testIndexAfterModifyAndDelete() throws Exception {
+		// Cooled down, so it is for sale
+		mvc.perform(put("/api/device/" + hot.getId())
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(String.format("{\"id\": %d, \"status\": \"READY\", \"temperature\": 20.5, \"sim\": {\"id\": 2134}}",
+						hot.getId())))
+			.andExpect(status().isOk());
+		mvc.perform(delete("/api/device/" + sellable.getId()).contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk());
+
+		assertEquals(2, index.size());
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$", hasSize(2)))
+			.andExpect(jsonPath("$[0].sim.id", is(1332)))
+			.andExpect(jsonPath("$[1].sim.id", is(2134)))
+			.andExpect(jsonPath("$[1].temperature", is(20.5)));
+
+		// Same as loading it again from the database
+		String incremental = mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andReturn().getResponse().getContentAsString();
+		changes.reload();
+		cacheManager.getCacheNames().forEach(name -> cacheManager.getCache(name).clear());
+		mvc.perform(get("/api/device/available-for-sale").contentType(MediaType.APPLICATION_JSON))
+			.andExpect(content().json(incremental, true));
+		assertTrue(index.isReady());
+	}
+}
@@ -0,0 +1,83 @@
+package com.example.demo.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.DeviceView;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Test of the chunks of the in-memory index of the devices for sale
+ */
+class ForSaleIndexTest {
+
+	private static DeviceView device(long id, long simId, float temperature) {
+		return new DeviceView(id, DeviceStatus.READY, temperature, simId, 10, Country.SPAIN, SimStatus.ACTIVE);
+	}
+
+	/**
+	 * Devices inserted in any order, over several chunks, are listed by SIM ID,
+	 * and only the ones for sale
+	 */
+	@Test
+	void testUpdate() {
+		ForSaleIndex index = new ForSaleIndex();
+		List<DeviceView> added = new ArrayList<>();
+		for (long i = 0; i < 5000; i++) {
+			// Interleaved SIM IDs, so the chunks are split in the middle
+			long simId = (i * 7919) % 5000;
+			added.add(device(i, simId, 20f));
+		}
+		added.add(device(5000, 5000, 95f));
+		index.update(Collections.emptyList(), added);
+
+		assertEquals(5000, index.size());
+		List<DeviceView> all = index.findAll();
+		for (int i = 0; i < all.size(); i++) {
+			assertEquals(i, all.get(i).getSim().getId());
+		}
+		assertEquals(added.subList(0, 5000).stream().sorted((a, b) -> Long.compare(a.getSim().getId(),
+				b.getSim().getId())).collect(Collectors.toList()), all);
+
+		List<DeviceView> page = index.findAfter(1023, 3);
+		assertEquals(3, page.size());
+		assertEquals(1024, page.get(0).getSim().getId());
+		assertTrue(index.findAfter(4999, 10).isEmpty());
+	}
+
+	/**
+	 * A device changed is moved, and a device removed leaves the index, emptying
+	 * its chunk
+	 */
+	@Test
+	void testUpdateRemove() {
+		ForSaleIndex index = new ForSaleIndex();
+		List<DeviceView> added = new ArrayList<>();
+		for (long i = 0; i < 2000; i++) {
+			added.add(device(i, i, 20f));
+		}
+		index.update(Collections.emptyList(), added);
+
+		// Moved to another SIM, and another temperature
+		index.update(Collections.singletonList(added.get(10)), Collections.singletonList(device(10, 3000, 30f)));
+		assertEquals(2000, index.size());
+		assertEquals(device(10, 3000, 30f), index.findAfter(1999, 10).get(0));
+		assertEquals(11, index.findAfter(9, 1).get(0).getSim().getId());
+
+		// A different device on the same SIM is not removed
+		index.update(Collections.singletonList(device(9999, 20, 20f)), Collections.emptyList());
+		assertEquals(2000, index.size());
+
+		index.update(added, Collections.emptyList());
+		assertEquals(Collections.singletonList(device(10, 3000, 30f)), index.findAll());
+	}
+}
@@ -0,0 +1,96 @@
+package com.example.demo.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.demo.model.Country;
+import com.example.demo.model.Device;
+import com.example.demo.model.DeviceStatus;
+import com.example.demo.model.Sim;
+import com.example.demo.model.SimStatus;
+
+/**
+ * Regression test over the query plans of the SIM search, as
+ * {@link DeviceRepositoryPlanTest}
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "com.example.demo.service.SqlCapture")
+class SimRepositoryPlanTest {
+
+	@Autowired
+	private DeviceRepository devices;
+
+	@Autowired
+	private SimRepository sims;
+
+	@Autowired
+	private JdbcTemplate jdbc;
+
+	/**
+	 * Fill the repositories with enough rows for the optimizer statistics to be
+	 * meaningful. Half of the SIMs are assigned.
+	 */
+	@BeforeEach
+	final void fillDb() {
+		devices.deleteAllInBatch();
+		sims.deleteAllInBatch();
+		List<Sim> newSims = new ArrayList<>();
+		List<Device> newDevices = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			Sim sim = new Sim(10000 + i, 10 + i % 5, Country.values()[i % 4], SimStatus.values()[i % 3]);
+			newSims.add(sim);
+			if (i % 2 == 0) {
+				newDevices.add(new Device(DeviceStatus.READY, 20f, sim));
+			}
+		}
+		sims.saveAll(newSims);
+		devices.saveAll(newDevices);
+		jdbc.execute("ANALYZE");
+		SqlCapture.clear();
+	}
+
+	/**
+	 * The search by status, country and operator is a range of the composite
+	 * index
+	 */
+	@Test
+	final void testFindViewPlan() {
+		sims.findView(new SimFilter(SimStatus.ACTIVE, Country.UK, 10, null), 12000, 100);
+
+		String plan = explain(SqlCapture.first(), 12000, SimStatus.ACTIVE.getCode(), Country.UK.getCode(), 10, 100);
+		assertThat(plan, containsString("IDX_SIM_STATUS"));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * The unassigned SIMs are checked on the device index on the SIM ID
+	 */
+	@Test
+	final void testFindViewUnassignedPlan() {
+		sims.findView(new SimFilter(SimStatus.ACTIVE, null, null, true), 12000, 100);
+
+		String plan = explain(SqlCapture.first(), 12000, SimStatus.ACTIVE.getCode(), 100);
+		assertThat(plan, containsString("IDX_SIM_STATUS"));
+		assertThat(plan, containsString("SIM_ID = "));
+		assertThat(plan, not(containsString("tableScan")));
+	}
+
+	/**
+	 * @param sql  The SQL statement
+	 * @param args The statement parameters
+	 * @return The H2 query plan of the statement
+	 */
+	private String explain(String sql, Object... args) {
+		return jdbc.queryForObject("EXPLAIN " + sql, String.class, args);
+	}
+}
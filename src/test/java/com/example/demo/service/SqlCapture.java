@@ -0,0 +1,37 @@
+package com.example.demo.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector recording the SQL sent to the database, so tests
+ * can check it (e.g. its query plan).
+ */
+public class SqlCapture implements StatementInspector {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final List<String> statements = new CopyOnWriteArrayList<>();
+
+	@Override
+	public String inspect(String sql) {
+		statements.add(sql);
+		return sql;
+	}
+
+	/**
+	 * Forget the recorded statements
+	 */
+	public static void clear() {
+		statements.clear();
+	}
+
+	/**
+	 * @return The first statement recorded since the last {@link #clear()}
+	 */
+	public static String first() {
+		return statements.get(0);
+	}
+}